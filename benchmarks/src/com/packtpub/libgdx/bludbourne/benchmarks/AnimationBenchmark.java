@@ -0,0 +1,68 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.animation.AnimationRegistry;
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
+
+/**
+ * Direction change and key frame lookup of an entity, done for each
+ * walking entity at every step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationBenchmark {
+	private static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+
+	private Entity entity;
+	private AnimationSet animationSet;
+	private int next = 0;
+	private float stateTime = 0f;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkApplication.init();
+
+		entity = new Entity();
+		animationSet = AnimationRegistry.get("sprites/characters/Warrior.png");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		entity.dispose();
+		AnimationRegistry.dispose();
+	}
+
+	@Benchmark
+	public TextureRegion setDirection() {
+		next = (next + 1) & 3;
+		entity.setDirection(DIRECTIONS[next], 1 / 60f);
+		return entity.getFrame();
+	}
+
+	@Benchmark
+	public TextureRegion getKeyFrame() {
+		next = (next + 1) & 3;
+		stateTime = (stateTime + 1 / 60f) % 5f;
+		return animationSet.getKeyFrame(DIRECTIONS[next], stateTime);
+	}
+}
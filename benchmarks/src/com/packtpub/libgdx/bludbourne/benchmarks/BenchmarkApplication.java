@@ -0,0 +1,26 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.packtpub.libgdx.bludbourne.headless.NullGL;
+
+/**
+ * Starts a headless application once per JVM, so the benchmarks can use
+ * Gdx.files, Gdx.app and load textures without a window.
+ */
+public final class BenchmarkApplication {
+	private BenchmarkApplication() {
+	}
+
+	public static synchronized void init() {
+		if (Gdx.app != null) {
+			return;
+		}
+
+		NullGL.install();
+		new HeadlessApplication(new ApplicationAdapter() {
+		}, new HeadlessApplicationConfiguration());
+	}
+}
@@ -0,0 +1,104 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.EntityStore;
+import com.packtpub.libgdx.bludbourne.collision.SweepAndPrune;
+
+/**
+ * One broadphase tick over entities walking at the wanderers speed, at
+ * the same density whatever their number. Each invocation moves every
+ * entity by one step then finds the overlapping pairs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadphaseBenchmark {
+	/** Map units per entity, about a town crowd */
+	private static final float AREA_PER_ENTITY = 16f;
+
+	private static final float SPEED = 2f;
+	private static final float STEP = 1 / 60f;
+
+	@Param({ "1000", "10000", "50000" })
+	public int entities;
+
+	private EntityStore store;
+	private SweepAndPrune broadphase;
+	private IntArray pairs = new IntArray();
+	private int[] handles;
+	private float side;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new EntityStore(entities);
+		broadphase = new SweepAndPrune();
+		handles = new int[entities];
+		side = (float) Math.sqrt(entities * AREA_PER_ENTITY);
+
+		RandomXS128 random = new RandomXS128(1L);
+		for (int i = 0; i < entities; i++) {
+			handles[i] = store.spawn(random.nextFloat() * side, random.nextFloat() * side,
+					Entity.Direction.values()[random.nextInt(4)], SPEED, EntityStore.FLAG_WANDER, null);
+			store.setState(handles[i], Entity.State.WALKING);
+			broadphase.add(handles[i]);
+		}
+		broadphase.update(store);
+	}
+
+	/** Moves the entities, bouncing on the area borders */
+	private void move() {
+		store.update(STEP);
+		for (int i = 0; i < entities; i++) {
+			int handle = handles[i];
+			float x = store.nextX[handle];
+			float y = store.nextY[handle];
+
+			if (x < 0 || y < 0 || x > side || y > side) {
+				store.direction[handle] = (byte) ((store.direction[handle] + 2) & 3);
+			} else {
+				store.x[handle] = x;
+				store.y[handle] = y;
+			}
+		}
+	}
+
+	/** Sorted order kept from the previous tick */
+	@Benchmark
+	public int sweepAndPrune() {
+		move();
+		broadphase.update(store);
+		return broadphase.findPairs(pairs);
+	}
+
+	/** Order rebuilt from scratch at each tick, for comparison */
+	@Benchmark
+	public int fullSort() {
+		move();
+		broadphase.clear();
+		for (int i = 0; i < entities; i++) {
+			broadphase.add(handles[i]);
+		}
+		broadphase.update(store);
+		return broadphase.findPairs(pairs);
+	}
+}
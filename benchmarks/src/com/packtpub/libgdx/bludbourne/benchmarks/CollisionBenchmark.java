@@ -0,0 +1,146 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.ResidentMap;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+import com.packtpub.libgdx.bludbourne.collision.SweptMover;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerIndex;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerSystem;
+
+/**
+ * Collision and portal checks of one bounding box, as done by each
+ * simulation step. The boxes are spread over the whole map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+	private static final int BOX_COUNT = 1024;
+
+	@Param({ "TOWN", "TOP_WORLD", "CASTLE_OF_DOOM" })
+	public String mapName;
+
+	private GameWorld world;
+	private SpatialGrid collisionGrid;
+	private TriggerIndex triggerIndex;
+
+	/** Trigger system without listener, only the overlaps are tracked */
+	private TriggerSystem triggerSystem;
+	private Entity entity;
+
+	/** Movement of a hitch: 10 steps at the player speed, in pixels */
+	private static final float HITCH_MOVE = 10 * 5f / 60f * 16f;
+
+	/** Pixels per substep when sweeping isn't available: a quarter of the thinnest walls */
+	private static final float SUBSTEP = 4f;
+
+	private SweptMover mover = new SweptMover();
+	private Rectangle moved = new Rectangle();
+
+	private Rectangle[] boxes;
+	private IntArray results = new IntArray();
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkApplication.init();
+
+		world = new GameWorld();
+		world.create(mapName);
+
+		ResidentMap map = world.getMapManager().getCurrentResidentMap();
+		collisionGrid = map.getCollisionGrid();
+		triggerIndex = map.getTriggerIndex();
+
+		triggerSystem = new TriggerSystem();
+		triggerSystem.setIndex(triggerIndex);
+		entity = world.getPlayer();
+
+		// Player sized boxes, at the feet
+		RandomXS128 random = new RandomXS128(1L);
+		boxes = new Rectangle[BOX_COUNT];
+		for (int i = 0; i < BOX_COUNT; i++) {
+			boxes[i] = new Rectangle(random.nextFloat() * map.getWidthPixels(),
+					random.nextFloat() * map.getHeightPixels(), 16f, 8f);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	private Rectangle nextBox() {
+		Rectangle box = boxes[next];
+		next = (next + 1) & (BOX_COUNT - 1);
+		return box;
+	}
+
+	@Benchmark
+	public boolean collisionCheck() {
+		return collisionGrid.overlapsAny(nextBox());
+	}
+
+	/** Continuous movement over a hitch: one query, plus one per slide */
+	@Benchmark
+	public float sweptMove() {
+		moved.set(nextBox());
+		mover.move(collisionGrid, moved, HITCH_MOVE, HITCH_MOVE * 0.5f);
+		return moved.x;
+	}
+
+	/** Same movement made safe by substeps, one query each */
+	@Benchmark
+	public float substepMove() {
+		moved.set(nextBox());
+		int substeps = (int) Math.ceil(HITCH_MOVE / SUBSTEP);
+		float dx = HITCH_MOVE / substeps;
+		float dy = HITCH_MOVE * 0.5f / substeps;
+
+		for (int i = 0; i < substeps; i++) {
+			moved.x += dx;
+			moved.y += dy;
+			if (collisionGrid.overlapsAny(moved)) {
+				moved.x -= dx;
+				moved.y -= dy;
+				break;
+			}
+		}
+		return moved.x;
+	}
+
+	@Benchmark
+	public int portalQuery() {
+		triggerIndex.query(nextBox(), results);
+		return results.size;
+	}
+
+	@Benchmark
+	public int portalEvents() {
+		triggerSystem.update(entity, nextBox());
+		return next;
+	}
+}
@@ -0,0 +1,121 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.pathfinding.FlowField;
+import com.packtpub.libgdx.bludbourne.pathfinding.HierarchicalGraph;
+import com.packtpub.libgdx.bludbourne.pathfinding.WalkabilityGrid;
+
+/**
+ * A crowd chasing one goal on CASTLE_OF_DOOM: flooding the field for a
+ * new goal, then one step of the crowd reading it, against one
+ * hierarchical path search per NPC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowFieldBenchmark {
+	/** Goals cycled through */
+	private static final int GOAL_COUNT = 64;
+
+	@Param({ "100", "1000" })
+	public int crowd;
+
+	private GameWorld world;
+	private HierarchicalGraph graph;
+	private FlowField field;
+
+	private int[] goals;
+	private int[] npcTiles;
+	private IntArray path = new IntArray();
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkApplication.init();
+
+		world = new GameWorld();
+		world.create("CASTLE_OF_DOOM");
+		graph = world.getMapManager().getCurrentResidentMap().getNavigationGraph();
+		WalkabilityGrid grid = graph.getGrid();
+		field = new FlowField(grid);
+
+		RandomXS128 random = new RandomXS128(1L);
+		goals = new int[GOAL_COUNT];
+		for (int i = 0; i < GOAL_COUNT; i++) {
+			goals[i] = randomWalkableTile(grid, random);
+		}
+		npcTiles = new int[crowd];
+		for (int i = 0; i < crowd; i++) {
+			npcTiles[i] = randomWalkableTile(grid, random);
+		}
+
+		field.setGoal(goals[0]);
+		field.update(Integer.MAX_VALUE);
+	}
+
+	private static int randomWalkableTile(WalkabilityGrid grid, RandomXS128 random) {
+		while (true) {
+			int tile = random.nextInt(grid.getWidth() * grid.getHeight());
+			if (grid.isWalkable(tile)) {
+				return tile;
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	/** Whole field for a new goal, without time slicing */
+	@Benchmark
+	public int flood() {
+		next = (next + 1) & (GOAL_COUNT - 1);
+		field.setGoal(goals[next]);
+		return field.update(Integer.MAX_VALUE);
+	}
+
+	/** One step of the crowd, a read per NPC */
+	@Benchmark
+	public int sampleCrowd() {
+		int sum = 0;
+		for (int i = 0; i < crowd; i++) {
+			sum += field.getDirection(npcTiles[i]);
+		}
+		return sum;
+	}
+
+	/** The same crowd searching its own paths, for comparison */
+	@Benchmark
+	public int pathPerNpc() {
+		int goal = goals[0];
+		int length = 0;
+		for (int i = 0; i < crowd; i++) {
+			if (graph.findPath(npcTiles[i], goal, path)) {
+				length += path.size;
+			}
+		}
+		return length;
+	}
+}
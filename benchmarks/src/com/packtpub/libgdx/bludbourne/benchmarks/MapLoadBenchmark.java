@@ -0,0 +1,103 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.packtpub.libgdx.bludbourne.MapManager;
+import com.packtpub.libgdx.bludbourne.ResidentMap;
+
+/**
+ * Blocking load of each map from disk, the cache being emptied after
+ * each load, and the closest player start lookup done when a portal is
+ * entered.
+ */
+@State(Scope.Thread)
+@Fork(1)
+public class MapLoadBenchmark {
+	@Param({ "TOWN", "TOP_WORLD", "CASTLE_OF_DOOM" })
+	public String mapName;
+
+	private MapManager mapMgr;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkApplication.init();
+		mapMgr = new MapManager();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mapMgr.getMapCache().clear();
+	}
+
+	/** Cold load: the map and its tilesets are unloaded after each load */
+	@State(Scope.Thread)
+	public static class ColdMap {
+		@TearDown(Level.Invocation)
+		public void unload(MapLoadBenchmark benchmark) {
+			benchmark.mapMgr.getMapCache().clear();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	public TiledMap loadMap(ColdMap coldMap) {
+		mapMgr.loadMap(mapName);
+		return mapMgr.getCurrentMap();
+	}
+
+	/** Positions spread over the loaded map */
+	@State(Scope.Thread)
+	public static class Positions {
+		private static final int COUNT = 256;
+
+		private Vector2[] positions = new Vector2[COUNT];
+		private int next = 0;
+
+		@Setup(Level.Trial)
+		public void setup(MapLoadBenchmark benchmark) {
+			benchmark.mapMgr.loadMap(benchmark.mapName);
+			ResidentMap map = benchmark.mapMgr.getCurrentResidentMap();
+
+			RandomXS128 random = new RandomXS128(1L);
+			for (int i = 0; i < COUNT; i++) {
+				positions[i] = new Vector2(random.nextFloat() * map.getWidthPixels() * MapManager.UNIT_SCALE,
+						random.nextFloat() * map.getHeightPixels() * MapManager.UNIT_SCALE);
+			}
+		}
+
+		Vector2 next() {
+			Vector2 position = positions[next];
+			next = (next + 1) % COUNT;
+			return position;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public void setClosestStartPosition(Positions positions) {
+		mapMgr.setClosestStartPositionFromScaledUnits(positions.next());
+	}
+}
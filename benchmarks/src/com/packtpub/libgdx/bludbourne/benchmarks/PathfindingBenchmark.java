@@ -0,0 +1,157 @@
+package com.packtpub.libgdx.bludbourne.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.ChunkedWorld;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.MapManager;
+import com.packtpub.libgdx.bludbourne.pathfinding.GridSearch;
+import com.packtpub.libgdx.bludbourne.pathfinding.HierarchicalGraph;
+import com.packtpub.libgdx.bludbourne.pathfinding.Pathfinder;
+import com.packtpub.libgdx.bludbourne.pathfinding.WalkabilityGrid;
+
+/**
+ * Paths per second between random walkable tiles of topworld.tmx, the
+ * largest map: hierarchical search, the same with the cache answering
+ * repeated requests, and a flat A* over the tiles for comparison.
+ *
+ * The world is chunked, so the graph searched is the one the game builds
+ * from world.json when the player enters it, run :core:splitWorlds first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathfindingBenchmark {
+	/** Requests cycled through, more than the cache holds */
+	private static final int REQUEST_COUNT = 1024;
+
+	/** Distinct requests of the cached run, fits in the cache */
+	private static final int CACHED_REQUEST_COUNT = 128;
+
+	private GameWorld world;
+	private HierarchicalGraph graph;
+	private GridSearch flatSearch;
+	private Pathfinder uncached;
+	private Pathfinder cached;
+
+	// Start and goal tiles, and the same in map units
+	private int[] starts;
+	private int[] goals;
+	private float[] positions;
+
+	private IntArray tiles = new IntArray();
+	private FloatArray waypoints = new FloatArray();
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkApplication.init();
+
+		world = new GameWorld();
+		world.create();
+		ChunkedWorld topWorld = world.getMapManager().getChunkedWorld("TOP_WORLD");
+		if (topWorld == null || topWorld.getNavigationGraph() == null) {
+			throw new GdxRuntimeException("TOP_WORLD has no navigation graph, run :core:splitWorlds");
+		}
+		graph = topWorld.getNavigationGraph();
+		flatSearch = new GridSearch(graph.getGrid());
+
+		uncached = new Pathfinder();
+		uncached.setMap("TOP_WORLD", graph);
+		uncached.setCacheEnabled(false);
+		cached = new Pathfinder();
+		cached.setMap("TOP_WORLD", graph);
+
+		WalkabilityGrid grid = graph.getGrid();
+		float tileWidth = grid.getTileWidth() * MapManager.UNIT_SCALE;
+		float tileHeight = grid.getTileHeight() * MapManager.UNIT_SCALE;
+		RandomXS128 random = new RandomXS128(1L);
+		starts = new int[REQUEST_COUNT];
+		goals = new int[REQUEST_COUNT];
+		positions = new float[REQUEST_COUNT * 4];
+
+		// Reachable pairs only, a failed search explores its whole component
+		for (int i = 0; i < REQUEST_COUNT;) {
+			int start = randomWalkableTile(grid, random);
+			int goal = randomWalkableTile(grid, random);
+			if (flatSearch.search(start, goal, null) < 0) {
+				continue;
+			}
+
+			starts[i] = start;
+			goals[i] = goal;
+			positions[i * 4] = (grid.getX(start) + 0.5f) * tileWidth;
+			positions[i * 4 + 1] = (grid.getY(start) + 0.5f) * tileHeight;
+			positions[i * 4 + 2] = (grid.getX(goal) + 0.5f) * tileWidth;
+			positions[i * 4 + 3] = (grid.getY(goal) + 0.5f) * tileHeight;
+			i++;
+		}
+	}
+
+	private static int randomWalkableTile(WalkabilityGrid grid, RandomXS128 random) {
+		while (true) {
+			int tile = random.nextInt(grid.getWidth() * grid.getHeight());
+			if (grid.isWalkable(tile)) {
+				return tile;
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	@Benchmark
+	public boolean hierarchical() {
+		int i = next;
+		next = (next + 1) & (REQUEST_COUNT - 1);
+		return graph.findPath(starts[i], goals[i], tiles);
+	}
+
+	/** The service: snapping, search and waypoints, without the cache */
+	@Benchmark
+	public boolean pathfinder() {
+		int i = next;
+		next = (next + 1) & (REQUEST_COUNT - 1);
+		return uncached.findPath(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2], positions[i * 4 + 3],
+				waypoints);
+	}
+
+	/** Requests repeated often enough to be served by the cache */
+	@Benchmark
+	public boolean pathfinderCached() {
+		int i = next;
+		next = (next + 1) & (CACHED_REQUEST_COUNT - 1);
+		return cached.findPath(positions[i * 4], positions[i * 4 + 1], positions[i * 4 + 2], positions[i * 4 + 3],
+				waypoints);
+	}
+
+	/** A* over every tile, for comparison */
+	@Benchmark
+	public int flat() {
+		int i = next;
+		next = (next + 1) & (REQUEST_COUNT - 1);
+		return flatSearch.search(starts[i], goals[i], tiles);
+	}
+}
@@ -0,0 +1,56 @@
+package com.packtpub.libgdx.bludbourne;
+
+/**
+ * Layout of the maps compiled by :core:compileMaps, read by
+ * BinaryMapLoader. Big endian, strings are a 2 bytes length followed by
+ * modified UTF-8 bytes (DataOutputStream.writeUTF).
+ *
+ * <pre>
+ * int    MAGIC, short VERSION
+ * int    width, height (tiles), tileWidth, tileHeight (pixels)
+ * string atlas path relative to the map, empty when the tiles come from the tileset images
+ * short  property count, (string key, string value)*
+ * short  tileset count, per tileset:
+ *        string name, int firstGid, int tileWidth, tileHeight, spacing, margin, offsetX, offsetY
+ *        string image path relative to the map, int columns, int tileCount
+ *        short animated tile count, (int localId, short frameCount, (int localId, int millis)*)*
+ * short  layer count, per layer in map order:
+ *        byte LAYER_TILES or LAYER_OBJECTS, string name, byte visible, float opacity
+ *        short property count, (string key, string value)*
+ *        tiles:   int[width * height] gids with the Tiled flip bits, rows from the bottom
+ *        objects: int count, per object: string name, float x, y, width, height (y up)
+ *                 short property count, (string key, string value)*
+ * game layers, compiled into records instead of the layers above (rectangles x, y, width, height, y up):
+ * int    MAP_COLLISION_LAYER rectangle count, rectangle*
+ * int    MAP_PORTAL_LAYER portal count, (string destination map, rectangle)*
+ * int    PLAYER_START count, rectangle*
+ * int    NPC spawn count, per spawn (other objects of MAP_SPAWNS_LAYER):
+ *        string name, rectangle, string sprite path (empty for the default), int count,
+ *        float speed (NaN for the default), byte Entity.Direction ordinal (NO_DIRECTION for a random one),
+ *        byte wander, byte pursue
+ * </pre>
+ */
+public final class BinaryMapFormat {
+	/** "BMAP" */
+	public static final int MAGIC = 0x424D4150;
+	public static final short VERSION = 3;
+
+	/** Compiled maps are written next to their TMX */
+	public static final String EXTENSION = ".bmap";
+
+	// Layer types
+	public static final byte LAYER_TILES = 0;
+	public static final byte LAYER_OBJECTS = 1;
+
+	/** Spawn direction of the NPCs facing a random direction */
+	public static final byte NO_DIRECTION = -1;
+
+	// Tiled gid flags
+	public static final int FLIP_HORIZONTALLY = 0x80000000;
+	public static final int FLIP_VERTICALLY = 0x40000000;
+	public static final int FLIP_DIAGONALLY = 0x20000000;
+	public static final int GID_MASK = ~(FLIP_HORIZONTALLY | FLIP_VERTICALLY | FLIP_DIAGONALLY);
+
+	private BinaryMapFormat() {
+	}
+}
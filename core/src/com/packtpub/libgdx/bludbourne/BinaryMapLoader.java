@@ -0,0 +1,469 @@
+package com.packtpub.libgdx.bludbourne;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.assets.loaders.TextureLoader;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapProperties;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSets;
+import com.badlogic.gdx.maps.tiled.tiles.AnimatedTiledMapTile;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Loads the maps compiled by :core:compileMaps (see BinaryMapFormat)
+ * without any XML parsing. The file is memory-mapped when it is a plain
+ * file, read at once otherwise (classpath, Android assets). The game
+ * layers come as the typed records of a CompiledMap, not as map objects.
+ */
+public class BinaryMapLoader extends AsynchronousAssetLoader<TiledMap, BinaryMapLoader.Parameters> {
+	private static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+
+	public static class Parameters extends AssetLoaderParameters<TiledMap> {
+		public Texture.TextureFilter textureMinFilter = Texture.TextureFilter.Nearest;
+		public Texture.TextureFilter textureMagFilter = Texture.TextureFilter.Nearest;
+	}
+
+	/** Tileset record */
+	private static class TilesetData {
+		String name;
+		int firstGid;
+		int tileWidth;
+		int tileHeight;
+		int spacing;
+		int margin;
+		int offsetX;
+		int offsetY;
+		String imagePath;
+		int columns;
+		int tileCount;
+		/** localId, frame count, (localId, millis)* */
+		IntArray animations = new IntArray();
+	}
+
+	/** Layer record */
+	private static class LayerData {
+		byte type;
+		String name;
+		boolean visible;
+		float opacity;
+		MapProperties properties = new MapProperties();
+		int[] gids;
+		Array<RectangleMapObject> objects;
+	}
+
+	// Map being loaded, read by getDependencies()
+	private int width;
+	private int height;
+	private int tileWidth;
+	private int tileHeight;
+	private String atlasPath;
+	private MapProperties properties;
+	private Array<TilesetData> tilesets = new Array<TilesetData>();
+	private Array<LayerData> layers = new Array<LayerData>();
+
+	// Game layer records
+	private float[] collisionBounds;
+	private String[] portalNames;
+	private float[] portalBounds;
+	private float[] playerStartBounds;
+	private Array<SpawnPoint> spawnPoints;
+
+	public BinaryMapLoader(FileHandleResolver resolver) {
+		super(resolver);
+	}
+
+	@Override
+	public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, Parameters parameters) {
+		read(file);
+
+		Array<AssetDescriptor> dependencies = new Array<AssetDescriptor>();
+		if (atlasPath != null) {
+			dependencies.add(new AssetDescriptor<TextureAtlas>(resolveRelative(file, atlasPath), TextureAtlas.class));
+			return dependencies;
+		}
+
+		TextureLoader.TextureParameter textureParameter = new TextureLoader.TextureParameter();
+		if (parameters != null) {
+			textureParameter.minFilter = parameters.textureMinFilter;
+			textureParameter.magFilter = parameters.textureMagFilter;
+		} else {
+			textureParameter.minFilter = Texture.TextureFilter.Nearest;
+			textureParameter.magFilter = Texture.TextureFilter.Nearest;
+		}
+		for (TilesetData tileset : tilesets) {
+			dependencies.add(new AssetDescriptor<Texture>(resolveRelative(file, tileset.imagePath), Texture.class, textureParameter));
+		}
+		return dependencies;
+	}
+
+	@Override
+	public void loadAsync(AssetManager manager, String fileName, FileHandle file, Parameters parameters) {
+		// Everything has been read by getDependencies()
+	}
+
+	@Override
+	public TiledMap loadSync(AssetManager manager, String fileName, FileHandle file, Parameters parameters) {
+		TiledMap map = new CompiledMap(collisionBounds, portalNames, portalBounds, playerStartBounds, spawnPoints);
+		map.getProperties().putAll(properties);
+		map.getProperties().put("width", width);
+		map.getProperties().put("height", height);
+		map.getProperties().put("tilewidth", tileWidth);
+		map.getProperties().put("tileheight", tileHeight);
+		map.getProperties().put("orientation", "orthogonal");
+
+		TextureAtlas atlas = atlasPath == null ? null : manager.get(resolveRelative(file, atlasPath).path(), TextureAtlas.class);
+		for (TilesetData tileset : tilesets) {
+			Texture texture = atlas != null ? null : manager.get(resolveRelative(file, tileset.imagePath).path(), Texture.class);
+			map.getTileSets().addTileSet(createTileSet(tileset, atlas, texture));
+		}
+
+		for (LayerData layer : layers) {
+			map.getLayers().add(layer.type == BinaryMapFormat.LAYER_TILES ? createTileLayer(layer, map.getTileSets())
+					: createObjectLayer(layer));
+		}
+
+		tilesets.clear();
+		layers.clear();
+		properties = null;
+		collisionBounds = null;
+		portalNames = null;
+		portalBounds = null;
+		playerStartBounds = null;
+		spawnPoints = null;
+		return map;
+	}
+
+	private TiledMapTileSet createTileSet(TilesetData data, TextureAtlas atlas, Texture texture) {
+		TiledMapTileSet tileSet = new TiledMapTileSet();
+		tileSet.setName(data.name);
+		tileSet.getProperties().put("firstgid", data.firstGid);
+
+		for (int id = 0; id < data.tileCount; id++) {
+			TextureRegion region;
+			if (atlas != null) {
+				// Packed by :core:packTilesets as <tileset name>_<local id>
+				region = atlas.findRegion(data.name, id);
+				if (region == null) {
+					continue;
+				}
+			} else {
+				int x = data.margin + (id % data.columns) * (data.tileWidth + data.spacing);
+				int y = data.margin + (id / data.columns) * (data.tileHeight + data.spacing);
+				region = new TextureRegion(texture, x, y, data.tileWidth, data.tileHeight);
+			}
+
+			StaticTiledMapTile tile = new StaticTiledMapTile(region);
+			tile.setId(data.firstGid + id);
+			tile.setOffsetX(data.offsetX);
+			tile.setOffsetY(-data.offsetY);
+			tileSet.putTile(tile.getId(), tile);
+		}
+
+		// Animated tiles replace their static tile
+		IntArray animations = data.animations;
+		for (int i = 0; i < animations.size;) {
+			int id = data.firstGid + animations.get(i++);
+			int frameCount = animations.get(i++);
+			IntArray intervals = new IntArray(frameCount);
+			Array<StaticTiledMapTile> frames = new Array<StaticTiledMapTile>(frameCount);
+
+			for (int frame = 0; frame < frameCount; frame++) {
+				frames.add((StaticTiledMapTile) tileSet.getTile(data.firstGid + animations.get(i++)));
+				intervals.add(animations.get(i++));
+			}
+
+			AnimatedTiledMapTile tile = new AnimatedTiledMapTile(intervals, frames);
+			tile.setId(id);
+			tileSet.putTile(id, tile);
+		}
+
+		return tileSet;
+	}
+
+	private TiledMapTileLayer createTileLayer(LayerData data, TiledMapTileSets tileSets) {
+		TiledMapTileLayer layer = new TiledMapTileLayer(width, height, tileWidth, tileHeight);
+		setLayerAttributes(layer, data);
+
+		int[] gids = data.gids;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int gid = gids[y * width + x];
+				if (gid == 0) {
+					continue;
+				}
+
+				TiledMapTileLayer.Cell cell = createCell((gid & BinaryMapFormat.FLIP_HORIZONTALLY) != 0,
+						(gid & BinaryMapFormat.FLIP_VERTICALLY) != 0, (gid & BinaryMapFormat.FLIP_DIAGONALLY) != 0);
+				cell.setTile(tileSets.getTile(gid & BinaryMapFormat.GID_MASK));
+				layer.setCell(x, y, cell);
+			}
+		}
+		return layer;
+	}
+
+	/** Same flips and rotations as the TmxMapLoader */
+	private static TiledMapTileLayer.Cell createCell(boolean flipHorizontally, boolean flipVertically, boolean flipDiagonally) {
+		TiledMapTileLayer.Cell cell = new TiledMapTileLayer.Cell();
+
+		if (flipDiagonally) {
+			if (flipHorizontally && flipVertically) {
+				cell.setFlipHorizontally(true);
+				cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+			} else if (flipHorizontally) {
+				cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+			} else if (flipVertically) {
+				cell.setRotation(TiledMapTileLayer.Cell.ROTATE_90);
+			} else {
+				cell.setFlipVertically(true);
+				cell.setRotation(TiledMapTileLayer.Cell.ROTATE_270);
+			}
+		} else {
+			cell.setFlipHorizontally(flipHorizontally);
+			cell.setFlipVertically(flipVertically);
+		}
+		return cell;
+	}
+
+	private MapLayer createObjectLayer(LayerData data) {
+		MapLayer layer = new MapLayer();
+		setLayerAttributes(layer, data);
+		for (RectangleMapObject object : data.objects) {
+			layer.getObjects().add(object);
+		}
+		return layer;
+	}
+
+	private static void setLayerAttributes(MapLayer layer, LayerData data) {
+		layer.setName(data.name);
+		layer.setVisible(data.visible);
+		layer.setOpacity(data.opacity);
+		layer.getProperties().putAll(data.properties);
+	}
+
+	/** Reads the whole file into the loader fields */
+	private void read(FileHandle file) {
+		ByteBuffer buffer = map(file);
+
+		if (buffer.getInt() != BinaryMapFormat.MAGIC) {
+			throw new GdxRuntimeException("Not a compiled map: " + file.path());
+		}
+		short version = buffer.getShort();
+		if (version != BinaryMapFormat.VERSION) {
+			throw new GdxRuntimeException("Unsupported compiled map version " + version + ": " + file.path());
+		}
+
+		width = buffer.getInt();
+		height = buffer.getInt();
+		tileWidth = buffer.getInt();
+		tileHeight = buffer.getInt();
+		atlasPath = readString(buffer);
+		if (atlasPath.isEmpty()) {
+			atlasPath = null;
+		}
+		properties = new MapProperties();
+		readProperties(buffer, properties);
+
+		tilesets.clear();
+		int tilesetCount = buffer.getShort();
+		for (int i = 0; i < tilesetCount; i++) {
+			TilesetData tileset = new TilesetData();
+			tileset.name = readString(buffer);
+			tileset.firstGid = buffer.getInt();
+			tileset.tileWidth = buffer.getInt();
+			tileset.tileHeight = buffer.getInt();
+			tileset.spacing = buffer.getInt();
+			tileset.margin = buffer.getInt();
+			tileset.offsetX = buffer.getInt();
+			tileset.offsetY = buffer.getInt();
+			tileset.imagePath = readString(buffer);
+			tileset.columns = buffer.getInt();
+			tileset.tileCount = buffer.getInt();
+
+			int animatedCount = buffer.getShort();
+			for (int j = 0; j < animatedCount; j++) {
+				tileset.animations.add(buffer.getInt());
+				int frameCount = buffer.getShort();
+				tileset.animations.add(frameCount);
+				for (int frame = 0; frame < frameCount; frame++) {
+					tileset.animations.add(buffer.getInt());
+					tileset.animations.add(buffer.getInt());
+				}
+			}
+			tilesets.add(tileset);
+		}
+
+		layers.clear();
+		int layerCount = buffer.getShort();
+		for (int i = 0; i < layerCount; i++) {
+			LayerData layer = new LayerData();
+			layer.type = buffer.get();
+			layer.name = readString(buffer);
+			layer.visible = buffer.get() != 0;
+			layer.opacity = buffer.getFloat();
+			readProperties(buffer, layer.properties);
+
+			if (layer.type == BinaryMapFormat.LAYER_TILES) {
+				// Bulk copy of the tile ids
+				layer.gids = new int[width * height];
+				buffer.asIntBuffer().get(layer.gids);
+				buffer.position(buffer.position() + layer.gids.length * 4);
+			} else {
+				int objectCount = buffer.getInt();
+				layer.objects = new Array<RectangleMapObject>(objectCount);
+				for (int j = 0; j < objectCount; j++) {
+					String name = readString(buffer);
+					RectangleMapObject object = new RectangleMapObject(buffer.getFloat(), buffer.getFloat(),
+							buffer.getFloat(), buffer.getFloat());
+					if (!name.isEmpty()) {
+						object.setName(name);
+					}
+					// Spawn settings, ...
+					readProperties(buffer, object.getProperties());
+					layer.objects.add(object);
+				}
+			}
+			layers.add(layer);
+		}
+
+		collisionBounds = readRectangles(buffer, buffer.getInt());
+
+		int portalCount = buffer.getInt();
+		portalNames = new String[portalCount];
+		portalBounds = new float[portalCount * 4];
+		for (int i = 0; i < portalCount; i++) {
+			String name = readString(buffer);
+			portalNames[i] = name.isEmpty() ? null : name;
+			for (int j = 0; j < 4; j++) {
+				portalBounds[i * 4 + j] = buffer.getFloat();
+			}
+		}
+
+		playerStartBounds = readRectangles(buffer, buffer.getInt());
+
+		int spawnCount = buffer.getInt();
+		spawnPoints = new Array<SpawnPoint>(spawnCount);
+		for (int i = 0; i < spawnCount; i++) {
+			String name = readString(buffer);
+			Rectangle area = new Rectangle(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+			String spritePath = readString(buffer);
+			int count = buffer.getInt();
+			float speed = buffer.getFloat();
+			byte direction = buffer.get();
+			boolean wander = buffer.get() != 0;
+			boolean pursue = buffer.get() != 0;
+
+			spawnPoints.add(new SpawnPoint(name.isEmpty() ? null : name, area,
+					spritePath.isEmpty() ? Entity.defaultSpritePath : spritePath, count,
+					Float.isNaN(speed) ? SpawnPoint.DEFAULT_SPEED : speed,
+					direction == BinaryMapFormat.NO_DIRECTION ? null : DIRECTIONS[direction], wander, pursue));
+		}
+	}
+
+	/** @return the rectangles bulk copied, flattened */
+	private static float[] readRectangles(ByteBuffer buffer, int count) {
+		float[] bounds = new float[count * 4];
+		buffer.asFloatBuffer().get(bounds);
+		buffer.position(buffer.position() + bounds.length * 4);
+		return bounds;
+	}
+
+	/** @return the file content, memory-mapped when possible */
+	private static ByteBuffer map(FileHandle file) {
+		if (file.type() != Files.FileType.Classpath && file.file().exists()) {
+			FileInputStream input = null;
+			try {
+				input = new FileInputStream(file.file());
+				FileChannel channel = input.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} catch (IOException e) {
+				// Read below
+			} finally {
+				if (input != null) {
+					try {
+						// The mapping stays valid once the channel is closed
+						input.close();
+					} catch (IOException e) {
+						// Ignored
+					}
+				}
+			}
+		}
+		return ByteBuffer.wrap(file.readBytes());
+	}
+
+	private static void readProperties(ByteBuffer buffer, MapProperties properties) {
+		int count = buffer.getShort();
+		for (int i = 0; i < count; i++) {
+			properties.put(readString(buffer), readString(buffer));
+		}
+	}
+
+	/**
+	 * Decodes a string written by DataOutputStream.writeUTF, like
+	 * DataInputStream.readUTF: modified UTF-8, where NUL takes 2 bytes and
+	 * the characters outside the BMP are 2 surrogates of 3 bytes each
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		int end = buffer.position() + length;
+		char[] chars = new char[length];
+		int count = 0;
+
+		while (buffer.position() < end) {
+			int a = buffer.get() & 0xFF;
+			if (a < 0x80) {
+				chars[count++] = (char) a;
+			} else if ((a & 0xE0) == 0xC0 && buffer.position() < end) {
+				int b = buffer.get() & 0xFF;
+				if ((b & 0xC0) != 0x80) {
+					throw new GdxRuntimeException("Malformed string in compiled map");
+				}
+				chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+			} else if ((a & 0xF0) == 0xE0 && buffer.position() + 1 < end) {
+				int b = buffer.get() & 0xFF;
+				int c = buffer.get() & 0xFF;
+				if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80) {
+					throw new GdxRuntimeException("Malformed string in compiled map");
+				}
+				chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+			} else {
+				throw new GdxRuntimeException("Malformed string in compiled map");
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	/** Resolves a path relative to the map folder, ".." included */
+	private FileHandle resolveRelative(FileHandle file, String path) {
+		FileHandle result = file.parent();
+		for (String token : path.split("[/\\\\]+")) {
+			if (token.equals("..")) {
+				result = result.parent();
+			} else if (!token.equals(".") && !token.isEmpty()) {
+				result = result.child(token);
+			}
+		}
+		return resolve(result.path());
+	}
+}
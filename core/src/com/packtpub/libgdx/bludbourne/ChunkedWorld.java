@@ -0,0 +1,354 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+import com.packtpub.libgdx.bludbourne.pathfinding.HierarchicalGraph;
+import com.packtpub.libgdx.bludbourne.pathfinding.WalkabilityGrid;
+import com.packtpub.libgdx.bludbourne.triggers.Trigger;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerIndex;
+
+/**
+ * A large map split into chunks by :core:splitWorlds, in
+ * maps/<name>/<column>_<row>.tmx with a world.json descriptor. Rows are
+ * counted from the bottom.
+ *
+ * Only the chunks within the view distance of the player are resident,
+ * the others are loaded and unloaded by the AssetManager in the
+ * background, so the memory used depends on the view distance and not
+ * on the world size. The collision grid and the trigger index are
+ * rebuilt from the resident chunks when they change. The pathfinding
+ * graph covers the whole world, built once from the collision rectangles
+ * of the descriptor.
+ */
+public class ChunkedWorld {
+	/** Debugging */
+	private static final String TAG = ChunkedWorld.class.getSimpleName();
+
+	/** Bits of a chunk trigger id holding its position in the chunk, the chunk index is above */
+	private static final int TRIGGER_ID_SHIFT = 16;
+
+	/** Descriptor written next to the chunks */
+	public static final String DESCRIPTOR = "world.json";
+
+	/** Chunks kept around the player's chunk */
+	public static final int DEFAULT_VIEW_DISTANCE = 1;
+
+	private final String name;
+	private final String directory;
+	private final int columns;
+	private final int rows;
+	private final float chunkWidth;
+	private final float chunkHeight;
+	private final float widthPixels;
+	private final float heightPixels;
+	private final Array<Rectangle> playerStarts = new Array<Rectangle>();
+
+	/** Chunks are resident within viewDistance and unloaded beyond viewDistance + 1 */
+	private int viewDistance = DEFAULT_VIEW_DISTANCE;
+
+	/** Chunks are loaded on the frame they are needed instead of in the background */
+	private boolean blockingStreaming = false;
+
+	/** Indexed by row * columns + column */
+	private final WorldChunk[] chunks;
+	private final boolean[] queued;
+	private final Array<WorldChunk> residentChunks = new Array<WorldChunk>();
+
+	private SpatialGrid collisionGrid = new SpatialGrid();
+	private TriggerIndex triggerIndex = TriggerIndex.EMPTY;
+
+	/** Click-to-move graph of the whole world, null if the descriptor has no collisions */
+	private final HierarchicalGraph navigationGraph;
+
+	// Player's chunk at the last update
+	private int centerColumn = -1;
+	private int centerRow = -1;
+
+	/** Last position in the world, where the player comes back */
+	private final Vector2 lastPosition = new Vector2();
+
+	private ChunkedWorld(String name, String directory, JsonValue descriptor) {
+		this.name = name;
+		this.directory = directory;
+
+		columns = descriptor.getInt("columns");
+		rows = descriptor.getInt("rows");
+		int chunkTiles = descriptor.getInt("chunkTiles");
+		int tileWidth = descriptor.getInt("tileWidth");
+		int tileHeight = descriptor.getInt("tileHeight");
+		chunkWidth = chunkTiles * tileWidth;
+		chunkHeight = chunkTiles * tileHeight;
+		widthPixels = descriptor.getInt("width") * tileWidth;
+		heightPixels = descriptor.getInt("height") * tileHeight;
+
+		JsonValue starts = descriptor.get("playerStarts");
+		if (starts != null) {
+			for (JsonValue start = starts.child; start != null; start = start.next) {
+				playerStarts.add(new Rectangle(start.getFloat(0), start.getFloat(1), 0, 0));
+			}
+		}
+		if (playerStarts.size > 0) {
+			lastPosition.set(playerStarts.first().x, playerStarts.first().y);
+		}
+
+		chunks = new WorldChunk[columns * rows];
+		queued = new boolean[columns * rows];
+
+		navigationGraph = buildNavigationGraph(descriptor, tileWidth, tileHeight);
+	}
+
+	/** The walkability doesn't change with the resident chunks, unlike the collision grid */
+	private static HierarchicalGraph buildNavigationGraph(JsonValue descriptor, int tileWidth, int tileHeight) {
+		JsonValue collisions = descriptor.get("collisions");
+		if (collisions == null) {
+			Gdx.app.debug(TAG, "No collisions in the descriptor, split the world again for click-to-move");
+			return null;
+		}
+
+		Array<Rectangle> rectangles = new Array<Rectangle>(collisions.size);
+		for (JsonValue collision = collisions.child; collision != null; collision = collision.next) {
+			rectangles.add(new Rectangle(collision.getFloat(0), collision.getFloat(1), collision.getFloat(2),
+					collision.getFloat(3)));
+		}
+
+		SpatialGrid grid = new SpatialGrid();
+		grid.build(rectangles);
+		return HierarchicalGraph.build(
+				WalkabilityGrid.build(grid, descriptor.getInt("width"), descriptor.getInt("height"), tileWidth, tileHeight),
+				HierarchicalGraph.DEFAULT_CLUSTER_SIZE);
+	}
+
+	/**
+	 * @param directory folder of the chunks, e.g. maps/topworld
+	 * @return the world, null if it hasn't been split
+	 */
+	public static ChunkedWorld load(String name, String directory) {
+		if (!Gdx.files.internal(directory + "/" + DESCRIPTOR).exists()) {
+			return null;
+		}
+
+		JsonValue descriptor = new JsonReader().parse(Gdx.files.internal(directory + "/" + DESCRIPTOR));
+		ChunkedWorld world = new ChunkedWorld(name, directory, descriptor);
+		Gdx.app.debug(TAG, name + ": " + world.columns + "x" + world.rows + " chunks");
+		return world;
+	}
+
+	/**
+	 * Queues the chunks around the position and adopts the loaded ones.
+	 * The loading itself advances with Utility.updateAssetLoading()
+	 * @param x position in the world, in pixels
+	 * @param y position in the world, in pixels
+	 * @return true if the resident chunks changed
+	 */
+	public boolean update(float x, float y) {
+		int column = clamp((int) (x / chunkWidth), columns);
+		int row = clamp((int) (y / chunkHeight), rows);
+		boolean changed = false;
+
+		if (column != centerColumn || row != centerRow) {
+			centerColumn = column;
+			centerRow = row;
+			queueAround(column, row);
+			changed = unloadFar(column, row);
+
+			if (blockingStreaming) {
+				// Resident chunks only depend on the position (replays)
+				finishQueuedChunks();
+			}
+		}
+
+		changed |= adoptLoadedChunks();
+		if (changed) {
+			rebuildIndexes();
+		}
+		return changed;
+	}
+
+	/** Blocks until the chunks around the position are resident */
+	public void loadAround(float x, float y) {
+		centerColumn = -1;
+		update(x, y);
+
+		finishQueuedChunks();
+		if (adoptLoadedChunks()) {
+			rebuildIndexes();
+		}
+	}
+
+	/** Blocks until the queued chunks are loaded */
+	private void finishQueuedChunks() {
+		for (int i = 0; i < chunks.length; i++) {
+			if (queued[i]) {
+				Utility.assetManager.finishLoadingAsset(getChunkPath(i % columns, i / columns));
+			}
+		}
+	}
+
+	private void queueAround(int column, int row) {
+		for (int r = Math.max(0, row - viewDistance); r <= Math.min(rows - 1, row + viewDistance); r++) {
+			for (int c = Math.max(0, column - viewDistance); c <= Math.min(columns - 1, column + viewDistance); c++) {
+				int i = r * columns + c;
+				if (chunks[i] == null && !queued[i]) {
+					queued[i] = Utility.queueMapAsset(getChunkPath(c, r));
+				}
+			}
+		}
+	}
+
+	/** Unloads the chunks beyond viewDistance + 1, the margin avoids reloading at the chunk borders */
+	private boolean unloadFar(int column, int row) {
+		boolean changed = false;
+
+		for (int i = 0; i < chunks.length; i++) {
+			if (chunks[i] == null && !queued[i]) {
+				continue;
+			}
+
+			int c = i % columns;
+			int r = i / columns;
+			if (Math.abs(c - column) <= viewDistance + 1 && Math.abs(r - row) <= viewDistance + 1) {
+				continue;
+			}
+
+			Utility.releaseAsset(getChunkPath(c, r));
+			if (chunks[i] != null) {
+				residentChunks.removeValue(chunks[i], true);
+				chunks[i] = null;
+				changed = true;
+			}
+			queued[i] = false;
+		}
+
+		return changed;
+	}
+
+	private boolean adoptLoadedChunks() {
+		boolean changed = false;
+
+		for (int i = 0; i < chunks.length; i++) {
+			if (!queued[i]) {
+				continue;
+			}
+
+			int c = i % columns;
+			int r = i / columns;
+			String path = getChunkPath(c, r);
+			if (Utility.isAssetLoaded(path)) {
+				queued[i] = false;
+				chunks[i] = new WorldChunk(c, r, path, Utility.getMapAsset(path), c * chunkWidth, r * chunkHeight);
+				residentChunks.add(chunks[i]);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Gathers the collision rectangles and portals of the resident chunks.
+	 * A portal keeps its id (chunk index and position in the chunk) while
+	 * its chunk is resident, so the TriggerSystem keeps its overlaps.
+	 */
+	private void rebuildIndexes() {
+		Array<Rectangle> collisions = new Array<Rectangle>();
+		Array<Trigger> triggers = new Array<Trigger>();
+
+		for (WorldChunk chunk : residentChunks) {
+			collisions.addAll(chunk.getCollisionRectangles());
+			int chunkIndex = chunk.getRow() * columns + chunk.getColumn();
+			Array<RectangleMapObject> portals = chunk.getPortals();
+			for (int i = 0; i < portals.size; i++) {
+				RectangleMapObject portal = portals.get(i);
+				triggers.add(new Trigger(triggers.size, (chunkIndex << TRIGGER_ID_SHIFT) | i, portal.getName(),
+						MapManager.MAP_PORTAL_LAYER, portal.getRectangle()));
+			}
+		}
+
+		collisionGrid = new SpatialGrid();
+		collisionGrid.build(collisions);
+		triggerIndex = TriggerIndex.build(triggers);
+
+		if (Utility.isDebugEnabled()) {
+			Gdx.app.debug(TAG, name + ": " + residentChunks.size + " resident chunks, "
+					+ collisions.size + " collision rectangles");
+		}
+	}
+
+	/** Unloads every chunk */
+	public void unloadAll() {
+		for (int i = 0; i < chunks.length; i++) {
+			if (chunks[i] != null || queued[i]) {
+				Utility.releaseAsset(getChunkPath(i % columns, i / columns));
+			}
+			chunks[i] = null;
+			queued[i] = false;
+		}
+		residentChunks.clear();
+		collisionGrid = new SpatialGrid();
+		triggerIndex = TriggerIndex.EMPTY;
+		centerColumn = -1;
+		centerRow = -1;
+	}
+
+	/**
+	 * @param position in pixels
+	 * @param out receives the closest player start, or the position itself if there is none
+	 */
+	public Vector2 getClosestPlayerStart(Vector2 position, Vector2 out) {
+		out.set(position);
+		float shortestDistance = Float.MAX_VALUE;
+
+		for (int i = 0; i < playerStarts.size; i++) {
+			Rectangle start = playerStarts.get(i);
+			float distance = position.dst2(start.x, start.y);
+			if (distance < shortestDistance) {
+				out.set(start.x, start.y);
+				shortestDistance = distance;
+			}
+		}
+		return out;
+	}
+
+	private String getChunkPath(int column, int row) {
+		return directory + "/" + column + "_" + row + ".tmx";
+	}
+
+	private static int clamp(int value, int count) {
+		return Math.max(0, Math.min(count - 1, value));
+	}
+
+	/** @param blockingStreaming true to load the chunks on the frame the player reaches them */
+	public void setBlockingStreaming(boolean blockingStreaming) {
+		this.blockingStreaming = blockingStreaming;
+	}
+
+	public void setViewDistance(int viewDistance) {
+		this.viewDistance = Math.max(0, viewDistance);
+	}
+
+	public String getName() { return name; }
+
+	public Array<WorldChunk> getResidentChunks() { return residentChunks; }
+
+	/** @return the collision rectangles of the resident chunks, in world pixels */
+	public SpatialGrid getCollisionGrid() { return collisionGrid; }
+
+	/** @return the portals of the resident chunks */
+	public TriggerIndex getTriggerIndex() { return triggerIndex; }
+
+	/** @return the pathfinding graph of the whole world, null if the descriptor has no collisions */
+	public HierarchicalGraph getNavigationGraph() { return navigationGraph; }
+
+	public float getWidthPixels() { return widthPixels; }
+
+	public float getHeightPixels() { return heightPixels; }
+
+	/** @return the last position of the player in this world, in pixels */
+	public Vector2 getLastPosition() { return lastPosition; }
+}
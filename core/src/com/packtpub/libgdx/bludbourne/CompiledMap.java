@@ -0,0 +1,51 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Map loaded by the BinaryMapLoader. The collision, portal and spawns
+ * layers aren't map objects but the typed records compiled by
+ * :core:compileMaps, the ResidentMap builds its indexes from them.
+ *
+ * The rectangles are flattened (x, y, width, height), in pixels, y up.
+ */
+public class CompiledMap extends TiledMap {
+	private final float[] collisionBounds;
+
+	/** Destination map of each portal */
+	private final String[] portalNames;
+	private final float[] portalBounds;
+
+	private final float[] playerStartBounds;
+
+	private final Array<SpawnPoint> spawnPoints;
+
+	CompiledMap(float[] collisionBounds, String[] portalNames, float[] portalBounds, float[] playerStartBounds,
+			Array<SpawnPoint> spawnPoints) {
+		this.collisionBounds = collisionBounds;
+		this.portalNames = portalNames;
+		this.portalBounds = portalBounds;
+		this.playerStartBounds = playerStartBounds;
+		this.spawnPoints = spawnPoints;
+	}
+
+	/** @return the collision rectangles, flattened */
+	public float[] getCollisionBounds() { return collisionBounds; }
+
+	public String[] getPortalNames() { return portalNames; }
+
+	/** @return the portal rectangles, flattened in the getPortalNames() order */
+	public float[] getPortalBounds() { return portalBounds; }
+
+	/** @return the PLAYER_START rectangles, flattened */
+	public float[] getPlayerStartBounds() { return playerStartBounds; }
+
+	/** @return the NPC spawns, the other objects of the spawns layer */
+	public Array<SpawnPoint> getSpawnPoints() { return spawnPoints; }
+
+	/** @return the number of records, for the memory estimate */
+	public int getRecordCount() {
+		return (collisionBounds.length + portalBounds.length + playerStartBounds.length) / 4 + spawnPoints.size;
+	}
+}
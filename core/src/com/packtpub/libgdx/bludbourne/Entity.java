@@ -1,53 +1,41 @@
 package com.packtpub.libgdx.bludbourne;
 
-import java.util.UUID;
-
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.Array;
+import com.packtpub.libgdx.bludbourne.animation.AnimationRegistry;
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
 
 public class Entity {
 	// Debugging
 	private static final String TAG = Entity.class.getSimpleName();
 
 	// Sprite path
-	private static final String defaultSpritePath = "sprites/characters/Warrior.png";
+	static final String defaultSpritePath = "sprites/characters/Warrior.png";
+
+	/** Speed in map units per second */
+	private static final float DEFAULT_SPEED = 5f;
 
-	// Velocity
-	private Vector2 velocity;
+	/** Cached Direction.values(), avoids a copy on each lookup */
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final State[] STATES = State.values();
 
-	// ID
-	private String entityID;
+	/** Storage of the position, direction, state and animation timer */
+	private EntityStore store;
+
+	/** Handle in the store */
+	private int handle = EntityStore.NONE;
 
 	// Directions
-	private Direction currentDirection = Direction.LEFT;
 	private Direction previousDirection = Direction.UP;
 
-	// Animations
-	private Animation<TextureRegion> walkLeftAnimation;
-	private Animation<TextureRegion> walkRightAnimation;
-	private Animation<TextureRegion> walkUpAnimation;
-	private Animation<TextureRegion> walkDownAnimation;
-
-	// Images
-	private Array<TextureRegion> walkLeftFrames;
-	private Array<TextureRegion> walkRightFrames;
-	private Array<TextureRegion> walkUpFrames;
-	private Array<TextureRegion> walkDownFrames;
-
-	/** Next player position in map coordinates */
-	protected Vector2 nextPlayerPosition;
-	/** Current player position in map coordinates */
+	// Animations, shared with every entity using the same sheet
+	private AnimationSet animationSet;
+
+	/** Current player position in map coordinates, copied from the store */
 	protected Vector2 currentPlayerPosition;
-	// Current state
-	protected State state = State.IDLE;
-	// Animation timer
-	protected float frameTime = 0f;
 	// Entity position
 	protected Sprite frameSprite = null;
 	// Current frame
@@ -57,8 +45,8 @@ public class Entity {
 	public final int FRAME_WIDTH = 16;
 	public final int FRAME_HEIGHT = 16;
 
-	/** Bounding box dimensions in real coordinates */
-	public static Rectangle boundingBox;
+	/** Bounding box at the next position, in pixels. Its size is also kept in the store */
+	private final Rectangle boundingBox = new Rectangle();
 
 	public enum State {
 		IDLE, WALKING;
@@ -68,35 +56,42 @@ public class Entity {
 		UP, RIGHT, DOWN, LEFT
 	}
 
+	/** Creates an entity with its own store */
 	public Entity() {
+		this(new EntityStore(1));
+	}
+
+	/** Creates an entity stored along the others of the store */
+	public Entity(EntityStore store) {
+		this.store = store;
 		initEntity();
 	}
 
 	public void initEntity() {
-		this.entityID = UUID.randomUUID().toString();
-		this.nextPlayerPosition = new Vector2();
 		this.currentPlayerPosition = new Vector2();
-		this.boundingBox = new Rectangle();
-		this.velocity = new Vector2(5f, 5f);
 
-		Utility.loadTextureAsset(defaultSpritePath);
+		animationSet = AnimationRegistry.get(defaultSpritePath);
+		if (handle == EntityStore.NONE) {
+			handle = store.spawn(0, 0, Direction.LEFT, DEFAULT_SPEED, 0, animationSet);
+		}
 		loadDefaultSprite();
-		loadAllAnimations();
 	}
 
+	/**
+	 * Updates the bounding box. The animation timer is advanced by
+	 * EntityStore.update() along the other entities
+	 */
 	public void update(float delta) {
-		frameTime = (frameTime + delta) % 5; // Avoid overflow
 		// We want the hitbox to be at the feet for a better feel
 		setBoundingBoxSize(0f, 0.5f);
 	}
 
 	public void init(float startX, float startY) {
-		Gdx.app.debug(TAG, "Player init (" + startX + ", " + startY + ")");
-		this.currentPlayerPosition.x = startX;
-		this.currentPlayerPosition.y = startY;
-
-		this.nextPlayerPosition.x = startX;
-		this.nextPlayerPosition.y = startY;
+		if (Utility.isDebugEnabled()) {
+			Gdx.app.debug(TAG, "Player init (" + startX + ", " + startY + ")");
+		}
+		// No interpolation from the previous position (map change)
+		store.teleport(handle, startX, startY);
 	}
 
 	public void setBoundingBoxSize(float percentageWidthReduced, float percentageHeightReduced) {
@@ -119,7 +114,7 @@ public class Entity {
 			height = FRAME_HEIGHT;
 		}
 
-		if (width == 0 || height == 0) {
+		if ((width == 0 || height == 0) && Utility.isDebugEnabled()) {
 			Gdx.app.debug(TAG, "Width and Height are 0!! " + width + ":" + height);
 		}
 
@@ -129,69 +124,43 @@ public class Entity {
 		float minY;
 
 		if (MapManager.UNIT_SCALE > 0) {
-			minX = nextPlayerPosition.x / MapManager.UNIT_SCALE;
-			minY = nextPlayerPosition.y / MapManager.UNIT_SCALE;
+			minX = store.nextX[handle] / MapManager.UNIT_SCALE;
+			minY = store.nextY[handle] / MapManager.UNIT_SCALE;
 		} else {
-			minX = nextPlayerPosition.x;
-			minY = nextPlayerPosition.y;
+			minX = store.nextX[handle];
+			minY = store.nextY[handle];
 		}
 
 		boundingBox.set(minX, minY, width, height);
+		if (MapManager.UNIT_SCALE > 0) {
+			store.setBox(handle, width * MapManager.UNIT_SCALE, height * MapManager.UNIT_SCALE);
+		}
 	}
 
-	private void loadDefaultSprite() {
-		Texture texture = Utility.getTextureAsset(defaultSpritePath);
-		TextureRegion[][] texturesFrames = TextureRegion.split(texture, FRAME_WIDTH, FRAME_HEIGHT);
-		frameSprite = new Sprite(texturesFrames[0][0].getTexture(), 0, 0, FRAME_WIDTH, FRAME_HEIGHT);
-		currentFrame = texturesFrames[0][0];
-	}
+	/** @return the bounding box at the next position, in pixels */
+	public Rectangle getBoundingBox() { return boundingBox; }
 
-	private void loadAllAnimations() {
-		// Walking animation
-		Texture texture = Utility.getTextureAsset(defaultSpritePath);
-		TextureRegion[][] texturesFrames = TextureRegion.split(texture, FRAME_WIDTH, FRAME_HEIGHT);
-		walkDownFrames = new Array<TextureRegion>(4);
-		walkLeftFrames = new Array<TextureRegion>(4);
-		walkRightFrames = new Array<TextureRegion>(4);
-		walkUpFrames = new Array<TextureRegion>(4);
-
-		for (int i = 0; i < 4; i++) {
-			for (int j = 0; j < 4; j++) {
-				TextureRegion region = texturesFrames[i][j];
-				if (region == null) {
-					Gdx.app.debug(TAG, "Got null animation frame " + i + "," + j);
-				}
-
-				switch (i) {
-					case 0:
-						walkDownFrames.insert(j, region);
-						break;
-					case 1:
-						walkLeftFrames.insert(j, region);
-						break;
-					case 2:
-						walkRightFrames.insert(j, region);
-						break;
-					case 3:
-						walkUpFrames.insert(j, region);
-						break;
-				}
-			}
-		}
-		
-		walkDownAnimation = new Animation<TextureRegion>(0.25f, walkDownFrames, Animation.PlayMode.LOOP);
-		walkLeftAnimation = new Animation<TextureRegion>(0.25f, walkLeftFrames, Animation.PlayMode.LOOP);
-		walkRightAnimation = new Animation<TextureRegion>(0.25f, walkRightFrames, Animation.PlayMode.LOOP);
-		walkUpAnimation = new Animation<TextureRegion>(0.25f, walkUpFrames, Animation.PlayMode.LOOP);
+	private void loadDefaultSprite() {
+		currentFrame = animationSet.getDefaultFrame();
+		frameSprite = new Sprite(currentFrame);
 	}
 	
 	public void dispose() {
-		Utility.unloadAsset(defaultSpritePath);
+		// The sprite sheet belongs to the AnimationRegistry
+		store.despawn(handle);
+		handle = EntityStore.NONE;
 	}
 	
 	public void setState(State state) {
-		this.state = state;
+		store.setState(handle, state);
 	}
+
+	public State getState() { return STATES[store.state[handle]]; }
+
+	/** @return the handle of the entity in its store */
+	public int getHandle() { return handle; }
+
+	public EntityStore getStore() { return store; }
 	
 	public Sprite getFrameSprite() {
 		return frameSprite;
@@ -203,72 +172,43 @@ public class Entity {
 	
 	/** @return the current player position in map units */
 	public Vector2 getCurrentPosition() {
-		return currentPlayerPosition;
+		return currentPlayerPosition.set(store.x[handle], store.y[handle]);
+	}
+	
+	/**
+	 * @param alpha interpolation factor between the previous and the current simulation step
+	 * @param out receives the render position in map units
+	 */
+	public Vector2 getInterpolatedPosition(float alpha, Vector2 out) {
+		return out.set(store.getInterpolatedX(handle, alpha), store.getInterpolatedY(handle, alpha));
 	}
 	
 	public void setCurrentPosition(float currentPositionX, float currentPositionY) {
 		frameSprite.setX(currentPositionX);
 		frameSprite.setY(currentPositionY);
 		
-		this.currentPlayerPosition.x = currentPositionX;
-		this.currentPlayerPosition.y = currentPositionY;
+		store.x[handle] = currentPositionX;
+		store.y[handle] = currentPositionY;
 	}
 	
 	public void setDirection(Direction direction, float deltaTime) {
-		this.previousDirection = this.currentDirection;
-		this.currentDirection = direction;
+		this.previousDirection = getCurrentDirection();
+		store.setDirection(handle, direction);
 		
-		// look into the appropriate variable when changing position
-		switch (currentDirection) {
-			case DOWN:
-				currentFrame = walkDownAnimation.getKeyFrame(frameTime);
-				break;
-			case LEFT:
-				currentFrame = walkLeftAnimation.getKeyFrame(frameTime);
-				break;
-			case UP:
-				currentFrame = walkUpAnimation.getKeyFrame(frameTime);
-				break;
-			case RIGHT:
-				currentFrame = walkRightAnimation.getKeyFrame(frameTime);
-				break;
-			default:
-				break;
-		}
+		// look into the appropriate animation when changing position
+		currentFrame = animationSet.getKeyFrame(direction, store.frameTime[handle]);
 	}
 	
 	public void setNextPositionToCurrent() {
-		setCurrentPosition(nextPlayerPosition.x, nextPlayerPosition.y);
+		setCurrentPosition(store.nextX[handle], store.nextY[handle]);
 	}
 	
 	public void calculateNextPosition(Direction currentDirection, float deltaTime) {
-		float testX = currentPlayerPosition.x;
-		float testY = currentPlayerPosition.y;
-		
-		velocity.scl(deltaTime);
-		
-		switch (currentDirection) {
-			case LEFT:
-				testX -= velocity.x;
-				break;
-			case RIGHT:
-				testX += velocity.x;
-				break;
-			case UP:
-				testY += velocity.y;
-				break;
-			case DOWN:
-				testY -= velocity.y;
-				break;
-			default:
-				break;
-		}
-		
-		nextPlayerPosition.x = testX;
-		nextPlayerPosition.y = testY;
+		int d = currentDirection.ordinal();
 		
-		velocity.scl(1 / deltaTime);
+		store.nextX[handle] = store.x[handle] + EntityStore.DIRECTION_X[d] * store.velocityX[handle] * deltaTime;
+		store.nextY[handle] = store.y[handle] + EntityStore.DIRECTION_Y[d] * store.velocityY[handle] * deltaTime;
 	}
 	
-	public Direction getCurrentDirection() { return currentDirection; }
+	public Direction getCurrentDirection() { return DIRECTIONS[store.direction[handle]]; }
 }
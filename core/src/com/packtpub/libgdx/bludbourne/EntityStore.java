@@ -0,0 +1,272 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
+
+/**
+ * Struct-of-arrays storage for entities: each entity is an int handle
+ * indexing primitive arrays, so thousands of walkers can be updated by a
+ * linear pass without per-entity objects.
+ *
+ * The arrays are public for the systems iterating over them; they are
+ * replaced when the store grows, so don't keep a reference across spawns.
+ */
+public class EntityStore {
+	/** Invalid handle */
+	public static final int NONE = -1;
+
+	// Flags
+	public static final byte FLAG_ALIVE = 1;
+	/** Moved by update(), otherwise an owner (e.g. the PlayerController) moves it */
+	public static final byte FLAG_WANDER = 1 << 1;
+	/** Walks along the flow field of the player instead of turning at random, with FLAG_WANDER */
+	public static final byte FLAG_PURSUE = 1 << 2;
+
+	/** Unit vector of each Direction, indexed by ordinal */
+	public static final float[] DIRECTION_X = { 0, 1, 0, -1 };
+	public static final float[] DIRECTION_Y = { 1, 0, -1, 0 };
+
+	/** Default bounding box, at the feet: a tile wide and half a tile high (map units) */
+	public static final float DEFAULT_BOX_WIDTH = 1f;
+	public static final float DEFAULT_BOX_HEIGHT = 0.5f;
+
+	/** Walk animations loop over this period, avoids float overflow */
+	private static final float FRAME_TIME_PERIOD = 5f;
+
+	/** Current position in map units */
+	public float[] x;
+	public float[] y;
+
+	/** Position at the previous simulation step, for render interpolation */
+	public float[] previousX;
+	public float[] previousY;
+
+	/** Position being tested this frame, in map units */
+	public float[] nextX;
+	public float[] nextY;
+
+	/** Speed on each axis, in map units per second */
+	public float[] velocityX;
+	public float[] velocityY;
+
+	/** Bounding box size in map units, its bottom left corner is the position */
+	public float[] boxWidth;
+	public float[] boxHeight;
+
+	/** Animation timer */
+	public float[] frameTime;
+
+	/** Entity.Direction ordinal */
+	public byte[] direction;
+
+	/** Entity.State ordinal */
+	public byte[] state;
+
+	public byte[] flags;
+
+	/** Shared walk animations */
+	public AnimationSet[] animationSets;
+
+	/** Handles in use are all below this bound */
+	private int highWater = 0;
+	private int size = 0;
+
+	/** Released handles, reused first to keep the arrays dense */
+	private int[] freeHandles;
+	private int freeCount = 0;
+
+	public EntityStore(int initialCapacity) {
+		allocate(Math.max(1, initialCapacity));
+	}
+
+	/**
+	 * Adds an entity
+	 * @param startX position in map units
+	 * @param startY position in map units
+	 * @param speed map units per second
+	 * @return the entity handle
+	 */
+	public int spawn(float startX, float startY, Entity.Direction startDirection, float speed, int extraFlags,
+			AnimationSet animationSet) {
+		int handle;
+
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else {
+			if (highWater == x.length) {
+				allocate(x.length * 2);
+			}
+			handle = highWater++;
+		}
+
+		x[handle] = startX;
+		y[handle] = startY;
+		previousX[handle] = startX;
+		previousY[handle] = startY;
+		nextX[handle] = startX;
+		nextY[handle] = startY;
+		velocityX[handle] = speed;
+		velocityY[handle] = speed;
+		boxWidth[handle] = DEFAULT_BOX_WIDTH;
+		boxHeight[handle] = DEFAULT_BOX_HEIGHT;
+		frameTime[handle] = 0f;
+		direction[handle] = (byte) startDirection.ordinal();
+		state[handle] = (byte) Entity.State.IDLE.ordinal();
+		flags[handle] = (byte) (FLAG_ALIVE | extraFlags);
+		animationSets[handle] = animationSet;
+
+		size++;
+		return handle;
+	}
+
+	/** Releases the handle, it may be returned by a following spawn */
+	public void despawn(int handle) {
+		if (!isAlive(handle)) {
+			return;
+		}
+
+		flags[handle] = 0;
+		animationSets[handle] = null;
+		freeHandles[freeCount++] = handle;
+		size--;
+	}
+
+	/** Releases every handle */
+	public void clear() {
+		for (int i = 0; i < highWater; i++) {
+			flags[i] = 0;
+			animationSets[i] = null;
+		}
+		highWater = 0;
+		freeCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * Advances the animation timers and computes the next position of the
+	 * wandering entities, in one linear pass over the arrays. The positions
+	 * are committed once the collisions have been checked.
+	 */
+	public void update(float delta) {
+		update(0, highWater, delta);
+	}
+
+	/** Same as update(float) over the handles in [from, to) */
+	public void update(int from, int to, float delta) {
+		byte walking = (byte) Entity.State.WALKING.ordinal();
+
+		for (int i = from; i < to; i++) {
+			byte entityFlags = flags[i];
+			if ((entityFlags & FLAG_ALIVE) == 0) {
+				continue;
+			}
+
+			frameTime[i] = (frameTime[i] + delta) % FRAME_TIME_PERIOD;
+
+			if ((entityFlags & FLAG_WANDER) != 0 && state[i] == walking) {
+				int d = direction[i];
+				nextX[i] = x[i] + DIRECTION_X[d] * velocityX[i] * delta;
+				nextY[i] = y[i] + DIRECTION_Y[d] * velocityY[i] * delta;
+			}
+		}
+	}
+
+	/** Keeps the current positions as the previous step, call it before each simulation step */
+	public void savePreviousPositions() {
+		System.arraycopy(x, 0, previousX, 0, highWater);
+		System.arraycopy(y, 0, previousY, 0, highWater);
+	}
+
+	/** @return the x position between the previous and the current step */
+	public float getInterpolatedX(int handle, float alpha) {
+		return previousX[handle] + (x[handle] - previousX[handle]) * alpha;
+	}
+
+	/** @return the y position between the previous and the current step */
+	public float getInterpolatedY(int handle, float alpha) {
+		return previousY[handle] + (y[handle] - previousY[handle]) * alpha;
+	}
+
+	/** Moves the entity without interpolation from its previous position */
+	public void teleport(int handle, float newX, float newY) {
+		x[handle] = newX;
+		y[handle] = newY;
+		previousX[handle] = newX;
+		previousY[handle] = newY;
+		nextX[handle] = newX;
+		nextY[handle] = newY;
+	}
+
+	public void setState(int handle, Entity.State newState) {
+		state[handle] = (byte) newState.ordinal();
+	}
+
+	/** Sets the bounding box size, in map units */
+	public void setBox(int handle, float width, float height) {
+		boxWidth[handle] = width;
+		boxHeight[handle] = height;
+	}
+
+	public void setDirection(int handle, Entity.Direction newDirection) {
+		direction[handle] = (byte) newDirection.ordinal();
+	}
+
+	public boolean isAlive(int handle) {
+		return handle >= 0 && handle < highWater && (flags[handle] & FLAG_ALIVE) != 0;
+	}
+
+	/** @return the number of live entities */
+	public int size() { return size; }
+
+	/** @return the bound of the handles in use, iterate [0, getHighWater()) and skip the dead ones */
+	public int getHighWater() { return highWater; }
+
+	public int getCapacity() { return x.length; }
+
+	private void allocate(int capacity) {
+		x = grow(x, capacity);
+		y = grow(y, capacity);
+		previousX = grow(previousX, capacity);
+		previousY = grow(previousY, capacity);
+		nextX = grow(nextX, capacity);
+		nextY = grow(nextY, capacity);
+		velocityX = grow(velocityX, capacity);
+		velocityY = grow(velocityY, capacity);
+		boxWidth = grow(boxWidth, capacity);
+		boxHeight = grow(boxHeight, capacity);
+		frameTime = grow(frameTime, capacity);
+		direction = grow(direction, capacity);
+		state = grow(state, capacity);
+		flags = grow(flags, capacity);
+		freeHandles = grow(freeHandles, capacity);
+
+		AnimationSet[] newAnimationSets = new AnimationSet[capacity];
+		if (animationSets != null) {
+			System.arraycopy(animationSets, 0, newAnimationSets, 0, animationSets.length);
+		}
+		animationSets = newAnimationSets;
+	}
+
+	private static float[] grow(float[] array, int capacity) {
+		float[] newArray = new float[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+		return newArray;
+	}
+
+	private static byte[] grow(byte[] array, int capacity) {
+		byte[] newArray = new byte[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+		return newArray;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] newArray = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+		return newArray;
+	}
+}
@@ -0,0 +1,77 @@
+package com.packtpub.libgdx.bludbourne;
+
+/**
+ * Accumulates the frame deltas and converts them into a number of fixed
+ * simulation steps. The remainder gives the interpolation factor used to
+ * render between the last two simulated states.
+ */
+public class FixedTimestep {
+	/** Default simulation rate: 60 steps per second */
+	public static final float DEFAULT_STEP = 1 / 60f;
+
+	/** Default cap of catch-up steps per frame */
+	public static final int DEFAULT_MAX_STEPS = 5;
+
+	private final float step;
+	private final int maxSteps;
+
+	/** Time not simulated yet, in seconds */
+	private float accumulator = 0f;
+
+	// Counters
+	private long totalSteps = 0;
+	private long droppedSteps = 0;
+
+	public FixedTimestep() {
+		this(DEFAULT_STEP, DEFAULT_MAX_STEPS);
+	}
+
+	public FixedTimestep(float step, int maxSteps) {
+		if (step <= 0 || maxSteps <= 0) {
+			throw new IllegalArgumentException("step and maxSteps must be > 0");
+		}
+		this.step = step;
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Adds the frame time
+	 * @return the number of steps to simulate this frame, at most maxSteps
+	 */
+	public int advance(float delta) {
+		accumulator += Math.max(delta, 0f);
+
+		int steps = (int) (accumulator / step);
+		if (steps > maxSteps) {
+			// Too far behind (hitch, debugger...): drop the extra time
+			// rather than spiralling into longer and longer frames
+			droppedSteps += steps - maxSteps;
+			steps = maxSteps;
+			accumulator = accumulator % step;
+		} else {
+			accumulator -= steps * step;
+		}
+
+		totalSteps += steps;
+		return steps;
+	}
+
+	/** @return how far the rendered frame is between the last two steps, in [0, 1) */
+	public float getAlpha() {
+		return Math.min(accumulator / step, 1f);
+	}
+
+	/** @return the simulated time of one step, in seconds */
+	public float getStep() { return step; }
+
+	public int getMaxSteps() { return maxSteps; }
+
+	public long getTotalSteps() { return totalSteps; }
+
+	/** @return the steps skipped because of the catch-up cap */
+	public long getDroppedSteps() { return droppedSteps; }
+
+	public void reset() {
+		accumulator = 0f;
+	}
+}
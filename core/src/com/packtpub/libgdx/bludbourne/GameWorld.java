@@ -0,0 +1,752 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.animation.AnimationRegistry;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+import com.packtpub.libgdx.bludbourne.collision.SweepAndPrune;
+import com.packtpub.libgdx.bludbourne.collision.SweptMover;
+import com.packtpub.libgdx.bludbourne.pathfinding.FlowField;
+import com.packtpub.libgdx.bludbourne.pathfinding.FlowFieldService;
+import com.packtpub.libgdx.bludbourne.pathfinding.HierarchicalGraph;
+import com.packtpub.libgdx.bludbourne.pathfinding.Pathfinder;
+import com.packtpub.libgdx.bludbourne.pathfinding.WalkabilityGrid;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer.Phase;
+import com.packtpub.libgdx.bludbourne.triggers.Trigger;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerListener;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerSystem;
+
+/**
+ * Game state and simulation, without any GL call: maps, entities,
+ * triggers and player input. Stepped by MainGameScreen, or by the
+ * headless runner to measure the simulation alone.
+ */
+public class GameWorld {
+	/** Debugging */
+	private static final String TAG = GameWorld.class.getSimpleName();
+
+	// Wanderers bounding box, at the feet like the player's (pixels)
+	private static final float WANDERER_BOX_WIDTH = 16f;
+	private static final float WANDERER_BOX_HEIGHT = 8f;
+
+	/** Wanderers speed, in map units per second */
+	private static final float WANDERER_SPEED = 2f;
+
+	/** Chance for a wanderer to turn at each step */
+	private static final float WANDERER_TURN_CHANCE = 0.01f;
+
+	/** Tries to find a free spot for a wanderer */
+	private static final int SPAWN_TRIES = 20;
+
+	private static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+
+	/** Map Manager */
+	private MapManager mapMgr;
+
+	/** Loads the likely next map in the background */
+	private MapPrefetcher mapPrefetcher;
+
+	/** Trigger volumes events (portals, ...) */
+	private TriggerSystem triggerSystem;
+
+	/** Entities of the current map, the player included */
+	private EntityStore entityStore;
+
+	/** The player entity */
+	private Entity player;
+
+	/** Input manager */
+	private PlayerController controller;
+
+	/** Time spent in each phase */
+	private PhaseTimer phaseTimer;
+
+	/** Chunks streamed around the player, null when the current map is loaded whole */
+	private ChunkedWorld chunkedWorld = null;
+
+	/** A chunked world has been entered, the renderer must switch map */
+	private boolean chunkedWorldEntered = false;
+
+	/** Player position in pixels */
+	private Vector2 playerPixels = new Vector2();
+
+	/** Streams the chunked worlds synchronously, see setDeterministicStreaming() */
+	private boolean deterministicStreaming = false;
+
+	/** The requested map must be swapped on the next updateMapLoading() */
+	private boolean mapSwapScheduled = false;
+
+	/** Destination of the portal entered this step */
+	private String pendingPortalMapName = null;
+
+	/** Moves the entities against the collision layer without crossing it, whatever the step */
+	private SweptMover mover = new SweptMover();
+	private Rectangle playerBox = new Rectangle();
+
+	/** Entity versus entity broadphase, the player and the wanderers */
+	private SweepAndPrune broadphase = new SweepAndPrune();
+
+	/** Overlapping entities of the last step, handles two by two */
+	private IntArray entityPairs = new IntArray(256);
+
+	/** Wandering NPCs handles, the map ones included */
+	private IntArray wanderers = new IntArray();
+
+	/** NPCs spawned by spawnWanderers(), see getWandererCount() */
+	private int spawnedWanderers = 0;
+
+	/** NPCs of the current map spawn points, pooled between the maps */
+	private NpcSpawner npcSpawner;
+
+	/** Click-to-move paths of the current map */
+	private Pathfinder pathfinder = new Pathfinder();
+
+	/** Flow fields towards the player, shared by the NPCs chasing it */
+	private FlowFieldService flowFields = new FlowFieldService();
+	private int pursuers = 0;
+
+	/** Player field sampled by the workers this step, null if none is ready */
+	private FlowField pursuitField = null;
+	private RandomXS128 random = new RandomXS128();
+	private Rectangle wandererBox = new Rectangle();
+
+	/** Seed of the wanderers turns, see turnRoll() */
+	private long wandererSeed = 0L;
+
+	/** Steps since the creation, the wanderers turns depend on it */
+	private long stepCount = 0L;
+
+	/** Splits the entity stages between cores, see setThreads() */
+	private WorkerPool workerPool = new WorkerPool(1);
+	private Worker[] workers = { new Worker() };
+	private final UpdateTask updateTask = new UpdateTask();
+	private final MoveTask moveTask = new MoveTask();
+
+	/** Wanderers blocked at the last step, in the order of the wanderers whatever the threads */
+	private IntArray blockedWanderers = new IntArray();
+
+	// State of the current step, read by the workers
+	private float stepDelta;
+	private SpatialGrid stepGrid;
+	private float wandererMaxX;
+	private float wandererMaxY;
+
+	public GameWorld() {
+		mapMgr = new MapManager();
+		mapPrefetcher = new MapPrefetcher(mapMgr);
+		triggerSystem = new TriggerSystem();
+		triggerSystem.addListener(new PortalListener());
+		entityStore = new EntityStore(64);
+		npcSpawner = new NpcSpawner(entityStore, WANDERER_BOX_WIDTH, WANDERER_BOX_HEIGHT);
+		phaseTimer = new PhaseTimer();
+	}
+
+	/** Loads the first map and places the player */
+	public void create() {
+		create(null);
+	}
+
+	/**
+	 * Loads the given map and places the player
+	 * @param mapName TOWN when null
+	 */
+	public void create(String mapName) {
+		if (mapName != null) {
+			mapMgr.loadMap(mapName);
+		}
+		mapMgr.getCurrentMap();
+		triggerSystem.setIndex(mapMgr.getTriggerIndex());
+
+		// placing player
+		player = new Entity(entityStore);
+		broadphase.add(player.getHandle());
+		Vector2 start = mapMgr.getPlayerStartUnitScaled();
+		player.init(start.x, start.y);
+		controller = new PlayerController(player);
+		controller.setPathfinder(pathfinder);
+		updateNavigation();
+		spawnMapNpcs();
+	}
+
+	/**
+	 * Advances the background map loading, once per rendered frame
+	 * @return true if the map changed, the renderer must then switch map
+	 */
+	public boolean updateMapLoading() {
+		boolean swapped = mapMgr.update();
+		if (!swapped && mapSwapScheduled) {
+			swapped = mapMgr.completePendingMap();
+		}
+		mapSwapScheduled = false;
+
+		if (!swapped) {
+			boolean entered = chunkedWorldEntered;
+			chunkedWorldEntered = false;
+			return entered;
+		}
+
+		// Leaving the chunked world
+		if (chunkedWorld != null) {
+			chunkedWorld.unloadAll();
+			chunkedWorld = null;
+		}
+		chunkedWorldEntered = false;
+
+		Vector2 start = mapMgr.getPlayerStartUnitScaled();
+		player.init(start.x, start.y);
+		triggerSystem.setIndex(mapMgr.getTriggerIndex());
+		controller.cancelPath();
+		updateNavigation();
+		despawnWanderers();
+		spawnMapNpcs();
+		return true;
+	}
+
+	/** Advances the game by one fixed step */
+	public void step(float step) {
+		stepCount++;
+		stepDelta = step;
+		entityStore.savePreviousPositions();
+
+		// This step's input moves the player before the collision check,
+		// not one step later
+		phaseTimer.begin(Phase.INPUT);
+		controller.update(step);
+		phaseTimer.end(Phase.INPUT);
+
+		// Update animation, next positions and wanderers turns
+		phaseTimer.begin(Phase.ENTITY_UPDATE);
+		updatePursuit();
+		workerPool.run(updateTask, entityStore.getHighWater());
+		player.update(step);
+		phaseTimer.end(Phase.ENTITY_UPDATE);
+
+		// Check collisions with portals
+		phaseTimer.begin(Phase.PORTAL_CHECK);
+		if (chunkedWorld != null) {
+			// Stream the chunks around the player
+			getPlayerPixels();
+			if (chunkedWorld.update(playerPixels.x, playerPixels.y)) {
+				// Same map: the overlaps of the portals still resident go on
+				triggerSystem.swapIndex(chunkedWorld.getTriggerIndex());
+			}
+		}
+		updatePortalLayerActivation(player.getBoundingBox());
+		if (chunkedWorld == null) {
+			mapPrefetcher.update(player.getCurrentPosition(), player.getCurrentDirection(),
+					player.getState() == Entity.State.WALKING, step);
+		}
+		phaseTimer.end(Phase.PORTAL_CHECK);
+
+		// Move as far as the collision layer allows
+		phaseTimer.begin(Phase.COLLISION);
+		movePlayer();
+		moveWanderers();
+		broadphase.update(entityStore);
+		broadphase.findPairs(entityPairs);
+		phaseTimer.end(Phase.COLLISION);
+	}
+
+	/**
+	 * Spawns NPCs walking around the current map at random free spots
+	 * @param seed the same seed gives the same crowd
+	 * @return the number of spawned NPCs
+	 */
+	public int spawnWanderers(int count, long seed) {
+		return spawnWanderers(count, seed, false);
+	}
+
+	/**
+	 * Same as spawnWanderers(int, long)
+	 * @param pursue the NPCs chase the player instead of walking at random
+	 */
+	public int spawnWanderers(int count, long seed, boolean pursue) {
+		float widthPixels = getWidthPixels();
+		float heightPixels = getHeightPixels();
+		if (widthPixels <= 0 || heightPixels <= 0) {
+			return 0;
+		}
+
+		random.setSeed(seed);
+		wandererSeed = seed;
+		int spawned = 0;
+
+		for (int i = 0; i < count; i++) {
+			for (int tries = 0; tries < SPAWN_TRIES; tries++) {
+				float x = random.nextFloat() * (widthPixels - WANDERER_BOX_WIDTH);
+				float y = random.nextFloat() * (heightPixels - WANDERER_BOX_HEIGHT);
+				wandererBox.set(x, y, WANDERER_BOX_WIDTH, WANDERER_BOX_HEIGHT);
+
+				if (!isCollisionWithMapLayer(wandererBox)) {
+					int handle = entityStore.spawn(x * MapManager.UNIT_SCALE, y * MapManager.UNIT_SCALE,
+							DIRECTIONS[random.nextInt(DIRECTIONS.length)], WANDERER_SPEED,
+							pursue ? EntityStore.FLAG_WANDER | EntityStore.FLAG_PURSUE : EntityStore.FLAG_WANDER,
+							AnimationRegistry.get(Entity.defaultSpritePath));
+					entityStore.setState(handle, Entity.State.WALKING);
+					entityStore.setBox(handle, WANDERER_BOX_WIDTH * MapManager.UNIT_SCALE,
+							WANDERER_BOX_HEIGHT * MapManager.UNIT_SCALE);
+					wanderers.add(handle);
+					broadphase.add(handle);
+					spawnedWanderers++;
+					if (pursue) {
+						pursuers++;
+					}
+					spawned++;
+					break;
+				}
+			}
+		}
+
+		Gdx.app.debug(TAG, "Spawned " + spawned + " wanderers");
+		return spawned;
+	}
+
+	/** Searches the current map, the paths and fields of the previous one are dropped */
+	private void updateNavigation() {
+		ResidentMap map = mapMgr.getCurrentResidentMap();
+		if (chunkedWorld != null) {
+			// Built from all the chunks, not only the streamed ones
+			HierarchicalGraph graph = chunkedWorld.getNavigationGraph();
+			pathfinder.setMap(chunkedWorld.getName(), graph);
+			flowFields.setGrid(graph != null ? graph.getGrid() : null);
+		} else if (map == null) {
+			pathfinder.setMap(null, null);
+			flowFields.setGrid(null);
+		} else {
+			pathfinder.setMap(map.getName(), map.getNavigationGraph());
+			flowFields.setGrid(map.getNavigationGraph().getGrid());
+		}
+	}
+
+	/** Moves the goal of the player field to its feet, and floods it within the step budget */
+	private void updatePursuit() {
+		pursuitField = null;
+		if (pursuers == 0) {
+			return;
+		}
+
+		Vector2 position = player.getCurrentPosition();
+		Rectangle box = player.getBoundingBox();
+		FlowField field = flowFields.setGoal(player.getHandle(), position.x + box.width * MapManager.UNIT_SCALE / 2,
+				position.y + box.height * MapManager.UNIT_SCALE / 2);
+		flowFields.update();
+
+		// The previous field is followed while the new goal is flooded
+		if (field != null && field.getGoal() >= 0) {
+			pursuitField = field;
+		}
+	}
+
+	/**
+	 * Move along the player field, lining up with the tiles first so that
+	 * the box doesn't catch on the corners of the blocked ones
+	 * @return the Entity.Direction ordinal, FlowField.NO_DIRECTION on the player's tile or out of its reach
+	 */
+	private int pursueDirection(int handle) {
+		WalkabilityGrid grid = pursuitField.getGrid();
+		float tileWidth = grid.getTileWidth() * MapManager.UNIT_SCALE;
+		float tileHeight = grid.getTileHeight() * MapManager.UNIT_SCALE;
+		float x = entityStore.x[handle];
+		float y = entityStore.y[handle];
+		float width = entityStore.boxWidth[handle];
+		float height = entityStore.boxHeight[handle];
+
+		int tileX = grid.toTileX((x + width / 2) / MapManager.UNIT_SCALE);
+		int tileY = grid.toTileY((y + height / 2) / MapManager.UNIT_SCALE);
+		int direction = pursuitField.getDirection(grid.index(tileX, tileY));
+		if (direction == FlowField.NO_DIRECTION) {
+			return direction;
+		}
+
+		// Half a move, the next one can't overshoot it
+		float tolerance = entityStore.velocityX[handle] * stepDelta / 2;
+		float left = tileX * tileWidth;
+		float bottom = tileY * tileHeight;
+
+		if (direction == Entity.Direction.UP.ordinal() || direction == Entity.Direction.DOWN.ordinal()) {
+			if (x < left - tolerance) {
+				return Entity.Direction.RIGHT.ordinal();
+			}
+			if (x + width > left + tileWidth + tolerance) {
+				return Entity.Direction.LEFT.ordinal();
+			}
+		} else {
+			if (y < bottom - tolerance) {
+				return Entity.Direction.UP.ordinal();
+			}
+			if (y + height > bottom + tileHeight + tolerance) {
+				return Entity.Direction.DOWN.ordinal();
+			}
+		}
+		return direction;
+	}
+
+	/**
+	 * Spawns the NPCs of the current map spawn points, the chunked worlds
+	 * have none. The spots only depend on the map.
+	 */
+	private void spawnMapNpcs() {
+		ResidentMap map = mapMgr.getCurrentResidentMap();
+		if (chunkedWorld != null || map == null) {
+			return;
+		}
+
+		npcSpawner.spawn(map.getNpcSpawns(), getCollisionGrid(), map.getName().hashCode());
+
+		Array<Npc> npcs = npcSpawner.getActive();
+		for (int i = 0; i < npcs.size; i++) {
+			Npc npc = npcs.get(i);
+			broadphase.add(npc.getHandle());
+			if (npc.isWandering()) {
+				wanderers.add(npc.getHandle());
+			}
+			if (npc.getSpawnPoint().isPursuing()) {
+				pursuers++;
+			}
+		}
+	}
+
+	/** Removes every NPC, the map ones go back to their pool */
+	public void despawnWanderers() {
+		for (int i = 0; i < wanderers.size; i++) {
+			entityStore.despawn(wanderers.get(i));
+		}
+		wanderers.clear();
+		spawnedWanderers = 0;
+		pursuers = 0;
+
+		// Also releases the NPCs standing still
+		npcSpawner.despawnAll();
+
+		broadphase.clear();
+		broadphase.add(player.getHandle());
+		entityPairs.clear();
+	}
+
+	/**
+	 * Uses as many threads for the entity stages, the calling thread included.
+	 * Results don't depend on the number of threads.
+	 */
+	public void setThreads(int threads) {
+		workerPool.dispose();
+		workerPool = new WorkerPool(threads);
+		workers = new Worker[workerPool.getWorkerCount()];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker();
+		}
+	}
+
+	public int getThreads() { return workerPool.getWorkerCount(); }
+
+	/**
+	 * Random roll of a wanderer for this step, a hash of the seed, the handle
+	 * and the step: the same whichever thread updates the wanderer
+	 * @return 64 random bits
+	 */
+	private long turnRoll(int handle) {
+		long h = wandererSeed ^ (handle * 0x9E3779B97F4A7C15L) ^ (stepCount * 0xC2B2AE3D27D4EB4FL);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/** Movers and results of one worker */
+	private static class Worker {
+		final SweptMover mover = new SweptMover();
+		final Rectangle box = new Rectangle();
+		final IntArray blocked = new IntArray();
+	}
+
+	/**
+	 * Steers the wanderers of a handle range, along the player field for the
+	 * pursuers and at random for the others, then advances them
+	 */
+	private class UpdateTask implements WorkerPool.Task {
+		@Override
+		public void run(int worker, int from, int to) {
+			byte wandering = EntityStore.FLAG_ALIVE | EntityStore.FLAG_WANDER;
+			for (int handle = from; handle < to; handle++) {
+				byte flags = entityStore.flags[handle];
+				if ((flags & wandering) != wandering) {
+					continue;
+				}
+
+				if (pursuitField != null && (flags & EntityStore.FLAG_PURSUE) != 0) {
+					int direction = pursueDirection(handle);
+					if (direction != FlowField.NO_DIRECTION) {
+						entityStore.direction[handle] = (byte) direction;
+						continue;
+					}
+				}
+
+				long roll = turnRoll(handle);
+				// 24 high bits as a float in [0, 1)
+				if ((roll >>> 40) * (1f / (1 << 24)) < WANDERER_TURN_CHANCE) {
+					entityStore.direction[handle] = (byte) ((roll & 0xFFFF) % DIRECTIONS.length);
+				}
+			}
+
+			entityStore.update(from, to, stepDelta);
+		}
+	}
+
+	/** Sweeps a range of wanderers, the blocked ones are listed in the worker buffer */
+	private class MoveTask implements WorkerPool.Task {
+		@Override
+		public void run(int worker, int from, int to) {
+			Worker state = workers[worker];
+			state.blocked.clear();
+
+			for (int i = from; i < to; i++) {
+				if (moveWanderer(wanderers.get(i), state.mover, state.box)) {
+					state.blocked.add(wanderers.get(i));
+				}
+			}
+		}
+	}
+
+	/** Sweeps the player box from its position towards its next position */
+	private void movePlayer() {
+		int handle = player.getHandle();
+		Rectangle box = player.getBoundingBox();
+		float x = entityStore.x[handle] / MapManager.UNIT_SCALE;
+		float y = entityStore.y[handle] / MapManager.UNIT_SCALE;
+
+		playerBox.set(x, y, box.width, box.height);
+		mover.move(getCollisionGrid(), playerBox, entityStore.nextX[handle] / MapManager.UNIT_SCALE - x,
+				entityStore.nextY[handle] / MapManager.UNIT_SCALE - y);
+
+		player.setCurrentPosition(playerBox.x * MapManager.UNIT_SCALE, playerBox.y * MapManager.UNIT_SCALE);
+		// A blocked destination isn't tried again by the next steps
+		entityStore.nextX[handle] = entityStore.x[handle];
+		entityStore.nextY[handle] = entityStore.y[handle];
+	}
+
+	/** Sweeps the wanderers towards their next positions, they turn around when blocked */
+	private void moveWanderers() {
+		stepGrid = getCollisionGrid();
+		wandererMaxX = getWidthPixels() - WANDERER_BOX_WIDTH;
+		wandererMaxY = getHeightPixels() - WANDERER_BOX_HEIGHT;
+
+		workerPool.run(moveTask, wanderers.size);
+
+		// Merged in worker order, the ranges are contiguous
+		blockedWanderers.clear();
+		for (int i = 0; i < workers.length; i++) {
+			blockedWanderers.addAll(workers[i].blocked);
+			workers[i].blocked.clear();
+		}
+	}
+
+	/**
+	 * Only writes the wanderer's own entries of the store, wanderers are
+	 * moved in parallel
+	 * @return true if the wanderer has been blocked
+	 */
+	private boolean moveWanderer(int handle, SweptMover wandererMover, Rectangle box) {
+		float x = entityStore.x[handle] / MapManager.UNIT_SCALE;
+		float y = entityStore.y[handle] / MapManager.UNIT_SCALE;
+		box.set(x, y, WANDERER_BOX_WIDTH, WANDERER_BOX_HEIGHT);
+
+		boolean blocked = wandererMover.move(stepGrid, box, entityStore.nextX[handle] / MapManager.UNIT_SCALE - x,
+				entityStore.nextY[handle] / MapManager.UNIT_SCALE - y);
+		boolean outside = box.x < 0 || box.y < 0 || box.x > wandererMaxX || box.y > wandererMaxY;
+
+		if (blocked || outside) {
+			// Opposite direction
+			entityStore.direction[handle] = (byte) ((entityStore.direction[handle] + 2) % DIRECTIONS.length);
+		}
+		if (!outside) {
+			entityStore.x[handle] = box.x * MapManager.UNIT_SCALE;
+			entityStore.y[handle] = box.y * MapManager.UNIT_SCALE;
+		}
+		return blocked || outside;
+	}
+
+	private boolean isCollisionWithMapLayer(Rectangle boundingBox) {
+		// Only the grid cells touched by the bounding box are tested
+		return getCollisionGrid().overlapsAny(boundingBox);
+	}
+
+	/** @return the collision rectangles of the current map, or of the resident chunks */
+	public SpatialGrid getCollisionGrid() {
+		return chunkedWorld != null ? chunkedWorld.getCollisionGrid() : mapMgr.getCollisionGrid();
+	}
+
+	/** @return the current map width in pixels, 0 before the first load */
+	public float getWidthPixels() {
+		if (chunkedWorld != null) {
+			return chunkedWorld.getWidthPixels();
+		}
+		ResidentMap map = mapMgr.getCurrentResidentMap();
+		return map == null ? 0 : map.getWidthPixels();
+	}
+
+	/** @return the current map height in pixels, 0 before the first load */
+	public float getHeightPixels() {
+		if (chunkedWorld != null) {
+			return chunkedWorld.getHeightPixels();
+		}
+		ResidentMap map = mapMgr.getCurrentResidentMap();
+		return map == null ? 0 : map.getHeightPixels();
+	}
+
+	private Vector2 getPlayerPixels() {
+		Vector2 position = player.getCurrentPosition();
+		return playerPixels.set(position.x / MapManager.UNIT_SCALE, position.y / MapManager.UNIT_SCALE);
+	}
+
+	private boolean updatePortalLayerActivation(Rectangle boundingBox) {
+		pendingPortalMapName = null;
+		triggerSystem.update(player, boundingBox);
+
+		// Request the map once the events have been dispatched
+		if (pendingPortalMapName == null) {
+			return false;
+		}
+
+		String destination = pendingPortalMapName;
+		pendingPortalMapName = null;
+
+		// Remember where the player comes back
+		if (chunkedWorld != null) {
+			chunkedWorld.getClosestPlayerStart(getPlayerPixels(), chunkedWorld.getLastPosition());
+		} else {
+			mapMgr.setClosestStartPositionFromScaledUnits(player.getCurrentPosition());
+		}
+
+		ChunkedWorld destinationWorld = mapMgr.getChunkedWorld(destination);
+		if (destinationWorld != null) {
+			enterChunkedWorld(destinationWorld);
+		} else {
+			mapMgr.requestMap(destination);
+		}
+		Gdx.app.debug(TAG, "Portal Activated");
+		return true;
+	}
+
+	/** Loads the chunks around the last position in the world and moves the player there */
+	private void enterChunkedWorld(ChunkedWorld world) {
+		if (chunkedWorld != null && chunkedWorld != world) {
+			chunkedWorld.unloadAll();
+		}
+		chunkedWorld = world;
+		world.setBlockingStreaming(deterministicStreaming);
+
+		Vector2 start = world.getLastPosition();
+		world.loadAround(start.x, start.y);
+		player.init(start.x * MapManager.UNIT_SCALE, start.y * MapManager.UNIT_SCALE);
+		triggerSystem.setIndex(world.getTriggerIndex());
+		controller.cancelPath();
+		updateNavigation();
+		despawnWanderers();
+		chunkedWorldEntered = true;
+	}
+
+	/** Requests the destination map when the player enters a portal */
+	private class PortalListener implements TriggerListener {
+		@Override
+		public void onTriggerEnter(Entity entity, Trigger trigger) {
+			if (entity != player || !trigger.isFromLayer(MapManager.MAP_PORTAL_LAYER)) {
+				return;
+			}
+
+			// Portals are named after their destination map
+			if (trigger.getName() != null && pendingPortalMapName == null) {
+				pendingPortalMapName = trigger.getName();
+			}
+		}
+
+		@Override
+		public void onTriggerStay(Entity entity, Trigger trigger) {
+		}
+
+		@Override
+		public void onTriggerExit(Entity entity, Trigger trigger) {
+		}
+	}
+
+	public void dispose() {
+		if (chunkedWorld != null) {
+			chunkedWorld.unloadAll();
+		}
+		despawnWanderers();
+		player.dispose();
+		AnimationRegistry.dispose();
+		controller.dispose();
+		workerPool.dispose();
+	}
+
+	public MapManager getMapManager() { return mapMgr; }
+
+	public EntityStore getEntityStore() { return entityStore; }
+
+	public Entity getPlayer() { return player; }
+
+	public PlayerController getController() { return controller; }
+
+	public PhaseTimer getPhaseTimer() { return phaseTimer; }
+
+	public TriggerSystem getTriggerSystem() { return triggerSystem; }
+
+	/** @return the world streamed around the player, null when the current map is loaded whole */
+	public ChunkedWorld getChunkedWorld() { return chunkedWorld; }
+
+	public SweepAndPrune getBroadphase() { return broadphase; }
+
+	/** @return the wanderers that were blocked or turned around at the last step */
+	public IntArray getBlockedWanderers() { return blockedWanderers; }
+
+	/** @return the mover of the entities, exposes the query and impact counters */
+	public SweptMover getMover() { return mover; }
+
+	/** @return the entities overlapping at the last step, handles two by two */
+	public IntArray getEntityPairs() { return entityPairs; }
+
+	/** @return the name of the current map or chunked world, null before the first load */
+	public String getCurrentMapName() {
+		if (chunkedWorld != null) {
+			return chunkedWorld.getName();
+		}
+		ResidentMap map = mapMgr.getCurrentResidentMap();
+		return map == null ? null : map.getName();
+	}
+
+	/**
+	 * Makes the simulation only depend on the inputs and frame deltas, for
+	 * recordings and replays: the chunks are streamed synchronously and, when
+	 * replaying, the requested maps are swapped only on scheduleMapSwap()
+	 * @param deferredMapSwaps true when replaying
+	 */
+	public void setDeterministicStreaming(boolean deterministicStreaming, boolean deferredMapSwaps) {
+		this.deterministicStreaming = deterministicStreaming;
+		mapMgr.setDeferredSwaps(deferredMapSwaps);
+		if (chunkedWorld != null) {
+			chunkedWorld.setBlockingStreaming(deterministicStreaming);
+		}
+	}
+
+	/** Swaps the requested map on the next updateMapLoading(), blocking if it is still loading */
+	public void scheduleMapSwap() {
+		mapSwapScheduled = true;
+	}
+
+	/** @return the number of NPCs spawned by spawnWanderers(), the map ones excluded */
+	public int getWandererCount() { return spawnedWanderers; }
+
+	public Pathfinder getPathfinder() { return pathfinder; }
+
+	/** @return the flow fields the pursuers follow */
+	public FlowFieldService getFlowFields() { return flowFields; }
+
+	/** @return the spawner of the current map NPCs */
+	public NpcSpawner getNpcSpawner() { return npcSpawner; }
+}
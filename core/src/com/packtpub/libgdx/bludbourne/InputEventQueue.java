@@ -0,0 +1,117 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Preallocated ring buffer of timestamped input events. The InputProcessor
+ * callbacks push, the simulation step drains in arrival order. When full,
+ * the oldest event is dropped.
+ */
+public class InputEventQueue {
+	// Event types
+	public static final int KEY_DOWN = 0;
+	public static final int KEY_UP = 1;
+	public static final int BUTTON_DOWN = 2;
+	public static final int BUTTON_UP = 3;
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final int[] types;
+	private final int[] codes;
+	/** Map coordinates of the button events, in pixels (unprojected by the PlayerController) */
+	private final int[] xs;
+	private final int[] ys;
+	/** TimeUtils.nanoTime() when the backend delivered the event */
+	private final long[] timestamps;
+
+	/** Index of the oldest event */
+	private int head = 0;
+	private int size = 0;
+
+	/** Events overwritten because the queue was full */
+	private int dropped = 0;
+
+	/** Events pushed since the creation */
+	private long pushed = 0;
+
+	public InputEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public InputEventQueue(int capacity) {
+		types = new int[capacity];
+		codes = new int[capacity];
+		xs = new int[capacity];
+		ys = new int[capacity];
+		timestamps = new long[capacity];
+	}
+
+	/** Adds a key event stamped with the current time */
+	public void push(int type, int code) {
+		push(type, code, 0, 0, TimeUtils.nanoTime());
+	}
+
+	/** Adds an event stamped with the current time */
+	public void push(int type, int code, int x, int y) {
+		push(type, code, x, y, TimeUtils.nanoTime());
+	}
+
+	public void push(int type, int code, int x, int y, long timestampNanos) {
+		if (size == types.length) {
+			head = (head + 1) % types.length;
+			size--;
+			dropped++;
+		}
+
+		int tail = (head + size) % types.length;
+		types[tail] = type;
+		codes[tail] = code;
+		xs[tail] = x;
+		ys[tail] = y;
+		timestamps[tail] = timestampNanos;
+		size++;
+		pushed++;
+	}
+
+	/** Removes the oldest event, read it first with the peek methods */
+	public void pop() {
+		if (size == 0) {
+			return;
+		}
+		head = (head + 1) % types.length;
+		size--;
+	}
+
+	public int peekType() { return types[head]; }
+
+	public int peekCode() { return codes[head]; }
+
+	public long peekTimestamp() { return timestamps[head]; }
+
+	public int peekX() { return xs[head]; }
+
+	public int peekY() { return ys[head]; }
+
+	/** @param index 0 for the oldest event, size() - 1 for the newest */
+	public int getType(int index) { return types[(head + index) % types.length]; }
+
+	public int getCode(int index) { return codes[(head + index) % types.length]; }
+
+	public int getX(int index) { return xs[(head + index) % types.length]; }
+
+	public int getY(int index) { return ys[(head + index) % types.length]; }
+
+	/** @return the number of events pushed since the creation, dropped ones included */
+	public long getPushed() { return pushed; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	public int size() { return size; }
+
+	public int getDropped() { return dropped; }
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
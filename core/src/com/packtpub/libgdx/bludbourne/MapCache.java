@@ -0,0 +1,162 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Resident maps keyed by map name. The least recently used maps are
+ * unloaded when the estimated memory goes over the budget; the pinned
+ * maps (the current one and the one about to replace it) are never evicted.
+ * A texture shared by several maps (the tileset atlas pages) is counted
+ * once, like the AssetManager keeps it loaded once.
+ */
+public class MapCache {
+	/** Debugging */
+	private static final String TAG = MapCache.class.getSimpleName();
+
+	/** Default budget: 64 MB */
+	public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+	/** Access ordered: the eldest entry is the least recently used */
+	private final LinkedHashMap<String, ResidentMap> maps = new LinkedHashMap<String, ResidentMap>(8, 0.75f, true);
+
+	private long budgetBytes;
+	private long residentBytes = 0;
+
+	/** Resident maps using each texture */
+	private final ObjectIntMap<Texture> textureUsers = new ObjectIntMap<Texture>();
+
+	/** Maps that can't be evicted */
+	private final Array<String> pinnedNames = new Array<String>(2);
+
+	// Counters
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	public MapCache() {
+		this(DEFAULT_BUDGET_BYTES);
+	}
+
+	public MapCache(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	/** @return the resident map, null on a miss */
+	public ResidentMap get(String mapName) {
+		ResidentMap map = maps.get(mapName);
+		if (map != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return map;
+	}
+
+	/** @return true if the map is resident, doesn't count as an access */
+	public boolean contains(String mapName) {
+		return maps.containsKey(mapName);
+	}
+
+	/** Adds a loaded map, may evict older maps */
+	public void put(ResidentMap map) {
+		ResidentMap previous = maps.put(map.getName(), map);
+		if (previous != null) {
+			release(previous);
+		}
+		retain(map);
+		evict();
+	}
+
+	/** Counts the map data, and its textures no other resident map uses */
+	private void retain(ResidentMap map) {
+		residentBytes += map.getDataBytes();
+		for (Texture texture : map.getTextures()) {
+			if (textureUsers.getAndIncrement(texture, 0, 1) == 0) {
+				residentBytes += ResidentMap.getTextureBytes(texture);
+			}
+		}
+	}
+
+	/** Uncounts the map data, and its textures no other resident map uses */
+	private void release(ResidentMap map) {
+		residentBytes -= map.getDataBytes();
+		for (Texture texture : map.getTextures()) {
+			if (textureUsers.getAndIncrement(texture, 0, -1) == 1) {
+				textureUsers.remove(texture, 0);
+				residentBytes -= ResidentMap.getTextureBytes(texture);
+			}
+		}
+	}
+
+	/** Protects the map from eviction (the current or the requested map) */
+	public void pin(String mapName) {
+		if (!pinnedNames.contains(mapName, false)) {
+			pinnedNames.add(mapName);
+		}
+	}
+
+	/** Makes the map evictable again, it is evicted once over the budget */
+	public void unpin(String mapName) {
+		if (pinnedNames.removeValue(mapName, false)) {
+			evict();
+		}
+	}
+
+	public boolean isPinned(String mapName) {
+		return pinnedNames.contains(mapName, false);
+	}
+
+	public void setBudgetBytes(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+		evict();
+	}
+
+	/** Unloads every resident map */
+	public void clear() {
+		for (ResidentMap map : maps.values()) {
+			Utility.unloadAsset(map.getPath());
+		}
+		maps.clear();
+		textureUsers.clear();
+		residentBytes = 0;
+		pinnedNames.clear();
+	}
+
+	private void evict() {
+		Iterator<ResidentMap> iterator = maps.values().iterator();
+
+		while (residentBytes > budgetBytes && iterator.hasNext()) {
+			ResidentMap map = iterator.next();
+			if (pinnedNames.contains(map.getName(), false)) {
+				continue;
+			}
+
+			iterator.remove();
+			release(map);
+			evictions++;
+			Utility.unloadAsset(map.getPath());
+			if (Utility.isDebugEnabled()) {
+				Gdx.app.debug(TAG, "Evicted " + map.getName() + " (" + (residentBytes / 1024) + " KB resident)");
+			}
+		}
+	}
+
+	public long getBudgetBytes() { return budgetBytes; }
+
+	public long getResidentBytes() { return residentBytes; }
+
+	public int size() { return maps.size(); }
+
+	public int getHits() { return hits; }
+
+	public int getMisses() { return misses; }
+
+	public int getEvictions() { return evictions; }
+}
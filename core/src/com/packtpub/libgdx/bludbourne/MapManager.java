@@ -2,32 +2,37 @@ package com.packtpub.libgdx.bludbourne;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.maps.MapLayer;
-import com.badlogic.gdx.maps.MapObject;
-import com.badlogic.gdx.maps.objects.RectangleMapObject;
 import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
-
-import java.util.Hashtable;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerIndex;
 
 public class MapManager {
 	/** Debugging */
 	private static final String TAG = MapManager.class.getSimpleName();
 	
 	/** Maps names associated with filepaths  **/
-	private Hashtable<String, String> mapTable;
+	private ObjectMap<String, String> mapTable;
 
-	/** Maps names associated with start positions */
-	private Hashtable<String, Vector2> playerStartLocationTable;
+	/** Maps names associated with start positions, updated in place */
+	private ObjectMap<String, Vector2> playerStartLocationTable;
 	
 	// Maps
 	private final static String TOP_WORLD = "TOP_WORLD";
 	private final static String TOWN = "TOWN";
 	private final static String CASTLE_OF_DOOM = "CASTLE_OF_DOOM";
 	// Map layers
-	private final static String MAP_COLLISION_LAYER = "MAP_COLLISION_LAYER";
-	private static final String MAP_SPAWNS_LAYER = "MAP_SPAWNS_LAYER";
-	private static final String MAP_PORTAL_LAYER = "MAP_PORTAL_LAYER";
-	private final static String PLAYER_START = "PLAYER_START";
+	final static String MAP_COLLISION_LAYER = "MAP_COLLISION_LAYER";
+	static final String MAP_SPAWNS_LAYER = "MAP_SPAWNS_LAYER";
+	public static final String MAP_PORTAL_LAYER = "MAP_PORTAL_LAYER";
+	final static String PLAYER_START = "PLAYER_START";
+
+	/** Layers whose objects are trigger volumes */
+	static final String[] TRIGGER_LAYERS = { MAP_PORTAL_LAYER };
 
 	// Starting position (?)
 	private Vector2 playerStartPositionRect;
@@ -39,31 +44,55 @@ public class MapManager {
 	/** Player Start in pixels */
 	private Vector2 playerStart;
 
-	// Current map instance
-	private TiledMap currentMap = null;
+	/** Returned by getPlayerStartUnitScaled() */
+	private Vector2 playerStartUnitScaled;
+
+	// Current map and its derived data
+	private ResidentMap currentMap = null;
 
 	// Current map name
 	private String currentMapName;
 
-	// Fast layer access
-	private MapLayer collisionLayer = null;
-	private MapLayer portalLayer = null;
-	private MapLayer spawnsLayer = null;
+	/** Loaded maps, the current one included */
+	private MapCache mapCache;
+
+	// Background loading
+	private String pendingMapName = null;
+	private String pendingMapPath = null;
+	private boolean pendingMapQueued = false;
+	private int loadBudgetMillis = 4;
+	private long lastLoadStepNanos = 0;
+	private long maxLoadStepNanos = 0;
+	private long lastSwapNanos = 0;
+	/** When set, update() loads but only completePendingMap() swaps (replays) */
+	private boolean deferredSwaps = false;
 
+	// Prefetched maps still loading, oldest first
+	private static final int MAX_PREFETCHED_MAPS = 2;
+	private Array<String> prefetchedNames = new Array<String>(MAX_PREFETCHED_MAPS);
+	private int prefetchHits = 0;
+	private int prefetchMisses = 0;
+
+	/** Split versions of the maps, null values for the maps that aren't split */
+	private ObjectMap<String, ChunkedWorld> chunkedWorlds = new ObjectMap<String, ChunkedWorld>();
+
+	/** Returned while no map is loaded */
+	private static final SpatialGrid EMPTY_GRID = new SpatialGrid();
 
 	// 16 pixels = 1 Unit
 	public static final float UNIT_SCALE = 1 / 16f;
 	
 	public MapManager() {
 		// Associating maps with their filepaths
-		mapTable = new Hashtable<String, String>();
+		mapTable = new ObjectMap<String, String>();
 		mapTable.put(TOP_WORLD, "maps/topworld.tmx");
 		mapTable.put(TOWN, "maps/town.tmx");
 		mapTable.put(CASTLE_OF_DOOM, "maps/castle_of_doom.tmx");
 
 		// Init start positions
 		playerStart = new Vector2(0, 0);
-		playerStartLocationTable = new Hashtable<String, Vector2>();
+		playerStartUnitScaled = new Vector2(0, 0);
+		playerStartLocationTable = new ObjectMap<String, Vector2>();
 		playerStartLocationTable.put(TOP_WORLD, playerStart.cpy());
 		playerStartLocationTable.put(TOWN, playerStart.cpy());
 		playerStartLocationTable.put(CASTLE_OF_DOOM, playerStart.cpy());
@@ -72,55 +101,282 @@ public class MapManager {
 		playerStartPositionRect = new Vector2(0, 0);
 		closestPlayerStartPosition = new Vector2(0, 0);
 		convertedUnits = new Vector2(0, 0);
+		mapCache = new MapCache();
 	}
 
-	/** Loads the specified map */
+	/** Loads the specified map, blocks until it is ready */
 	public void loadMap(String mapName) {
-		// Reset the start location
-		playerStart.set(0, 0);
-
 		// Get the map path
-		String mapFullPath = mapTable.get(mapName);
+		String mapFullPath = getMapPath(mapName);
 
 		// Map path check
-		if (mapFullPath == null || mapFullPath.isEmpty()) {
+		if (mapFullPath == null) {
 			Gdx.app.debug(TAG, "Map is invalid");
 			return;
 		}
 
-		// Dispose the current map if there is any
-		if (currentMap != null) {
-			currentMap.dispose();
+		// A blocking load supersedes any background load
+		cancelPendingMap();
+
+		if (!mapCache.contains(mapName)) {
+			if (prefetchedNames.removeValue(mapName, false)) {
+				// Already queued, the prefetch reference becomes the map one
+				Utility.assetManager.finishLoadingAsset(mapFullPath);
+			} else {
+				// Load the map
+				Utility.loadMapAsset(mapFullPath);
+			}
+
+			// Asset checking
+			if (!Utility.isAssetLoaded(mapFullPath)) {
+				Gdx.app.debug(TAG, "Map not loaded");
+				return;
+			}
 		}
 
-		// Load the map
-		Utility.loadMapAsset(mapFullPath);
+		activateMap(mapName, mapFullPath);
+	}
 
-		// Asset checking
-		if (Utility.isAssetLoaded(mapFullPath)) {
-			// Update references
-			currentMap = Utility.getMapAsset(mapFullPath);
-			currentMapName = mapName;
-		} else {
-			Gdx.app.debug(TAG, "Map not loaded");
+	/**
+	 * Queues the specified map for background loading. The current map stays
+	 * active until update() swaps it with the new one.
+	 */
+	public void requestMap(String mapName) {
+		String mapFullPath = getMapPath(mapName);
+
+		if (mapFullPath == null) {
+			Gdx.app.debug(TAG, "Map is invalid");
 			return;
 		}
 
-		// Update references for fast access
-		collisionLayer = currentMap.getLayers().get(MAP_COLLISION_LAYER);
-		if (collisionLayer == null) {
-			Gdx.app.debug(TAG, "No collision layer !");
-		}
-		
-		portalLayer = currentMap.getLayers().get(MAP_PORTAL_LAYER);
-		if (portalLayer == null) {
-			Gdx.app.debug(TAG, "No portal layer !");
+		if (mapFullPath.equals(pendingMapPath)) {
+			return;
 		}
-		
-		spawnsLayer = currentMap.getLayers().get(MAP_SPAWNS_LAYER);
-		if (spawnsLayer == null) {
-			Gdx.app.debug(TAG, "No spawn layer !");
+		cancelPendingMap();
+
+		// A resident or prefetched map is already loaded or queued
+		adoptPrefetchedMaps();
+		boolean queued = false;
+		if (mapCache.contains(mapName)) {
+			// Kept until the swap, an adopted prefetch could evict it meanwhile
+			mapCache.pin(mapName);
+			prefetchHits++;
+		} else if (prefetchedNames.removeValue(mapName, false)) {
+			prefetchMisses++;
+			queued = true;
 		} else {
+			prefetchMisses++;
+			queued = Utility.queueMapAsset(mapFullPath);
+		}
+		pendingMapName = mapName;
+		pendingMapPath = mapFullPath;
+		pendingMapQueued = queued;
+		maxLoadStepNanos = 0;
+	}
+
+	/**
+	 * Loads the specified map in the background without making it current,
+	 * a following requestMap() will find it already loaded
+	 * @return true if the map has been queued
+	 */
+	public boolean prefetchMap(String mapName) {
+		String mapFullPath = getMapPath(mapName);
+
+		if (mapFullPath == null || mapName.equals(currentMapName) || mapFullPath.equals(pendingMapPath)
+				|| mapCache.contains(mapName) || prefetchedNames.contains(mapName, false)) {
+			return false;
+		}
+
+		// Release the oldest prefetch, possibly still queued
+		if (prefetchedNames.size >= MAX_PREFETCHED_MAPS) {
+			Utility.releaseAsset(getMapPath(prefetchedNames.removeIndex(0)));
+		}
+
+		if (!Utility.queueMapAsset(mapFullPath)) {
+			return false;
+		}
+		prefetchedNames.add(mapName);
+		return true;
+	}
+
+	/**
+	 * Advances the background loading within the per-frame budget
+	 * @return true if the requested map became the current map
+	 */
+	public boolean update() {
+		// Requested or prefetched maps still loading
+		if (pendingMapPath == null && Utility.numberAssetsQueued() == 0) {
+			return false;
+		}
+
+		long start = TimeUtils.nanoTime();
+		Utility.updateAssetLoading(loadBudgetMillis);
+		lastLoadStepNanos = TimeUtils.nanoTime() - start;
+		maxLoadStepNanos = Math.max(maxLoadStepNanos, lastLoadStepNanos);
+
+		adoptPrefetchedMaps();
+
+		if (pendingMapPath == null || deferredSwaps) {
+			return false;
+		}
+		if (!mapCache.contains(pendingMapName) && !Utility.isAssetLoaded(pendingMapPath)) {
+			return false;
+		}
+
+		swapPendingMap();
+		return true;
+	}
+
+	/**
+	 * Blocks until the requested map is loaded and makes it current, used
+	 * to swap on a given frame whatever the loading speed
+	 * @return true if a map was requested
+	 */
+	public boolean completePendingMap() {
+		if (pendingMapPath == null) {
+			return false;
+		}
+		if (!mapCache.contains(pendingMapName) && !Utility.isAssetLoaded(pendingMapPath)) {
+			Utility.assetManager.finishLoadingAsset(pendingMapPath);
+		}
+
+		adoptPrefetchedMaps();
+		swapPendingMap();
+		return true;
+	}
+
+	/** @param deferredSwaps true to swap the requested maps only through completePendingMap() */
+	public void setDeferredSwaps(boolean deferredSwaps) {
+		this.deferredSwaps = deferredSwaps;
+	}
+
+	private void swapPendingMap() {
+		String mapName = pendingMapName;
+		String mapFullPath = pendingMapPath;
+		pendingMapName = null;
+		pendingMapPath = null;
+		pendingMapQueued = false;
+
+		long start = TimeUtils.nanoTime();
+		activateMap(mapName, mapFullPath);
+		lastSwapNanos = TimeUtils.nanoTime() - start;
+
+		if (Utility.isDebugEnabled()) {
+			Gdx.app.debug(TAG, "Map swapped: " + mapName + " (swap " + TimeUtils.nanosToMillis(lastSwapNanos)
+					+ " ms, worst load step " + TimeUtils.nanosToMillis(maxLoadStepNanos) + " ms)");
+		}
+	}
+
+	/** @return true while a requested map is loading in the background */
+	public boolean isLoading() { return pendingMapPath != null; }
+
+	/** Sets the time AssetManager may spend loading during each update() */
+	public void setLoadBudgetMillis(int loadBudgetMillis) {
+		this.loadBudgetMillis = Math.max(1, loadBudgetMillis);
+	}
+
+	/** Sets the memory budget of the resident maps, in bytes */
+	public void setMapCacheBudget(long budgetBytes) {
+		mapCache.setBudgetBytes(budgetBytes);
+	}
+
+	/** @return the resident maps, exposes the hit/miss/eviction counters */
+	public MapCache getMapCache() { return mapCache; }
+
+	/** @return the time spent loading during the last update(), in nanoseconds */
+	public long getLastLoadStepNanos() { return lastLoadStepNanos; }
+
+	/** @return the longest update() step of the current or last background load, in nanoseconds */
+	public long getMaxLoadStepNanos() { return maxLoadStepNanos; }
+
+	/** @return the time the last swap took (layers, indexes...), in nanoseconds */
+	public long getLastSwapNanos() { return lastSwapNanos; }
+
+	/** @return the number of requested maps that were already resident */
+	public int getPrefetchHits() { return prefetchHits; }
+
+	/** @return the number of requested maps that had to be loaded (or were still loading) */
+	public int getPrefetchMisses() { return prefetchMisses; }
+
+	/** @return the path of the given map, null if unknown */
+	public String getMapPath(String mapName) {
+		if (mapName == null) {
+			return null;
+		}
+
+		String mapFullPath = mapTable.get(mapName);
+		if (mapFullPath == null || mapFullPath.isEmpty()) {
+			return null;
+		}
+		return Utility.resolveMapPath(mapFullPath);
+	}
+
+	/**
+	 * @return the chunked version of the map (maps/<name>/world.json) if it
+	 * has been split by :core:splitWorlds, null otherwise
+	 */
+	public ChunkedWorld getChunkedWorld(String mapName) {
+		if (!chunkedWorlds.containsKey(mapName)) {
+			String mapFullPath = mapTable.get(mapName);
+			ChunkedWorld world = null;
+
+			if (mapFullPath != null && mapFullPath.endsWith(".tmx")) {
+				world = ChunkedWorld.load(mapName, mapFullPath.substring(0, mapFullPath.length() - ".tmx".length()));
+			}
+			chunkedWorlds.put(mapName, world);
+		}
+		return chunkedWorlds.get(mapName);
+	}
+
+	private void cancelPendingMap() {
+		// Still queued or loading maps are removed from the queue, they would never be adopted
+		if (pendingMapQueued) {
+			Utility.releaseAsset(pendingMapPath);
+		} else if (pendingMapName != null && !pendingMapName.equals(currentMapName)) {
+			mapCache.unpin(pendingMapName);
+		}
+		pendingMapName = null;
+		pendingMapPath = null;
+		pendingMapQueued = false;
+	}
+
+	/** Moves the prefetched maps that finished loading into the cache */
+	private void adoptPrefetchedMaps() {
+		for (int i = prefetchedNames.size - 1; i >= 0; i--) {
+			String mapName = prefetchedNames.get(i);
+			String mapFullPath = getMapPath(mapName);
+
+			if (Utility.isAssetLoaded(mapFullPath)) {
+				prefetchedNames.removeIndex(i);
+				mapCache.put(ResidentMap.build(mapName, mapFullPath, Utility.getMapAsset(mapFullPath)));
+			}
+		}
+	}
+
+	/** Makes the loaded map the current one, the previous one stays in the cache */
+	private void activateMap(String mapName, String mapFullPath) {
+		// Reset the start location
+		playerStart.set(0, 0);
+
+		// Pinned first, a map over the budget on its own isn't evicted by its own put()
+		mapCache.pin(mapName);
+
+		// Derived data is only built on a cache miss
+		ResidentMap map = mapCache.get(mapName);
+		if (map == null) {
+			map = ResidentMap.build(mapName, mapFullPath, Utility.getMapAsset(mapFullPath));
+			mapCache.put(map);
+		}
+
+		// Update references, the previous map becomes evictable
+		String previousMapName = currentMap == null ? null : currentMap.getName();
+		currentMap = map;
+		currentMapName = mapName;
+		if (previousMapName != null && !previousMapName.equals(mapName)) {
+			mapCache.unpin(previousMapName);
+		}
+
+		if (currentMap.hasSpawns()) {
 			Vector2 start = playerStartLocationTable.get(currentMapName);
 			
 			if (start.isZero()) {
@@ -138,22 +394,29 @@ public class MapManager {
 			currentMapName = TOWN;
 			loadMap(currentMapName);
 		}
-		return currentMap;
+		return currentMap == null ? null : currentMap.getMap();
 	}
 
-	/** @return the collision layer */
-	public MapLayer getCollisionLayer() { return collisionLayer; }
+	/** @return the current map with its derived data, null before the first load */
+	public ResidentMap getCurrentResidentMap() { return currentMap; }
 
-	/** @return the portal layer */
-	public MapLayer getPortalLayer() { return portalLayer; }
+	/** @return the collision layer, null for a compiled map (see getCollisionGrid()) */
+	public MapLayer getCollisionLayer() { return currentMap == null ? null : currentMap.getCollisionLayer(); }
+
+	/** @return the collision rectangles index of the current map */
+	public SpatialGrid getCollisionGrid() { return currentMap == null ? EMPTY_GRID : currentMap.getCollisionGrid(); }
+
+	/** @return the portal layer, null for a compiled map (see getTriggerIndex()) */
+	public MapLayer getPortalLayer() { return currentMap == null ? null : currentMap.getPortalLayer(); }
+
+	/** @return the trigger volumes of the current map */
+	public TriggerIndex getTriggerIndex() { return currentMap == null ? TriggerIndex.EMPTY : currentMap.getTriggerIndex(); }
 	
-	/** @return the player start coordinates in map units */
+	/** @return the player start coordinates in map units, the vector is reused by the next call */
 	public Vector2 getPlayerStartUnitScaled() {
-		Vector2 playerStart = this.playerStart.cpy();
-		playerStart.set(playerStart.x * UNIT_SCALE, playerStart.y * UNIT_SCALE);
-		return playerStart;
+		return playerStartUnitScaled.set(playerStart.x * UNIT_SCALE, playerStart.y * UNIT_SCALE);
 	}
-	
+
 	private void setClosestStartPosition(final Vector2 position) {
 		// Get last known position on this map
 		playerStartPositionRect.set(0, 0);
@@ -162,23 +425,22 @@ public class MapManager {
 		
 		// Go through all player start positions and choose closets to
 		// last known position
-		for (MapObject object : spawnsLayer.getObjects()) {
-			if (object.getName().equalsIgnoreCase(PLAYER_START)) {
-				((RectangleMapObject) object).getRectangle().getPosition(playerStartPositionRect);
-				float distance = position.dst2(playerStartPositionRect);
-				
-				if (distance < shortestDistance || shortestDistance == 0) {
-					closestPlayerStartPosition.set(playerStartPositionRect);
-					shortestDistance = distance;
-				}
+		Array<Rectangle> playerStarts = currentMap.getPlayerStarts();
+		for (int i = 0; i < playerStarts.size; i++) {
+			playerStarts.get(i).getPosition(playerStartPositionRect);
+			float distance = position.dst2(playerStartPositionRect);
+			
+			if (distance < shortestDistance || shortestDistance == 0) {
+				closestPlayerStartPosition.set(playerStartPositionRect);
+				shortestDistance = distance;
 			}
 		}
 		
-		playerStartLocationTable.put(currentMapName, closestPlayerStartPosition.cpy());
+		playerStartLocationTable.get(currentMapName).set(closestPlayerStartPosition);
 	}
 	
 	public void setClosestStartPositionFromScaledUnits(Vector2 position) {
-		if (UNIT_SCALE <= 0) return;
+		if (UNIT_SCALE <= 0 || currentMap == null) return;
 		
 		convertedUnits.set(position.x / UNIT_SCALE, position.y / UNIT_SCALE);
 		setClosestStartPosition(convertedUnits);
@@ -0,0 +1,119 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.packtpub.libgdx.bludbourne.triggers.Trigger;
+
+/**
+ * Guesses the next map from the portals of the current map and the player
+ * distance/heading towards them, and loads it in the background so that
+ * walking through the portal hits an already loaded map.
+ */
+public class MapPrefetcher {
+	/** Debugging */
+	private static final String TAG = MapPrefetcher.class.getSimpleName();
+
+	/** Seconds between two evaluations */
+	private static final float EVALUATION_INTERVAL = 0.25f;
+
+	/** Portals further than this (map units) are ignored */
+	private float prefetchRadius = 12f;
+
+	/** Weight of the heading compared to the distance */
+	private float headingWeight = 0.5f;
+
+	/** Minimum score to start a prefetch */
+	private float scoreThreshold = 0.3f;
+
+	private final MapManager mapMgr;
+	private float timeSinceEvaluation = EVALUATION_INTERVAL;
+
+	// Temporary vectors
+	private final Vector2 heading = new Vector2();
+	private final Vector2 toPortal = new Vector2();
+
+	public MapPrefetcher(MapManager mapMgr) {
+		this.mapMgr = mapMgr;
+	}
+
+	/**
+	 * @param position player position in map units
+	 * @param direction player facing direction
+	 * @param walking true if the player is moving, the heading counts only then
+	 */
+	public void update(Vector2 position, Entity.Direction direction, boolean walking, float delta) {
+		timeSinceEvaluation += delta;
+		if (timeSinceEvaluation < EVALUATION_INTERVAL || mapMgr.isLoading()) {
+			return;
+		}
+		timeSinceEvaluation = 0;
+
+		setHeading(direction);
+		float headingFactor = walking ? headingWeight : 0f;
+
+		Array<Trigger> triggers = mapMgr.getTriggerIndex().getTriggers();
+		Trigger best = null;
+		float bestScore = scoreThreshold;
+
+		for (int i = 0; i < triggers.size; i++) {
+			Trigger trigger = triggers.get(i);
+			if (!trigger.isFromLayer(MapManager.MAP_PORTAL_LAYER) || trigger.getName() == null) {
+				continue;
+			}
+
+			// Portal center in map units
+			Rectangle rectangle = trigger.getRectangle();
+			toPortal.set((rectangle.x + rectangle.width / 2) * MapManager.UNIT_SCALE,
+					(rectangle.y + rectangle.height / 2) * MapManager.UNIT_SCALE);
+			toPortal.sub(position);
+
+			float distance = toPortal.len();
+			if (distance > prefetchRadius) {
+				continue;
+			}
+
+			// Closer is better, walking towards it is better
+			float score = 1f - distance / prefetchRadius;
+			if (distance > 0) {
+				score += headingFactor * heading.dot(toPortal.x / distance, toPortal.y / distance);
+			}
+
+			if (score > bestScore) {
+				best = trigger;
+				bestScore = score;
+			}
+		}
+
+		if (best != null && mapMgr.prefetchMap(best.getName()) && Utility.isDebugEnabled()) {
+			Gdx.app.debug(TAG, "Prefetching " + best.getName() + " (score " + bestScore + ")");
+		}
+	}
+
+	private void setHeading(Entity.Direction direction) {
+		switch (direction) {
+			case UP:
+				heading.set(0, 1);
+				break;
+			case DOWN:
+				heading.set(0, -1);
+				break;
+			case LEFT:
+				heading.set(-1, 0);
+				break;
+			case RIGHT:
+				heading.set(1, 0);
+				break;
+			default:
+				heading.setZero();
+				break;
+		}
+	}
+
+	public void setPrefetchRadius(float prefetchRadius) { this.prefetchRadius = prefetchRadius; }
+
+	public void setHeadingWeight(float headingWeight) { this.headingWeight = headingWeight; }
+
+	public void setScoreThreshold(float scoreThreshold) { this.scoreThreshold = scoreThreshold; }
+}
@@ -0,0 +1,42 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.utils.Pool;
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
+
+/**
+ * NPC spawned from a map spawn point. Its state lives in the EntityStore,
+ * the object is kept by the NpcSpawner pool between the maps.
+ */
+public class Npc implements Pool.Poolable {
+	/** Handle in the store, NONE while pooled */
+	private int handle = EntityStore.NONE;
+
+	/** Where the NPC comes from */
+	private SpawnPoint spawnPoint = null;
+
+	/** Shared walk animations, from the AnimationRegistry */
+	private AnimationSet animationSet = null;
+
+	void set(int handle, SpawnPoint spawnPoint, AnimationSet animationSet) {
+		this.handle = handle;
+		this.spawnPoint = spawnPoint;
+		this.animationSet = animationSet;
+	}
+
+	@Override
+	public void reset() {
+		handle = EntityStore.NONE;
+		spawnPoint = null;
+		animationSet = null;
+	}
+
+	/** @return the handle of the NPC in the store */
+	public int getHandle() { return handle; }
+
+	public SpawnPoint getSpawnPoint() { return spawnPoint; }
+
+	public AnimationSet getAnimationSet() { return animationSet; }
+
+	/** @return true if the NPC walks around, false if it stands still */
+	public boolean isWandering() { return spawnPoint != null && spawnPoint.isWandering(); }
+}
@@ -0,0 +1,148 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import com.packtpub.libgdx.bludbourne.animation.AnimationRegistry;
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+
+/**
+ * Spawns the NPCs of the map spawn points in the EntityStore. The Npc
+ * objects come from a pool and go back to it when the map is left, and
+ * the animations are shared through the AnimationRegistry: once the pool
+ * is warm, loading a crowded map allocates nothing per NPC.
+ */
+public class NpcSpawner {
+	/** Debugging */
+	private static final String TAG = NpcSpawner.class.getSimpleName();
+
+	/** Tries to find a free spot in the spawn area */
+	private static final int SPAWN_TRIES = 20;
+
+	/** Pooled NPCs kept at most, the extra ones are left to the GC */
+	private static final int MAX_POOLED = 4096;
+
+	private static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+
+	private final EntityStore store;
+
+	// NPCs bounding box in pixels
+	private final float boxWidth;
+	private final float boxHeight;
+
+	private final Pool<Npc> pool;
+
+	/** NPCs of the current map */
+	private final Array<Npc> active = new Array<Npc>(false, 64);
+
+	private final RandomXS128 random = new RandomXS128();
+	private final Rectangle box = new Rectangle();
+
+	/** Npc objects ever created, stops growing once the pool covers the largest map */
+	private int created = 0;
+
+	/**
+	 * @param boxWidth NPCs bounding box in pixels
+	 * @param boxHeight NPCs bounding box in pixels
+	 */
+	public NpcSpawner(EntityStore store, float boxWidth, float boxHeight) {
+		this.store = store;
+		this.boxWidth = boxWidth;
+		this.boxHeight = boxHeight;
+
+		pool = new Pool<Npc>(64, MAX_POOLED) {
+			@Override
+			protected Npc newObject() {
+				created++;
+				return new Npc();
+			}
+		};
+	}
+
+	/**
+	 * Spawns the NPCs of every spawn point, on the spots free of collision
+	 * @param seed the same seed places the NPCs at the same spots
+	 * @return the number of spawned NPCs, see getActive()
+	 */
+	public int spawn(Array<SpawnPoint> spawnPoints, SpatialGrid collisionGrid, long seed) {
+		random.setSeed(seed);
+		int spawned = 0;
+
+		for (int i = 0; i < spawnPoints.size; i++) {
+			SpawnPoint spawnPoint = spawnPoints.get(i);
+			// Built once per sheet
+			AnimationSet animationSet = AnimationRegistry.get(spawnPoint.getSpritePath());
+
+			for (int n = 0; n < spawnPoint.getCount(); n++) {
+				if (findFreeSpot(spawnPoint.getArea(), collisionGrid)) {
+					spawnAt(spawnPoint, animationSet);
+					spawned++;
+				}
+			}
+		}
+
+		if (Utility.isDebugEnabled()) {
+			Gdx.app.debug(TAG, "Spawned " + spawned + " NPCs, " + pool.getFree() + " still pooled, " + created
+					+ " created");
+		}
+		return spawned;
+	}
+
+	/** Places the box at random in the area, the area origin being tried last */
+	private boolean findFreeSpot(Rectangle area, SpatialGrid collisionGrid) {
+		float rangeX = Math.max(0, area.width - boxWidth);
+		float rangeY = Math.max(0, area.height - boxHeight);
+
+		for (int tries = 0; tries < SPAWN_TRIES; tries++) {
+			box.set(area.x + random.nextFloat() * rangeX, area.y + random.nextFloat() * rangeY, boxWidth, boxHeight);
+			if (!collisionGrid.overlapsAny(box)) {
+				return true;
+			}
+		}
+
+		box.set(area.x, area.y, boxWidth, boxHeight);
+		return !collisionGrid.overlapsAny(box);
+	}
+
+	private void spawnAt(SpawnPoint spawnPoint, AnimationSet animationSet) {
+		Entity.Direction direction = spawnPoint.getDirection();
+		if (direction == null) {
+			direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+		}
+
+		boolean wander = spawnPoint.isWandering();
+		int flags = wander ? EntityStore.FLAG_WANDER : 0;
+		if (spawnPoint.isPursuing()) {
+			flags |= EntityStore.FLAG_PURSUE;
+		}
+		int handle = store.spawn(box.x * MapManager.UNIT_SCALE, box.y * MapManager.UNIT_SCALE, direction,
+				spawnPoint.getSpeed(), flags, animationSet);
+		store.setState(handle, wander ? Entity.State.WALKING : Entity.State.IDLE);
+		store.setBox(handle, boxWidth * MapManager.UNIT_SCALE, boxHeight * MapManager.UNIT_SCALE);
+
+		Npc npc = pool.obtain();
+		npc.set(handle, spawnPoint, animationSet);
+		active.add(npc);
+	}
+
+	/** Releases the handles of the NPCs and returns them to the pool */
+	public void despawnAll() {
+		for (int i = 0; i < active.size; i++) {
+			store.despawn(active.get(i).getHandle());
+		}
+		pool.freeAll(active);
+		active.clear();
+	}
+
+	/** @return the NPCs of the current map, in spawn order */
+	public Array<Npc> getActive() { return active; }
+
+	/** @return the NPCs waiting in the pool */
+	public int getPooled() { return pool.getFree(); }
+
+	/** @return the Npc objects ever created */
+	public int getCreated() { return created; }
+}
@@ -3,12 +3,13 @@ package com.packtpub.libgdx.bludbourne;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputProcessor;
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.FloatArray;
+import com.packtpub.libgdx.bludbourne.pathfinding.Pathfinder;
+import com.packtpub.libgdx.bludbourne.profiling.RollingHistogram;
 import com.packtpub.libgdx.bludbourne.screens.MainGameScreen;
 
-import java.util.HashMap;
-import java.util.Map;
-
 
 public class PlayerController implements InputProcessor {
 	
@@ -22,21 +23,46 @@ public class PlayerController implements InputProcessor {
 		SELECT, DOACTION
 	}
 	
-	private static Map<Keys, Boolean> keys = new HashMap<PlayerController.Keys, Boolean>();
-	private static Map<Mouse, Boolean> mouseButtons = new HashMap<PlayerController.Mouse, Boolean>();
+	private static final Keys[] KEYS = Keys.values();
+	
+	/** Keys moving the player, they cancel the click-to-move */
+	private static final int MOVE_KEYS = bit(Keys.LEFT) | bit(Keys.RIGHT) | bit(Keys.UP) | bit(Keys.DOWN);
+	
+	/** A waypoint closer than this is reached, in map units */
+	private static final float WAYPOINT_EPSILON = 0.001f;
+	
+	/** Steps without moving before giving up a path (an NPC in the way, ...) */
+	private static final int MAX_STUCK_STEPS = 10;
+	
+	/** Events received since the last step, drained by update() */
+	private final InputEventQueue events = new InputEventQueue();
+	
+	/** Pressed keys, one bit per Keys ordinal: no boxing nor hashing each frame */
+	private int keys = 0;
+	/** Keys pressed during the last drain, kept for one step even if already released */
+	private int pressedKeys = 0;
+	/** Pressed buttons, one bit per Mouse ordinal */
+	private int mouseButtons = 0;
+	/** Last click, in map pixels */
 	private Vector3 lastMouseCoordinates;
+	/** Click being unprojected */
+	private final Vector3 clickPixels = new Vector3();
 	
-	// initialize the hashmap for inputs
-	static {
-		keys.put(Keys.LEFT, false);
-		keys.put(Keys.RIGHT, false);
-		keys.put(Keys.UP, false);
-		keys.put(Keys.DOWN, false);
-		keys.put(Keys.QUIT, false);
-		
-		mouseButtons.put(Mouse.SELECT, false);
-		mouseButtons.put(Mouse.DOACTION, false);
-	}
+	/** Searches the click-to-move paths, none when null */
+	private Pathfinder pathfinder = null;
+	/** A click asked for a new destination, searched at the next step */
+	private boolean moveRequested = false;
+	/** Path to the clicked destination, (x, y) pairs in map units */
+	private final FloatArray waypoints = new FloatArray();
+	private int waypointIndex = 0;
+	/** Position at the previous step along the path, to notice when the player is stuck */
+	private float lastPathX;
+	private float lastPathY;
+	private int stuckSteps = 0;
+	
+	/** Timestamps of the events drained since the last endFrame() */
+	private final long[] consumedTimestamps = new long[InputEventQueue.DEFAULT_CAPACITY];
+	private int consumedCount = 0;
 	
 	private Entity player;
 	
@@ -103,17 +129,21 @@ public class PlayerController implements InputProcessor {
 
 	@Override
 	public boolean touchDown(int screenX, int screenY, int pointer, int button) {
+		unproject(screenX, screenY);
+		int x = (int) clickPixels.x;
+		int y = (int) clickPixels.y;
+		
 		if (button == Input.Buttons.LEFT || button == Input.Buttons.RIGHT) {
-			this.setClickedMouseCoordinates(screenX, screenY);
+			this.setClickedMouseCoordinates(x, y);
 		}
 		
-		// left is selection, right is context menu
+		// left is selection (and moves there), right is context menu
 		if (button == Input.Buttons.LEFT) {
-			this.selectMouseButtonPressed(screenX, screenY);
+			this.selectMouseButtonPressed(x, y);
 		}
 		
 		if (button == Input.Buttons.RIGHT) {
-			this.doActionMouseButtonPressed(screenX, screenY);
+			this.doActionMouseButtonPressed(x, y);
 		}
 		
 		return true;
@@ -121,17 +151,33 @@ public class PlayerController implements InputProcessor {
 
 	@Override
 	public boolean touchUp(int screenX, int screenY, int pointer, int button) {
+		unproject(screenX, screenY);
+		int x = (int) clickPixels.x;
+		int y = (int) clickPixels.y;
+		
 		// left is selection, right is context menu
 		if (button == Input.Buttons.LEFT) {
-			this.selectMouseButtonReleased(screenX, screenY);
+			this.selectMouseButtonReleased(x, y);
 		}
 		
 		if (button == Input.Buttons.RIGHT) {
-			this.doActionMouseButtonReleased(screenX, screenY);
+			this.doActionMouseButtonReleased(x, y);
 		}
 		
 		return true;
 	}
+	
+	/**
+	 * Converts a click to map pixels with the camera of the last frame. The
+	 * events carry map coordinates, so recordings don't depend on the window.
+	 */
+	private void unproject(int screenX, int screenY) {
+		clickPixels.set(screenX, screenY, 0);
+		if (MainGameScreen.camera != null) {
+			MainGameScreen.camera.unproject(clickPixels);
+			clickPixels.scl(1 / MapManager.UNIT_SCALE);
+		}
+	}
 
 	@Override
 	public boolean touchDragged(int screenX, int screenY, int pointer) {
@@ -150,23 +196,23 @@ public class PlayerController implements InputProcessor {
 	}
 	
 	public void leftPressed() {
-		keys.put(Keys.LEFT, true);
+		events.push(InputEventQueue.KEY_DOWN, Keys.LEFT.ordinal());
 	}
 	
 	public void rightPressed() {
-		keys.put(Keys.RIGHT, true);
+		events.push(InputEventQueue.KEY_DOWN, Keys.RIGHT.ordinal());
 	}
 	
 	public void upPressed() {
-		keys.put(Keys.UP, true);
+		events.push(InputEventQueue.KEY_DOWN, Keys.UP.ordinal());
 	}
 	
 	public void downPressed() {
-		keys.put(Keys.DOWN, true);
+		events.push(InputEventQueue.KEY_DOWN, Keys.DOWN.ordinal());
 	}
 	
 	public void quitPressed() {
-		keys.put(Keys.QUIT, true);
+		events.push(InputEventQueue.KEY_DOWN, Keys.QUIT.ordinal());
 	}
 	
 	public void setClickedMouseCoordinates(int x, int y) {
@@ -174,81 +220,252 @@ public class PlayerController implements InputProcessor {
 	}
 	
 	public void selectMouseButtonPressed(int x, int y) {
-		mouseButtons.put(Mouse.SELECT, true);
+		events.push(InputEventQueue.BUTTON_DOWN, Mouse.SELECT.ordinal(), x, y);
 	}
 	
 	public void doActionMouseButtonPressed(int x, int y) {
-		mouseButtons.put(Mouse.DOACTION, true);
+		events.push(InputEventQueue.BUTTON_DOWN, Mouse.DOACTION.ordinal(), x, y);
 	}
 	
 	public void leftReleased() {
-		keys.put(Keys.LEFT, false);
+		events.push(InputEventQueue.KEY_UP, Keys.LEFT.ordinal());
 	}
 	
 	public void rightReleased() {
-		keys.put(Keys.RIGHT, false);
+		events.push(InputEventQueue.KEY_UP, Keys.RIGHT.ordinal());
 	}
 	
 	public void upReleased() {
-		keys.put(Keys.UP, false);
+		events.push(InputEventQueue.KEY_UP, Keys.UP.ordinal());
 	}
 	
 	public void downReleased() {
-		keys.put(Keys.DOWN, false);
+		events.push(InputEventQueue.KEY_UP, Keys.DOWN.ordinal());
 	}
 	
 	public void quitReleased() {
-		keys.put(Keys.QUIT, false);
+		events.push(InputEventQueue.KEY_UP, Keys.QUIT.ordinal());
 	}
 	
 	public void selectMouseButtonReleased(int x, int y) {
-		mouseButtons.put(Mouse.SELECT, false);
+		events.push(InputEventQueue.BUTTON_UP, Mouse.SELECT.ordinal(), x, y);
 	}
 	
 	public void doActionMouseButtonReleased(int x, int y) {
-		mouseButtons.put(Mouse.DOACTION, false);
+		events.push(InputEventQueue.BUTTON_UP, Mouse.DOACTION.ordinal(), x, y);
 	}
 	
+	/** Applies the queued events then moves the player, call it before the collision check */
 	public void update(float delta) {
+		drainEvents();
 		processInput(delta);
 	}
 	
-	public static void hide() {
-		keys.put(Keys.LEFT, false);
-		keys.put(Keys.RIGHT, false);
-		keys.put(Keys.UP, false);
-		keys.put(Keys.DOWN, false);
-		keys.put(Keys.QUIT, false);
+	/**
+	 * Records the latency of the events used since the previous call
+	 * @param frameEndNanos TimeUtils.nanoTime() once the frame using them is drawn
+	 * @param latencies receives the event to frame delays, may be null
+	 */
+	public void endFrame(long frameEndNanos, RollingHistogram latencies) {
+		if (latencies != null) {
+			for (int i = 0; i < consumedCount; i++) {
+				latencies.add(frameEndNanos - consumedTimestamps[i]);
+			}
+		}
+		consumedCount = 0;
+	}
+	
+	/** Releases every key, e.g. when the screen is hidden */
+	public void hide() {
+		events.clear();
+		keys = 0;
+		pressedKeys = 0;
+		mouseButtons = 0;
+		cancelPath();
+	}
+	
+	/** Stops walking to the clicked destination, e.g. when the map changes */
+	public void cancelPath() {
+		moveRequested = false;
+		waypoints.clear();
+		waypointIndex = 0;
+		stuckSteps = 0;
+	}
+	
+	/** @param pathfinder searches the click-to-move paths, null to disable them */
+	public void setPathfinder(Pathfinder pathfinder) {
+		this.pathfinder = pathfinder;
+	}
+	
+	/** @return the queue filled by the InputProcessor callbacks */
+	public InputEventQueue getEvents() { return events; }
+	
+	/** @return the waypoints left to the clicked destination, (x, y) pairs in map units */
+	public FloatArray getWaypoints() { return waypoints; }
+	
+	/** @return true while walking to a clicked destination */
+	public boolean isFollowingPath() { return waypointIndex < waypoints.size; }
+	
+	private void drainEvents() {
+		pressedKeys = 0;
+		
+		while (!events.isEmpty()) {
+			int code = events.peekCode();
+			
+			switch (events.peekType()) {
+			case InputEventQueue.KEY_DOWN:
+				keys |= bit(KEYS[code]);
+				pressedKeys |= bit(KEYS[code]);
+				break;
+			case InputEventQueue.KEY_UP:
+				keys &= ~bit(KEYS[code]);
+				break;
+			case InputEventQueue.BUTTON_DOWN:
+				mouseButtons |= 1 << code;
+				lastMouseCoordinates.set(events.peekX(), events.peekY(), 0);
+				if (code == Mouse.SELECT.ordinal()) {
+					moveRequested = true;
+				}
+				break;
+			case InputEventQueue.BUTTON_UP:
+				mouseButtons &= ~(1 << code);
+				break;
+			}
+			
+			if (consumedCount < consumedTimestamps.length) {
+				consumedTimestamps[consumedCount++] = events.peekTimestamp();
+			}
+			events.pop();
+		}
 	}
 	
 	private void processInput(float delta) {
+		// A key pressed and released between two steps still moves the player once
+		int keys = this.keys | pressedKeys;
+		
+		// The keyboard takes over the click-to-move
+		if ((keys & MOVE_KEYS) != 0) {
+			cancelPath();
+		} else if (moveRequested) {
+			requestPath();
+		}
+		moveRequested = false;
+		
 		// Keyboard input
-		if (keys.get(Keys.LEFT)) {
+		if ((keys & bit(Keys.LEFT)) != 0) {
 			player.calculateNextPosition(Entity.Direction.LEFT, delta);
 			player.setState(Entity.State.WALKING);
 			player.setDirection(Entity.Direction.LEFT, delta);
-		} else if (keys.get(Keys.RIGHT)) {
+		} else if ((keys & bit(Keys.RIGHT)) != 0) {
 			player.calculateNextPosition(Entity.Direction.RIGHT, delta);
 			player.setState(Entity.State.WALKING);
 			player.setDirection(Entity.Direction.RIGHT, delta);
-		} else if (keys.get(Keys.UP)) {
+		} else if ((keys & bit(Keys.UP)) != 0) {
 			player.calculateNextPosition(Entity.Direction.UP, delta);
 			player.setState(Entity.State.WALKING);
 			player.setDirection(Entity.Direction.UP, delta);
-		} else if (keys.get(Keys.DOWN)) {
+		} else if ((keys & bit(Keys.DOWN)) != 0) {
 			player.calculateNextPosition(Entity.Direction.DOWN, delta);
 			player.setState(Entity.State.WALKING);
 			player.setDirection(Entity.Direction.DOWN, delta);
-		} else if (keys.get(Keys.QUIT)) {
+		} else if ((keys & bit(Keys.QUIT)) != 0) {
 			Gdx.app.exit();
-		} else {
+		} else if (!followPath(delta)) {
 			player.setState(Entity.State.IDLE);
 		}
 		
 		// Mouse input
-		if (mouseButtons.get(Mouse.SELECT)) {
-			mouseButtons.put(Mouse.SELECT, false);
+		if ((mouseButtons & bit(Mouse.SELECT)) != 0) {
+			mouseButtons &= ~bit(Mouse.SELECT);
+		}
+	}
+	
+	/** Searches the way from the player feet to the last click */
+	private void requestPath() {
+		cancelPath();
+		if (pathfinder == null) {
+			return;
+		}
+		
+		Vector2 position = player.getCurrentPosition();
+		float feetX = position.x + player.getBoundingBox().width * MapManager.UNIT_SCALE / 2;
+		float feetY = position.y + player.getBoundingBox().height * MapManager.UNIT_SCALE / 2;
+		
+		if (pathfinder.findPath(feetX, feetY, lastMouseCoordinates.x * MapManager.UNIT_SCALE,
+				lastMouseCoordinates.y * MapManager.UNIT_SCALE, waypoints)) {
+			lastPathX = Float.NaN;
+			lastPathY = Float.NaN;
+		}
+	}
+	
+	/**
+	 * Walks towards the next waypoint, on one axis at a time like with the
+	 * keyboard: the nearer axis first, so that the player lines up with the
+	 * path before following it
+	 * @return false if there is no path to follow
+	 */
+	private boolean followPath(float delta) {
+		if (waypointIndex >= waypoints.size) {
+			return false;
+		}
+		
+		Vector2 position = player.getCurrentPosition();
+		if (position.x == lastPathX && position.y == lastPathY) {
+			// Something the walkable tiles don't know is in the way
+			if (++stuckSteps > MAX_STUCK_STEPS) {
+				cancelPath();
+				return false;
+			}
+		} else {
+			stuckSteps = 0;
 		}
+		lastPathX = position.x;
+		lastPathY = position.y;
+		
+		float dx = waypoints.get(waypointIndex) - position.x;
+		float dy = waypoints.get(waypointIndex + 1) - position.y;
+		while (Math.abs(dx) < WAYPOINT_EPSILON && Math.abs(dy) < WAYPOINT_EPSILON) {
+			waypointIndex += 2;
+			if (waypointIndex >= waypoints.size) {
+				cancelPath();
+				return false;
+			}
+			dx = waypoints.get(waypointIndex) - position.x;
+			dy = waypoints.get(waypointIndex + 1) - position.y;
+		}
+		
+		boolean horizontal = Math.abs(dy) < WAYPOINT_EPSILON
+				|| (Math.abs(dx) >= WAYPOINT_EPSILON && Math.abs(dx) < Math.abs(dy));
+		Entity.Direction direction;
+		if (horizontal) {
+			direction = dx > 0 ? Entity.Direction.RIGHT : Entity.Direction.LEFT;
+		} else {
+			direction = dy > 0 ? Entity.Direction.UP : Entity.Direction.DOWN;
+		}
+		
+		player.calculateNextPosition(direction, delta);
+		player.setState(Entity.State.WALKING);
+		player.setDirection(direction, delta);
+		
+		// Stops on the waypoint instead of walking past it
+		EntityStore store = player.getStore();
+		int handle = player.getHandle();
+		if (horizontal) {
+			float targetX = waypoints.get(waypointIndex);
+			store.nextX[handle] = dx > 0 ? Math.min(store.nextX[handle], targetX) : Math.max(store.nextX[handle], targetX);
+		} else {
+			float targetY = waypoints.get(waypointIndex + 1);
+			store.nextY[handle] = dy > 0 ? Math.min(store.nextY[handle], targetY) : Math.max(store.nextY[handle], targetY);
+		}
+		return true;
+	}
+	
+	private static int bit(Keys key) {
+		return 1 << key.ordinal();
+	}
+
+	private static int bit(Mouse button) {
+		return 1 << button.ordinal();
 	}
 	
 	public void dispose() {
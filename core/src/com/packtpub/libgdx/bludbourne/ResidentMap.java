@@ -0,0 +1,287 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapObject;
+import com.badlogic.gdx.maps.MapProperties;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+import com.packtpub.libgdx.bludbourne.pathfinding.HierarchicalGraph;
+import com.packtpub.libgdx.bludbourne.pathfinding.WalkabilityGrid;
+import com.packtpub.libgdx.bludbourne.triggers.TriggerIndex;
+
+/**
+ * A loaded map with the data derived from it (layer references, spawn
+ * lists, collision and trigger indexes), kept together in the MapCache.
+ * A CompiledMap has no game layers, the data is built from its records.
+ */
+public class ResidentMap {
+	/** Debugging */
+	private static final String TAG = ResidentMap.class.getSimpleName();
+
+	/** Rough heap size of a tile layer cell (Cell instance + reference) */
+	private static final int CELL_BYTES = 40;
+
+	/** Rough heap size of a map object and its rectangle */
+	private static final int OBJECT_BYTES = 128;
+
+	private final String name;
+	private final String path;
+	private final TiledMap map;
+
+	// Fast layer access, null for a CompiledMap
+	private final MapLayer collisionLayer;
+	private final MapLayer portalLayer;
+	private final MapLayer spawnsLayer;
+
+	/** Collision rectangles index */
+	private final SpatialGrid collisionGrid;
+
+	/** Trigger volumes index */
+	private final TriggerIndex triggerIndex;
+
+	/** Walkable tiles and their HPA* abstraction, for the path requests */
+	private final HierarchicalGraph navigationGraph;
+
+	/** PLAYER_START rectangles, in pixels */
+	private final Array<Rectangle> playerStarts;
+
+	/** NPC spawns, the other objects of the spawns layer */
+	private final Array<SpawnPoint> npcSpawns;
+
+	/** Tileset textures, often shared with the other maps (same atlas pages) */
+	private final Array<Texture> textures;
+
+	/** Estimated tile and object memory, textures excluded, in bytes */
+	private final long dataBytes;
+
+	/** Estimated texture and tile memory, in bytes */
+	private final long estimatedBytes;
+
+	/** Map size in pixels */
+	private final float widthPixels;
+	private final float heightPixels;
+
+	private ResidentMap(String name, String path, TiledMap map) {
+		this.name = name;
+		this.path = path;
+		this.map = map;
+
+		collisionGrid = new SpatialGrid();
+
+		if (map instanceof CompiledMap) {
+			// Records compiled by :core:compileMaps, no map objects to walk
+			CompiledMap compiledMap = (CompiledMap) map;
+			collisionLayer = null;
+			portalLayer = null;
+			spawnsLayer = null;
+
+			collisionGrid.build(compiledMap.getCollisionBounds());
+			triggerIndex = TriggerIndex.build(MapManager.MAP_PORTAL_LAYER, compiledMap.getPortalNames(),
+					compiledMap.getPortalBounds());
+			playerStarts = toRectangles(compiledMap.getPlayerStartBounds());
+			npcSpawns = compiledMap.getSpawnPoints();
+		} else {
+			collisionLayer = map.getLayers().get(MapManager.MAP_COLLISION_LAYER);
+			if (collisionLayer == null) {
+				Gdx.app.debug(TAG, "No collision layer !");
+			}
+
+			portalLayer = map.getLayers().get(MapManager.MAP_PORTAL_LAYER);
+			if (portalLayer == null) {
+				Gdx.app.debug(TAG, "No portal layer !");
+			}
+
+			spawnsLayer = map.getLayers().get(MapManager.MAP_SPAWNS_LAYER);
+			if (spawnsLayer == null) {
+				Gdx.app.debug(TAG, "No spawn layer !");
+			}
+
+			collisionGrid.build(getRectangles(collisionLayer, null));
+			triggerIndex = TriggerIndex.build(map, MapManager.TRIGGER_LAYERS);
+			playerStarts = getRectangles(spawnsLayer, MapManager.PLAYER_START);
+			npcSpawns = getNpcSpawns(spawnsLayer);
+		}
+		textures = getTextures(map);
+		dataBytes = estimateDataBytes(map);
+		long bytes = dataBytes;
+		for (Texture texture : textures) {
+			bytes += getTextureBytes(texture);
+		}
+		estimatedBytes = bytes;
+
+		MapProperties properties = map.getProperties();
+		int widthTiles = properties.get("width", 0, Integer.class);
+		int heightTiles = properties.get("height", 0, Integer.class);
+		int tileWidth = properties.get("tilewidth", 0, Integer.class);
+		int tileHeight = properties.get("tileheight", 0, Integer.class);
+		widthPixels = widthTiles * tileWidth;
+		heightPixels = heightTiles * tileHeight;
+
+		navigationGraph = HierarchicalGraph.build(
+				WalkabilityGrid.build(collisionGrid, widthTiles, heightTiles, tileWidth, tileHeight),
+				HierarchicalGraph.DEFAULT_CLUSTER_SIZE);
+
+		Gdx.app.debug(TAG, name + ": " + collisionGrid.size() + " collision rectangles, "
+				+ playerStarts.size + " player starts, " + npcSpawns.size + " NPC spawns, " + navigationGraph.getNodeCount() + " portals, ~" + (estimatedBytes / 1024) + " KB");
+	}
+
+	/** Derives the map data of a loaded map */
+	public static ResidentMap build(String name, String path, TiledMap map) {
+		return new ResidentMap(name, path, map);
+	}
+
+	/** @return the rectangles of the layer, only the objects with the given name if not null */
+	private static Array<Rectangle> getRectangles(MapLayer layer, String objectName) {
+		Array<Rectangle> rectangles = new Array<Rectangle>();
+
+		if (layer == null) {
+			return rectangles;
+		}
+
+		for (MapObject object : layer.getObjects()) {
+			if (!(object instanceof RectangleMapObject)) {
+				continue;
+			}
+			if (objectName != null && !objectName.equalsIgnoreCase(object.getName())) {
+				continue;
+			}
+			rectangles.add(((RectangleMapObject) object).getRectangle());
+		}
+
+		return rectangles;
+	}
+
+	/** @return the flattened rectangles as Rectangle instances */
+	private static Array<Rectangle> toRectangles(float[] bounds) {
+		Array<Rectangle> rectangles = new Array<Rectangle>(bounds.length / 4);
+		for (int i = 0; i + 3 < bounds.length; i += 4) {
+			rectangles.add(new Rectangle(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]));
+		}
+		return rectangles;
+	}
+
+	/** @return the spawn points of the objects that aren't a PLAYER_START */
+	private static Array<SpawnPoint> getNpcSpawns(MapLayer layer) {
+		Array<SpawnPoint> spawns = new Array<SpawnPoint>();
+
+		if (layer == null) {
+			return spawns;
+		}
+
+		for (MapObject object : layer.getObjects()) {
+			if (!(object instanceof RectangleMapObject) || MapManager.PLAYER_START.equalsIgnoreCase(object.getName())) {
+				continue;
+			}
+			spawns.add(SpawnPoint.fromObject((RectangleMapObject) object));
+		}
+
+		return spawns;
+	}
+
+	/** @return the distinct textures of the tilesets */
+	private static Array<Texture> getTextures(TiledMap map) {
+		ObjectSet<Texture> textures = new ObjectSet<Texture>();
+		for (TiledMapTileSet tileSet : map.getTileSets()) {
+			for (TiledMapTile tile : tileSet) {
+				if (tile.getTextureRegion() != null) {
+					textures.add(tile.getTextureRegion().getTexture());
+				}
+			}
+		}
+		return textures.iterator().toArray();
+	}
+
+	/** Estimates the memory held by the tile layer cells and the map objects */
+	private static long estimateDataBytes(TiledMap map) {
+		long bytes = 0;
+
+		for (MapLayer layer : map.getLayers()) {
+			if (layer instanceof TiledMapTileLayer) {
+				TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+				bytes += (long) tileLayer.getWidth() * tileLayer.getHeight() * CELL_BYTES;
+			}
+			bytes += (long) layer.getObjects().getCount() * OBJECT_BYTES;
+		}
+		if (map instanceof CompiledMap) {
+			bytes += (long) ((CompiledMap) map).getRecordCount() * OBJECT_BYTES;
+		}
+
+		return bytes;
+	}
+
+	/** @return the estimated memory of the texture */
+	public static long getTextureBytes(Texture texture) {
+		return (long) texture.getWidth() * texture.getHeight() * bytesPerPixel(texture);
+	}
+
+	private static int bytesPerPixel(Texture texture) {
+		Pixmap.Format format = texture.getTextureData() == null ? null : texture.getTextureData().getFormat();
+
+		if (format == null) {
+			return 4;
+		}
+
+		switch (format) {
+			case Alpha:
+			case Intensity:
+				return 1;
+			case LuminanceAlpha:
+			case RGB565:
+			case RGBA4444:
+				return 2;
+			case RGB888:
+				return 3;
+			default:
+				return 4;
+		}
+	}
+
+	public String getName() { return name; }
+
+	public String getPath() { return path; }
+
+	public TiledMap getMap() { return map; }
+
+	public MapLayer getCollisionLayer() { return collisionLayer; }
+
+	public MapLayer getPortalLayer() { return portalLayer; }
+
+	public MapLayer getSpawnsLayer() { return spawnsLayer; }
+
+	/** @return true if the map has a spawns layer, compiled or not */
+	public boolean hasSpawns() {
+		return spawnsLayer != null || playerStarts.size > 0 || npcSpawns.size > 0;
+	}
+
+	public SpatialGrid getCollisionGrid() { return collisionGrid; }
+
+	public TriggerIndex getTriggerIndex() { return triggerIndex; }
+
+	public HierarchicalGraph getNavigationGraph() { return navigationGraph; }
+
+	public Array<Rectangle> getPlayerStarts() { return playerStarts; }
+
+	public Array<SpawnPoint> getNpcSpawns() { return npcSpawns; }
+
+	public long getEstimatedBytes() { return estimatedBytes; }
+
+	/** @return the tileset textures, the MapCache counts each one once across the maps */
+	public Array<Texture> getTextures() { return textures; }
+
+	/** @return the estimated memory without the textures */
+	public long getDataBytes() { return dataBytes; }
+
+	public float getWidthPixels() { return widthPixels; }
+
+	public float getHeightPixels() { return heightPixels; }
+}
@@ -0,0 +1,124 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.maps.MapProperties;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.math.Rectangle;
+
+/**
+ * NPC spawn read from an object of the spawns layer, the PLAYER_START
+ * ones excepted. The NPCs are placed at random in its rectangle.
+ *
+ * Object properties, all optional: sprite (sheet path), count, speed (map
+ * units per second), direction (UP, RIGHT, DOWN or LEFT, random when
+ * missing), wander (false for NPCs standing still) and pursue (true for
+ * NPCs chasing the player).
+ */
+public class SpawnPoint {
+	/** Debugging */
+	private static final String TAG = SpawnPoint.class.getSimpleName();
+
+	// Properties
+	public static final String SPRITE_PROPERTY = "sprite";
+	public static final String COUNT_PROPERTY = "count";
+	public static final String SPEED_PROPERTY = "speed";
+	public static final String DIRECTION_PROPERTY = "direction";
+	public static final String WANDER_PROPERTY = "wander";
+	public static final String PURSUE_PROPERTY = "pursue";
+
+	/** Same pace as the headless wanderers */
+	public static final float DEFAULT_SPEED = 2f;
+
+	/** Object name, e.g. the kind of NPC */
+	private final String name;
+
+	/** Spawn area in pixels, may be empty (a point) */
+	private final Rectangle area;
+
+	private final String spritePath;
+	private final int count;
+	private final float speed;
+
+	/** Facing direction, null for a random one per NPC */
+	private final Entity.Direction direction;
+
+	private final boolean wander;
+	private final boolean pursue;
+
+	/** Spawn settings already read, e.g. from a compiled map */
+	SpawnPoint(String name, Rectangle area, String spritePath, int count, float speed,
+			Entity.Direction direction, boolean wander, boolean pursue) {
+		this.name = name;
+		this.area = area;
+		this.spritePath = spritePath;
+		this.count = count;
+		this.speed = speed;
+		this.direction = direction;
+		this.wander = wander;
+		this.pursue = pursue;
+	}
+
+	/** Reads the spawn settings of a spawns layer object */
+	public static SpawnPoint fromObject(RectangleMapObject object) {
+		MapProperties properties = object.getProperties();
+
+		String spritePath = properties.get(SPRITE_PROPERTY, Entity.defaultSpritePath, String.class);
+		int count = Math.max(0, (int) getNumber(properties, COUNT_PROPERTY, 1));
+		float speed = getNumber(properties, SPEED_PROPERTY, DEFAULT_SPEED);
+		boolean pursue = "true".equalsIgnoreCase(String.valueOf(properties.get(PURSUE_PROPERTY)));
+		// Chasing implies walking
+		boolean wander = pursue || !"false".equalsIgnoreCase(String.valueOf(properties.get(WANDER_PROPERTY)));
+
+		Entity.Direction direction = null;
+		Object value = properties.get(DIRECTION_PROPERTY);
+		if (value != null) {
+			try {
+				direction = Entity.Direction.valueOf(value.toString().trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				Gdx.app.debug(TAG, "Unknown direction " + value + " for " + object.getName());
+			}
+		}
+
+		return new SpawnPoint(object.getName(), object.getRectangle(), spritePath, count, speed, direction, wander,
+				pursue);
+	}
+
+	/** Typed TMX properties are numbers, the binary maps and untyped ones are strings */
+	private static float getNumber(MapProperties properties, String key, float defaultValue) {
+		Object value = properties.get(key);
+
+		if (value instanceof Number) {
+			return ((Number) value).floatValue();
+		}
+		if (value != null) {
+			try {
+				return Float.parseFloat(value.toString().trim());
+			} catch (NumberFormatException e) {
+				Gdx.app.debug(TAG, "Invalid " + key + ": " + value);
+			}
+		}
+		return defaultValue;
+	}
+
+	public String getName() { return name; }
+
+	/** @return the spawn area in pixels */
+	public Rectangle getArea() { return area; }
+
+	public String getSpritePath() { return spritePath; }
+
+	/** @return the number of NPCs spawned here */
+	public int getCount() { return count; }
+
+	/** @return the speed in map units per second */
+	public float getSpeed() { return speed; }
+
+	/** @return the facing direction, null for a random one */
+	public Entity.Direction getDirection() { return direction; }
+
+	/** @return false for NPCs standing still */
+	public boolean isWandering() { return wander; }
+
+	/** @return true for NPCs chasing the player */
+	public boolean isPursuing() { return pursue; }
+}
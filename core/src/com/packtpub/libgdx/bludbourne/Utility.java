@@ -1,10 +1,15 @@
 package com.packtpub.libgdx.bludbourne;
 
+import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.assets.loaders.TextureLoader;
 import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.tiled.AtlasTmxMapLoader;
 import com.badlogic.gdx.maps.tiled.TiledMap;
 import com.badlogic.gdx.maps.tiled.TmxMapLoader;
 
@@ -20,6 +25,22 @@ public class Utility {
 	/** Maps a filepath to a FileHandle */
 	private static InternalFileHandleResolver filePathResolver = new InternalFileHandleResolver();
 
+	/** Character sprite sheets packed by :core:packCharacters */
+	public static final String CHARACTERS_ATLAS_PATH = "atlas/characters.atlas";
+
+	/** Suffix of the map copies drawing from the tileset atlas (:core:packTilesets) */
+	private static final String ATLAS_MAP_SUFFIX = ".atlas.tmx";
+	private static final String MAP_SUFFIX = ".tmx";
+
+	/**
+	 * Guards the debug messages built on the frame path, the string
+	 * concatenation allocates even when the message is filtered out
+	 * @return true if debug messages are logged
+	 */
+	public static boolean isDebugEnabled() {
+		return Gdx.app.getLogLevel() >= Application.LOG_DEBUG;
+	}
+
 	/**
 	 * Unloads the specified asset
 	 * @param assetFilenamePath
@@ -34,34 +55,95 @@ public class Utility {
 		}
 	}
 
+	/**
+	 * Unloads the asset if it is loaded, else removes it from the loading
+	 * queue: a queued asset left there would be loaded and never released
+	 * @param assetFilenamePath asset that was loaded or queued
+	 */
+	public static void releaseAsset(String assetFilenamePath) {
+		if (assetManager.isLoaded(assetFilenamePath)) {
+			unloadAsset(assetFilenamePath);
+		} else {
+			Gdx.app.debug(TAG, "Cancel: " + assetFilenamePath);
+			assetManager.unload(assetFilenamePath);
+		}
+	}
+
 	/**
 	 * Loads the map
 	 * @param mapFilenamePath
 	 */
 	public static void loadMapAsset(String mapFilenamePath) {
+		if (!queueMapAsset(mapFilenamePath)) {
+			return;
+		}
+
+		// Blocking load, see queueMapAsset for background loading
+		assetManager.finishLoadingAsset(mapFilenamePath);
+
+		Gdx.app.debug(TAG, "Map has been loaded: " + mapFilenamePath);
+	}
+
+	/**
+	 * Queues the map without blocking, it is loaded by the following
+	 * updateAssetLoading() calls
+	 * @param mapFilenamePath
+	 * @return true if the map has been queued
+	 */
+	public static boolean queueMapAsset(String mapFilenamePath) {
 		// Argument check
 		if (mapFilenamePath == null || mapFilenamePath.isEmpty()) {
-			return;
+			return false;
 		}
 		
 		// Does the map exist ?
 		if (filePathResolver.resolve(mapFilenamePath).exists()) {
 			// TiledMap Loader isn't loaded by default
 			// TiledMap will be found in the working directory
-			assetManager.setLoader(TiledMap.class, new TmxMapLoader(filePathResolver));
+			if (assetManager.getLoader(TiledMap.class) == null) {
+				assetManager.setLoader(TiledMap.class, new TmxMapLoader(filePathResolver));
+				// The longest matching suffix wins: packed maps use their atlas
+				assetManager.setLoader(TiledMap.class, ATLAS_MAP_SUFFIX, new AtlasTmxMapLoader(filePathResolver));
+				// Maps compiled by :core:compileMaps
+				assetManager.setLoader(TiledMap.class, BinaryMapFormat.EXTENSION, new BinaryMapLoader(filePathResolver));
+			}
 
-			// Load the map
+			// Queue the map
 			Gdx.app.debug(TAG, "Loading Map: " + mapFilenamePath);
 			assetManager.load(mapFilenamePath, TiledMap.class);
-			
-			// Until we add loading screen
-			// just block until we load the map
-			assetManager.finishLoadingAsset(mapFilenamePath);
-
-			Gdx.app.debug(TAG, "Map has been loaded: " + mapFilenamePath);
+			return true;
 		} else {
 			Gdx.app.debug(TAG, "Map doesn't exist !: " + mapFilenamePath);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the compiled map if it has been generated since the last edit
+	 * of the map, else the packed copy of the map (drawing its tiles from the
+	 * tileset atlas), else the map itself
+	 */
+	public static String resolveMapPath(String mapFilenamePath) {
+		if (mapFilenamePath == null || !mapFilenamePath.endsWith(MAP_SUFFIX) || mapFilenamePath.endsWith(ATLAS_MAP_SUFFIX)) {
+			return mapFilenamePath;
 		}
+
+		String basePath = mapFilenamePath.substring(0, mapFilenamePath.length() - MAP_SUFFIX.length());
+
+		String binaryMapPath = basePath + BinaryMapFormat.EXTENSION;
+		FileHandle binaryMap = filePathResolver.resolve(binaryMapPath);
+		if (binaryMap.exists()) {
+			// Dates are 0 inside a jar, where both files come from the same build
+			long binaryModified = binaryMap.lastModified();
+			long mapModified = filePathResolver.resolve(mapFilenamePath).lastModified();
+			if (binaryModified == 0 || mapModified <= binaryModified) {
+				return binaryMapPath;
+			}
+			Gdx.app.debug(TAG, "Compiled map older than its TMX, run :core:compileMaps: " + binaryMapPath);
+		}
+
+		String atlasMapPath = basePath + ATLAS_MAP_SUFFIX;
+		return filePathResolver.resolve(atlasMapPath).exists() ? atlasMapPath : mapFilenamePath;
 	}
 
 	/** Returns the map associated with the given filepath */
@@ -114,6 +196,65 @@ public class Utility {
 		return texture;
 	}
 
+	/** Loads a texture atlas from the given path */
+	public static void loadTextureAtlasAsset(String atlasFilenamePath) {
+		// Argument check
+		if (atlasFilenamePath == null || atlasFilenamePath.isEmpty()) {
+			return;
+		}
+
+		// Does the atlas exist ?
+		if (filePathResolver.resolve(atlasFilenamePath).exists()) {
+			Gdx.app.debug(TAG, "Loading Atlas: " + atlasFilenamePath);
+			assetManager.load(atlasFilenamePath, TextureAtlas.class);
+
+			// Synchrone loading
+			assetManager.finishLoadingAsset(atlasFilenamePath);
+		} else {
+			Gdx.app.debug(TAG, "Atlas doesn't exist !: " + atlasFilenamePath);
+		}
+	}
+
+	/** @return the atlas associated with the given file path */
+	public static TextureAtlas getTextureAtlasAsset(String atlasFilenamePath) {
+		TextureAtlas atlas = null;
+
+		// the atlas must be loaded
+		if (assetManager.isLoaded(atlasFilenamePath)) {
+			atlas = assetManager.get(atlasFilenamePath, TextureAtlas.class);
+		} else {
+			Gdx.app.debug(TAG, "Atlas is not loaded: " + atlasFilenamePath);
+		}
+
+		return atlas;
+	}
+
+	/**
+	 * Returns a sprite sheet, from the characters atlas when it has been
+	 * packed (region named after the file) so that every sheet shares the
+	 * same pages, from its own texture otherwise.
+	 * @param spriteFilenamePath e.g. sprites/characters/Warrior.png
+	 */
+	public static TextureRegion getSpriteSheetRegion(String spriteFilenamePath) {
+		if (!assetManager.isLoaded(CHARACTERS_ATLAS_PATH) && filePathResolver.resolve(CHARACTERS_ATLAS_PATH).exists()) {
+			loadTextureAtlasAsset(CHARACTERS_ATLAS_PATH);
+		}
+
+		if (assetManager.isLoaded(CHARACTERS_ATLAS_PATH)) {
+			String regionName = filePathResolver.resolve(spriteFilenamePath).nameWithoutExtension();
+			TextureRegion region = getTextureAtlasAsset(CHARACTERS_ATLAS_PATH).findRegion(regionName);
+			if (region != null) {
+				return region;
+			}
+			Gdx.app.debug(TAG, "Sprite sheet isn't packed: " + spriteFilenamePath);
+		}
+
+		// Standalone texture
+		loadTextureAsset(spriteFilenamePath);
+		Texture texture = getTextureAsset(spriteFilenamePath);
+		return texture == null ? null : new TextureRegion(texture);
+	}
+
 	/** @see AssetManager#getProgress() */
 	public static float loadCompleted() {
 		return assetManager.getProgress();
@@ -129,6 +270,11 @@ public class Utility {
 		return assetManager.update();
 	}
 
+	/** @see AssetManager#update(int) */
+	public static boolean updateAssetLoading(int millis) {
+		return assetManager.update(millis);
+	}
+
 	/** @see AssetManager#isLoaded(String) */
 	public static boolean isAssetLoaded(String fileName) {
 		return assetManager.isLoaded(fileName);
@@ -0,0 +1,158 @@
+package com.packtpub.libgdx.bludbourne;
+
+/**
+ * Runs a task over [0, count) split in one contiguous range per worker,
+ * the calling thread taking the first range, and returns once every range
+ * is done. The worker threads are kept between runs and nothing is
+ * allocated per run, unlike an ExecutorService and a CountDownLatch.
+ */
+public class WorkerPool {
+	/** Work split between the workers */
+	public interface Task {
+		/**
+		 * @param worker index of the worker, 0 is the calling thread
+		 * @param from first index of the range
+		 * @param to end of the range, exclusive
+		 */
+		void run(int worker, int from, int to);
+	}
+
+	/** Below this many items per worker the calling thread does everything */
+	public static final int MIN_ITEMS_PER_WORKER = 64;
+
+	private final int workerCount;
+	private final Thread[] threads;
+
+	// Run shared with the workers, guarded by lock
+	private final Object lock = new Object();
+	private Task task;
+	private int count;
+	private int generation = 0;
+	private int pending = 0;
+	private Throwable failure = null;
+	private boolean disposed = false;
+
+	/** @param workerCount number of ranges, the calling thread included */
+	public WorkerPool(int workerCount) {
+		this.workerCount = Math.max(1, workerCount);
+		threads = new Thread[this.workerCount - 1];
+
+		for (int i = 0; i < threads.length; i++) {
+			final int worker = i + 1;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(worker);
+				}
+			}, "entity-worker-" + worker);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	/** Runs the task over [0, count), blocks until every range is done */
+	public void run(Task task, int count) {
+		if (workerCount == 1 || count < MIN_ITEMS_PER_WORKER * 2) {
+			task.run(0, 0, count);
+			return;
+		}
+
+		synchronized (lock) {
+			this.task = task;
+			this.count = count;
+			pending = threads.length;
+			failure = null;
+			generation++;
+			lock.notifyAll();
+		}
+
+		// The workers must be done before returning, even if this range throws:
+		// the next run would count their late completions as its own
+		try {
+			task.run(0, 0, rangeEnd(0, count));
+		} finally {
+			awaitWorkers();
+		}
+
+		synchronized (lock) {
+			if (failure != null) {
+				throw new RuntimeException("Worker failed", failure);
+			}
+		}
+	}
+
+	/** Waits until every worker finished its range, an interrupt is only restored afterwards */
+	private void awaitWorkers() {
+		boolean interrupted = false;
+
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			this.task = null;
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void work(int worker) {
+		int seenGeneration = 0;
+
+		while (true) {
+			Task currentTask;
+			int currentCount;
+
+			synchronized (lock) {
+				while (generation == seenGeneration && !disposed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (disposed) {
+					return;
+				}
+				seenGeneration = generation;
+				currentTask = task;
+				currentCount = count;
+			}
+
+			try {
+				currentTask.run(worker, rangeEnd(worker - 1, currentCount), rangeEnd(worker, currentCount));
+			} catch (Throwable t) {
+				synchronized (lock) {
+					failure = t;
+				}
+			}
+
+			synchronized (lock) {
+				if (--pending == 0) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/** @return the end of the range of the worker, the start of the next one */
+	private int rangeEnd(int worker, int count) {
+		return (int) ((long) count * (worker + 1) / workerCount);
+	}
+
+	/** @return the number of ranges, the calling thread included */
+	public int getWorkerCount() { return workerCount; }
+
+	/** Stops the worker threads */
+	public void dispose() {
+		synchronized (lock) {
+			disposed = true;
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.packtpub.libgdx.bludbourne;
+
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapObject;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * A loaded chunk of a ChunkedWorld. The chunk map is in local
+ * coordinates; its rectangles are copied here in world coordinates.
+ */
+public class WorldChunk {
+	private final int column;
+	private final int row;
+	private final String path;
+	private final TiledMap map;
+
+	/** Bottom left corner in the world, in pixels */
+	private final float originX;
+	private final float originY;
+
+	// World coordinates (pixels)
+	private final Array<Rectangle> collisionRectangles;
+	private final Array<RectangleMapObject> portals;
+	private final Array<Rectangle> spawns;
+
+	WorldChunk(int column, int row, String path, TiledMap map, float originX, float originY) {
+		this.column = column;
+		this.row = row;
+		this.path = path;
+		this.map = map;
+		this.originX = originX;
+		this.originY = originY;
+
+		collisionRectangles = new Array<Rectangle>();
+		portals = new Array<RectangleMapObject>();
+		spawns = new Array<Rectangle>();
+
+		for (MapObject object : getObjects(MapManager.MAP_COLLISION_LAYER)) {
+			if (object instanceof RectangleMapObject) {
+				collisionRectangles.add(toWorld(((RectangleMapObject) object).getRectangle()));
+			}
+		}
+
+		// Portals keep their name, the destination map
+		for (MapObject object : getObjects(MapManager.MAP_PORTAL_LAYER)) {
+			if (object instanceof RectangleMapObject) {
+				RectangleMapObject portal = new RectangleMapObject();
+				portal.setName(object.getName());
+				portal.getRectangle().set(toWorld(((RectangleMapObject) object).getRectangle()));
+				portals.add(portal);
+			}
+		}
+
+		for (MapObject object : getObjects(MapManager.MAP_SPAWNS_LAYER)) {
+			if (object instanceof RectangleMapObject) {
+				spawns.add(toWorld(((RectangleMapObject) object).getRectangle()));
+			}
+		}
+	}
+
+	private Iterable<MapObject> getObjects(String layerName) {
+		MapLayer layer = map.getLayers().get(layerName);
+		return layer == null ? new Array<MapObject>(0) : layer.getObjects();
+	}
+
+	private Rectangle toWorld(Rectangle local) {
+		return new Rectangle(local.x + originX, local.y + originY, local.width, local.height);
+	}
+
+	public int getColumn() { return column; }
+
+	public int getRow() { return row; }
+
+	public String getPath() { return path; }
+
+	public TiledMap getMap() { return map; }
+
+	public float getOriginX() { return originX; }
+
+	public float getOriginY() { return originY; }
+
+	public Array<Rectangle> getCollisionRectangles() { return collisionRectangles; }
+
+	public Array<RectangleMapObject> getPortals() { return portals; }
+
+	public Array<Rectangle> getSpawns() { return spawns; }
+}
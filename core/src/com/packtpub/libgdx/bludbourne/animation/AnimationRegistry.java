@@ -0,0 +1,133 @@
+package com.packtpub.libgdx.bludbourne.animation;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.Animation;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.Utility;
+
+/**
+ * Builds the walk animations of each sprite sheet once, from the
+ * definitions of data/animations.json, and hands out the shared
+ * AnimationSet to every entity using the sheet.
+ */
+public class AnimationRegistry {
+	/** Tag for debugging */
+	private static final String TAG = AnimationRegistry.class.getSimpleName();
+
+	/** Sprite sheets definitions */
+	public static final String DEFINITIONS_PATH = "data/animations.json";
+
+	// Defaults for the sheets without definition
+	private static final int DEFAULT_FRAME_SIZE = 16;
+	private static final int DEFAULT_FRAMES = 4;
+	private static final float DEFAULT_FRAME_DURATION = 0.25f;
+
+	/** Sheet path -> definition */
+	private static ObjectMap<String, JsonValue> definitions = null;
+
+	/** Sheet path -> built animations */
+	private static final ObjectMap<String, AnimationSet> animationSets = new ObjectMap<String, AnimationSet>();
+
+	/** @return the animations of the sheet, built on the first call */
+	public static AnimationSet get(String sheetPath) {
+		AnimationSet animationSet = animationSets.get(sheetPath);
+
+		if (animationSet == null) {
+			animationSet = build(sheetPath);
+			animationSets.put(sheetPath, animationSet);
+		}
+
+		return animationSet;
+	}
+
+	/** Forgets the animations and unloads their sheets */
+	public static void dispose() {
+		for (String sheetPath : animationSets.keys()) {
+			Utility.unloadAsset(sheetPath);
+		}
+		animationSets.clear();
+		definitions = null;
+	}
+
+	private static AnimationSet build(String sheetPath) {
+		JsonValue definition = getDefinitions().get(sheetPath);
+		if (definition == null) {
+			Gdx.app.debug(TAG, "No definition for " + sheetPath + ", using defaults");
+		}
+
+		int frameWidth = definition == null ? DEFAULT_FRAME_SIZE : definition.getInt("frameWidth", DEFAULT_FRAME_SIZE);
+		int frameHeight = definition == null ? DEFAULT_FRAME_SIZE : definition.getInt("frameHeight", DEFAULT_FRAME_SIZE);
+		int frames = definition == null ? DEFAULT_FRAMES : definition.getInt("frames", DEFAULT_FRAMES);
+		float frameDuration = definition == null ? DEFAULT_FRAME_DURATION
+				: definition.getFloat("frameDuration", DEFAULT_FRAME_DURATION);
+		JsonValue rows = definition == null ? null : definition.get("rows");
+
+		// Packed in the characters atlas when available
+		TextureRegion sheet = Utility.getSpriteSheetRegion(sheetPath);
+		TextureRegion[][] texturesFrames = sheet.split(frameWidth, frameHeight);
+
+		Entity.Direction[] directions = Entity.Direction.values();
+		@SuppressWarnings("unchecked")
+		Animation<TextureRegion>[] walkAnimations = new Animation[directions.length];
+
+		for (Entity.Direction direction : directions) {
+			// Sheet rows are DOWN, LEFT, RIGHT, UP by default
+			int row = rows == null ? defaultRow(direction) : rows.getInt(direction.name(), defaultRow(direction));
+			Array<TextureRegion> walkFrames = new Array<TextureRegion>(frames);
+
+			for (int j = 0; j < frames; j++) {
+				TextureRegion region = texturesFrames[row][j];
+				if (region == null) {
+					Gdx.app.debug(TAG, "Got null animation frame " + row + "," + j);
+				}
+				walkFrames.add(region);
+			}
+
+			walkAnimations[direction.ordinal()] = new Animation<TextureRegion>(frameDuration, walkFrames,
+					Animation.PlayMode.LOOP);
+		}
+
+		Gdx.app.debug(TAG, "Animations built: " + sheetPath);
+		return new AnimationSet(sheetPath, walkAnimations, texturesFrames[0][0], frameWidth, frameHeight);
+	}
+
+	private static int defaultRow(Entity.Direction direction) {
+		switch (direction) {
+			case DOWN:
+				return 0;
+			case LEFT:
+				return 1;
+			case RIGHT:
+				return 2;
+			case UP:
+			default:
+				return 3;
+		}
+	}
+
+	private static ObjectMap<String, JsonValue> getDefinitions() {
+		if (definitions != null) {
+			return definitions;
+		}
+
+		definitions = new ObjectMap<String, JsonValue>();
+		FileHandle file = Gdx.files.internal(DEFINITIONS_PATH);
+
+		if (!file.exists()) {
+			Gdx.app.debug(TAG, "Definitions don't exist !: " + DEFINITIONS_PATH);
+			return definitions;
+		}
+
+		for (JsonValue definition : new JsonReader().parse(file)) {
+			definitions.put(definition.getString("sheet"), definition);
+		}
+
+		return definitions;
+	}
+}
@@ -0,0 +1,45 @@
+package com.packtpub.libgdx.bludbourne.animation;
+
+import com.badlogic.gdx.graphics.g2d.Animation;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.packtpub.libgdx.bludbourne.Entity;
+
+/**
+ * Walk animations of one sprite sheet, shared by every entity using the
+ * sheet. Built by the AnimationRegistry and never modified afterwards.
+ */
+public final class AnimationSet {
+	/** Sheet the frames come from */
+	private final String sheetPath;
+
+	/** Walk animation of each direction, indexed by Direction.ordinal() */
+	private final Animation<TextureRegion>[] walkAnimations;
+
+	/** Frame shown before any animation */
+	private final TextureRegion defaultFrame;
+
+	private final int frameWidth;
+	private final int frameHeight;
+
+	AnimationSet(String sheetPath, Animation<TextureRegion>[] walkAnimations, TextureRegion defaultFrame,
+			int frameWidth, int frameHeight) {
+		this.sheetPath = sheetPath;
+		this.walkAnimations = walkAnimations;
+		this.defaultFrame = defaultFrame;
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
+	}
+
+	/** @return the walk frame for the direction at the given animation time */
+	public TextureRegion getKeyFrame(Entity.Direction direction, float stateTime) {
+		return walkAnimations[direction.ordinal()].getKeyFrame(stateTime);
+	}
+
+	public TextureRegion getDefaultFrame() { return defaultFrame; }
+
+	public String getSheetPath() { return sheetPath; }
+
+	public int getFrameWidth() { return frameWidth; }
+
+	public int getFrameHeight() { return frameHeight; }
+}
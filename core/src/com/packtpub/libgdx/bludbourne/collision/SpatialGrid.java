@@ -0,0 +1,304 @@
+package com.packtpub.libgdx.bludbourne.collision;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Uniform grid over a fixed set of rectangles (map coordinates, in pixels).
+ * The grid is built once per map and queries only test the rectangles
+ * registered in the cells touched by the query area.
+ */
+public class SpatialGrid {
+	/** Default cell size in pixels (4 tiles of 16 pixels) */
+	public static final float DEFAULT_CELL_SIZE = 64f;
+
+	/** Cell size in pixels */
+	private final float cellSize;
+
+	/** Indexed rectangles */
+	private final Array<Rectangle> rectangles = new Array<Rectangle>();
+
+	// Grid bounds
+	private float originX;
+	private float originY;
+	private int columns;
+	private int rows;
+
+	/** Offset of each cell in cellItems, cell i owns [cellStart[i], cellStart[i + 1]) */
+	private int[] cellStart = new int[1];
+
+	/** Rectangle indices, packed cell after cell */
+	private int[] cellItems = new int[0];
+
+	/** Last query that tested each rectangle, avoids testing twice a rectangle spanning several cells */
+	private int[] stamps = new int[0];
+	private int currentStamp = 0;
+
+	// Counters
+	private long queryCount = 0;
+	private long cellVisitCount = 0;
+	private long candidateTestCount = 0;
+	private long hitCount = 0;
+
+	public SpatialGrid() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public SpatialGrid(float cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize must be > 0: " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	/** Rebuilds the grid over the given rectangles (references are kept, not copied) */
+	public void build(Array<Rectangle> source) {
+		rectangles.clear();
+		rectangles.addAll(source);
+
+		int count = rectangles.size;
+		if (count == 0) {
+			columns = 0;
+			rows = 0;
+			cellStart = new int[1];
+			cellItems = new int[0];
+			stamps = new int[0];
+			return;
+		}
+
+		// Bounds of the indexed area
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+
+		for (Rectangle rectangle : rectangles) {
+			minX = Math.min(minX, rectangle.x);
+			minY = Math.min(minY, rectangle.y);
+			maxX = Math.max(maxX, rectangle.x + rectangle.width);
+			maxY = Math.max(maxY, rectangle.y + rectangle.height);
+		}
+
+		originX = minX;
+		originY = minY;
+		columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+		rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+
+		// First pass: count the rectangles of each cell
+		int cellCount = columns * rows;
+		int[] counts = new int[cellCount];
+		for (int i = 0; i < count; i++) {
+			Rectangle rectangle = rectangles.get(i);
+			int minColumn = columnOf(rectangle.x);
+			int maxColumn = columnOf(rectangle.x + rectangle.width);
+			int minRow = rowOf(rectangle.y);
+			int maxRow = rowOf(rectangle.y + rectangle.height);
+
+			for (int row = minRow; row <= maxRow; row++) {
+				for (int column = minColumn; column <= maxColumn; column++) {
+					counts[row * columns + column]++;
+				}
+			}
+		}
+
+		// Prefix sums give each cell its slice
+		cellStart = new int[cellCount + 1];
+		for (int i = 0; i < cellCount; i++) {
+			cellStart[i + 1] = cellStart[i] + counts[i];
+		}
+
+		// Second pass: fill the slices
+		cellItems = new int[cellStart[cellCount]];
+		int[] cursor = new int[cellCount];
+		System.arraycopy(cellStart, 0, cursor, 0, cellCount);
+		for (int i = 0; i < count; i++) {
+			Rectangle rectangle = rectangles.get(i);
+			int minColumn = columnOf(rectangle.x);
+			int maxColumn = columnOf(rectangle.x + rectangle.width);
+			int minRow = rowOf(rectangle.y);
+			int maxRow = rowOf(rectangle.y + rectangle.height);
+
+			for (int row = minRow; row <= maxRow; row++) {
+				for (int column = minColumn; column <= maxColumn; column++) {
+					cellItems[cursor[row * columns + column]++] = i;
+				}
+			}
+		}
+
+		stamps = new int[count];
+		currentStamp = 0;
+	}
+
+	/** Rebuilds the grid over flattened rectangles, (x, y, width, height) each */
+	public void build(float[] bounds) {
+		Array<Rectangle> source = new Array<Rectangle>(bounds.length / 4);
+		for (int i = 0; i + 3 < bounds.length; i += 4) {
+			source.add(new Rectangle(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]));
+		}
+		build(source);
+	}
+
+	/** Removes every rectangle */
+	public void clear() {
+		build(new Array<Rectangle>(0));
+	}
+
+	/** @return true if the area overlaps at least one rectangle */
+	public boolean overlapsAny(Rectangle area) {
+		return query(area, null, true) > 0;
+	}
+
+	/**
+	 * Collects the indices of the rectangles overlapping the area
+	 * @param area query area, in pixels
+	 * @param results receives the indices (cleared first), can be null to only count
+	 * @return the number of overlapping rectangles
+	 */
+	public int query(Rectangle area, IntArray results) {
+		return query(area, results, false);
+	}
+
+	private int query(Rectangle area, IntArray results, boolean stopAtFirst) {
+		if (results != null) {
+			results.clear();
+		}
+		queryCount++;
+
+		if (columns == 0) {
+			return 0;
+		}
+
+		// Outside of the indexed area
+		if (area.x > originX + columns * cellSize || area.x + area.width < originX
+				|| area.y > originY + rows * cellSize || area.y + area.height < originY) {
+			return 0;
+		}
+
+		nextStamp();
+
+		int minColumn = columnOf(area.x);
+		int maxColumn = columnOf(area.x + area.width);
+		int minRow = rowOf(area.y);
+		int maxRow = rowOf(area.y + area.height);
+		int found = 0;
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int column = minColumn; column <= maxColumn; column++) {
+				int cell = row * columns + column;
+				cellVisitCount++;
+
+				for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+					int index = cellItems[i];
+					if (stamps[index] == currentStamp) {
+						continue;
+					}
+					stamps[index] = currentStamp;
+					candidateTestCount++;
+
+					if (area.overlaps(rectangles.get(index))) {
+						hitCount++;
+						found++;
+						if (results != null) {
+							results.add(index);
+						}
+						if (stopAtFirst) {
+							return found;
+						}
+					}
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Same as query() without touching the grid state (stamps, counters),
+	 * so several threads may query a built grid. The rectangles spanning
+	 * several cells are deduplicated in the results, which are expected to
+	 * be short.
+	 * @return the number of overlapping rectangles
+	 */
+	public int queryConcurrent(Rectangle area, IntArray results) {
+		results.clear();
+
+		if (columns == 0) {
+			return 0;
+		}
+		if (area.x > originX + columns * cellSize || area.x + area.width < originX
+				|| area.y > originY + rows * cellSize || area.y + area.height < originY) {
+			return 0;
+		}
+
+		int minColumn = columnOf(area.x);
+		int maxColumn = columnOf(area.x + area.width);
+		int minRow = rowOf(area.y);
+		int maxRow = rowOf(area.y + area.height);
+		boolean severalCells = minColumn != maxColumn || minRow != maxRow;
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int column = minColumn; column <= maxColumn; column++) {
+				int cell = row * columns + column;
+
+				for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+					int index = cellItems[i];
+					if (area.overlaps(rectangles.get(index)) && !(severalCells && results.contains(index))) {
+						results.add(index);
+					}
+				}
+			}
+		}
+
+		return results.size;
+	}
+
+	private void nextStamp() {
+		if (currentStamp == Integer.MAX_VALUE) {
+			for (int i = 0; i < stamps.length; i++) {
+				stamps[i] = 0;
+			}
+			currentStamp = 0;
+		}
+		currentStamp++;
+	}
+
+	private int columnOf(float x) {
+		int column = (int) ((x - originX) / cellSize);
+		return Math.min(Math.max(column, 0), columns - 1);
+	}
+
+	private int rowOf(float y) {
+		int row = (int) ((y - originY) / cellSize);
+		return Math.min(Math.max(row, 0), rows - 1);
+	}
+
+	/** @return the rectangle registered under the given index */
+	public Rectangle getRectangle(int index) { return rectangles.get(index); }
+
+	/** @return the number of indexed rectangles */
+	public int size() { return rectangles.size; }
+
+	/** @return the cell size in pixels */
+	public float getCellSize() { return cellSize; }
+
+	/** @return the number of queries since the last reset */
+	public long getQueryCount() { return queryCount; }
+
+	/** @return the number of cells visited since the last reset */
+	public long getCellVisitCount() { return cellVisitCount; }
+
+	/** @return the number of rectangle tests since the last reset, a linear scan would do size() per query */
+	public long getCandidateTestCount() { return candidateTestCount; }
+
+	/** @return the number of overlaps found since the last reset */
+	public long getHitCount() { return hitCount; }
+
+	/** Resets the query counters */
+	public void resetCounters() {
+		queryCount = 0;
+		cellVisitCount = 0;
+		candidateTestCount = 0;
+		hitCount = 0;
+	}
+}
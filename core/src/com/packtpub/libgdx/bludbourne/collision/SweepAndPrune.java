@@ -0,0 +1,215 @@
+package com.packtpub.libgdx.bludbourne.collision;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.EntityStore;
+
+/**
+ * Broadphase finding the overlapping entity bounding boxes. The handles
+ * are kept sorted by the left side of their box: entities move little
+ * between two steps, so the insertion sort of each update is close to
+ * linear, and the sweep only tests the boxes whose x intervals overlap.
+ */
+public class SweepAndPrune {
+	/** Handles sorted by minX */
+	private int[] order = new int[64];
+	private int size = 0;
+
+	/** Bounds of each handle at the last update, in map units */
+	private float[] minX = new float[64];
+	private float[] maxX = new float[64];
+	private float[] minY = new float[64];
+	private float[] maxY = new float[64];
+
+	/** Handles added since the last update, a full sort is cheaper than inserting them one by one */
+	private int added = 0;
+
+	/** Widest box at the last update, bounds how far left of a range a box can start and still reach it */
+	private float maxWidth = 0;
+
+	/** Packed (sortable minX, handle) of the full sorts */
+	private long[] sortKeys = new long[0];
+
+	// Counters of the last update and findPairs
+	private int swaps = 0;
+	private int tests = 0;
+	private int pairCount = 0;
+
+	/** Tracks the entity, its box is read from the store at the next update */
+	public void add(int handle) {
+		if (size == order.length) {
+			order = Arrays.copyOf(order, size * 2);
+		}
+		if (handle >= minX.length) {
+			int capacity = Math.max(handle + 1, minX.length * 2);
+			minX = Arrays.copyOf(minX, capacity);
+			maxX = Arrays.copyOf(maxX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			maxY = Arrays.copyOf(maxY, capacity);
+		}
+		order[size++] = handle;
+		added++;
+	}
+
+	/** Stops tracking the entity */
+	public void remove(int handle) {
+		for (int i = 0; i < size; i++) {
+			if (order[i] == handle) {
+				System.arraycopy(order, i + 1, order, i, size - i - 1);
+				size--;
+				return;
+			}
+		}
+	}
+
+	public void clear() {
+		size = 0;
+		added = 0;
+	}
+
+	/** Reads the boxes of the tracked entities and restores the order */
+	public void update(EntityStore store) {
+		maxWidth = 0;
+		for (int i = 0; i < size; i++) {
+			int handle = order[i];
+			float x = store.x[handle];
+			float y = store.y[handle];
+			minX[handle] = x;
+			maxX[handle] = x + store.boxWidth[handle];
+			minY[handle] = y;
+			maxY[handle] = y + store.boxHeight[handle];
+			maxWidth = Math.max(maxWidth, store.boxWidth[handle]);
+		}
+
+		swaps = 0;
+		if (added > size / 4) {
+			fullSort();
+		} else {
+			insertionSort();
+		}
+		added = 0;
+	}
+
+	/**
+	 * Collects the overlapping boxes, call it after update()
+	 * @param pairs receives the handles two by two (cleared first)
+	 * @return the number of pairs
+	 */
+	public int findPairs(IntArray pairs) {
+		pairs.clear();
+		tests = 0;
+
+		for (int i = 0; i < size; i++) {
+			int a = order[i];
+			float right = maxX[a];
+
+			// Every following box starting before our right side overlaps on x
+			for (int j = i + 1; j < size; j++) {
+				int b = order[j];
+				if (minX[b] >= right) {
+					break;
+				}
+
+				tests++;
+				if (minY[a] < maxY[b] && minY[b] < maxY[a]) {
+					pairs.add(a);
+					pairs.add(b);
+				}
+			}
+		}
+
+		pairCount = pairs.size / 2;
+		return pairCount;
+	}
+
+	/**
+	 * Collects the boxes overlapping a rectangle, e.g. the camera view. The
+	 * boxes are those of the last update(); the handles added since are all
+	 * tested, on their stale bounds.
+	 * @param result receives the handles in minX order (cleared first)
+	 * @return the number of handles
+	 */
+	public int query(float left, float bottom, float right, float top, IntArray result) {
+		result.clear();
+
+		int start = 0;
+		if (added == 0) {
+			// First box that may reach the left side, the ones before end sooner
+			start = lowerBound(left - maxWidth);
+		}
+
+		for (int i = start; i < size; i++) {
+			int handle = order[i];
+			if (added == 0 && minX[handle] >= right) {
+				break;
+			}
+			if (minX[handle] < right && left < maxX[handle] && minY[handle] < top && bottom < maxY[handle]) {
+				result.add(handle);
+			}
+		}
+		return result.size;
+	}
+
+	/** @return the first index whose minX is not below the value */
+	private int lowerBound(float value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (minX[order[mid]] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void insertionSort() {
+		for (int i = 1; i < size; i++) {
+			int handle = order[i];
+			float key = minX[handle];
+			int j = i - 1;
+
+			while (j >= 0 && minX[order[j]] > key) {
+				order[j + 1] = order[j];
+				j--;
+				swaps++;
+			}
+			order[j + 1] = handle;
+		}
+	}
+
+	/** Sorts (minX, handle) packed in longs, floats ordered through their bits */
+	private void fullSort() {
+		if (sortKeys.length < size) {
+			sortKeys = new long[order.length];
+		}
+
+		for (int i = 0; i < size; i++) {
+			int handle = order[i];
+			int bits = Float.floatToIntBits(minX[handle]);
+			// Negative floats sort in reverse order of their bits
+			bits ^= (bits >> 31) & 0x7FFFFFFF;
+			sortKeys[i] = ((long) bits << 32) | (handle & 0xFFFFFFFFL);
+		}
+
+		Arrays.sort(sortKeys, 0, size);
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) sortKeys[i];
+		}
+	}
+
+	/** @return the number of tracked entities */
+	public int size() { return size; }
+
+	/** @return the insertion sort shifts of the last update, grows with the disorder */
+	public int getSwaps() { return swaps; }
+
+	/** @return the y overlap tests of the last findPairs() */
+	public int getTests() { return tests; }
+
+	/** @return the pairs found by the last findPairs() */
+	public int getPairCount() { return pairCount; }
+}
@@ -0,0 +1,147 @@
+package com.packtpub.libgdx.bludbourne.collision;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Continuous movement of a box against the rectangles of a SpatialGrid:
+ * the box stops at the time of impact with the first rectangle on its
+ * path, then slides along it with the rest of the movement. Whatever the
+ * length of the movement, nothing is crossed and each slide costs a single
+ * grid query over the swept area. Movers sharing a grid may run on
+ * different threads, one mover per thread.
+ */
+public class SweptMover {
+	/** A first move then at most two slides (one per axis) */
+	private static final int MAX_ITERATIONS = 3;
+
+	/** Gap kept with the obstacles, in pixels, so that the box never ends inside one by rounding */
+	private static final float SKIN = 0.01f;
+
+	private final Rectangle swept = new Rectangle();
+	private final IntArray candidates = new IntArray();
+	private final Vector2 normal = new Vector2();
+	private final Vector2 hitNormal = new Vector2();
+
+	// Counters
+	private long moveCount = 0;
+	private long queryCount = 0;
+	private long impactCount = 0;
+
+	/**
+	 * Moves the box, updated in place
+	 * @param box box in pixels at its current position
+	 * @param dx movement in pixels
+	 * @param dy movement in pixels
+	 * @return true if an obstacle shortened or deflected the movement
+	 */
+	public boolean move(SpatialGrid grid, Rectangle box, float dx, float dy) {
+		moveCount++;
+		boolean blocked = false;
+
+		for (int iteration = 0; iteration < MAX_ITERATIONS && (dx != 0 || dy != 0); iteration++) {
+			// Every rectangle the box may touch on the way
+			swept.set(Math.min(box.x, box.x + dx) - SKIN, Math.min(box.y, box.y + dy) - SKIN,
+					box.width + Math.abs(dx) + 2 * SKIN, box.height + Math.abs(dy) + 2 * SKIN);
+			grid.queryConcurrent(swept, candidates);
+			queryCount++;
+
+			float firstImpact = 1f;
+			for (int i = 0; i < candidates.size; i++) {
+				float time = timeOfImpact(box, dx, dy, grid.getRectangle(candidates.get(i)), normal);
+				if (time < firstImpact) {
+					firstImpact = time;
+					hitNormal.set(normal);
+				}
+			}
+
+			box.x += dx * firstImpact;
+			box.y += dy * firstImpact;
+			if (firstImpact >= 1f) {
+				break;
+			}
+
+			// Back off a little and slide with the rest of the movement
+			impactCount++;
+			blocked = true;
+			box.x += hitNormal.x * SKIN;
+			box.y += hitNormal.y * SKIN;
+
+			float remaining = 1f - firstImpact;
+			dx = hitNormal.x != 0 ? 0 : dx * remaining;
+			dy = hitNormal.y != 0 ? 0 : dy * remaining;
+		}
+
+		return blocked;
+	}
+
+	/**
+	 * Swept test of a moving box against a static one. A box already
+	 * overlapping the obstacle may leave it, it is not blocked by it.
+	 * @param normal receives the side of the obstacle that is hit, pointing out of it
+	 * @return the fraction of the movement before the contact, in [0, 1), or 1 if none
+	 */
+	public static float timeOfImpact(Rectangle box, float dx, float dy, Rectangle obstacle, Vector2 normal) {
+		float entryX;
+		float exitX;
+		if (dx > 0) {
+			entryX = (obstacle.x - (box.x + box.width)) / dx;
+			exitX = (obstacle.x + obstacle.width - box.x) / dx;
+		} else if (dx < 0) {
+			entryX = (obstacle.x + obstacle.width - box.x) / dx;
+			exitX = (obstacle.x - (box.x + box.width)) / dx;
+		} else if (box.x < obstacle.x + obstacle.width && obstacle.x < box.x + box.width) {
+			entryX = Float.NEGATIVE_INFINITY;
+			exitX = Float.POSITIVE_INFINITY;
+		} else {
+			return 1f;
+		}
+
+		float entryY;
+		float exitY;
+		if (dy > 0) {
+			entryY = (obstacle.y - (box.y + box.height)) / dy;
+			exitY = (obstacle.y + obstacle.height - box.y) / dy;
+		} else if (dy < 0) {
+			entryY = (obstacle.y + obstacle.height - box.y) / dy;
+			exitY = (obstacle.y - (box.y + box.height)) / dy;
+		} else if (box.y < obstacle.y + obstacle.height && obstacle.y < box.y + box.height) {
+			entryY = Float.NEGATIVE_INFINITY;
+			exitY = Float.POSITIVE_INFINITY;
+		} else {
+			return 1f;
+		}
+
+		float entry = Math.max(entryX, entryY);
+		float exit = Math.min(exitX, exitY);
+
+		// No contact during this movement, or already overlapping
+		if (entry >= exit || entry < 0f || entry >= 1f) {
+			return 1f;
+		}
+
+		// The last axis to start overlapping is the side that is hit
+		if (entryX > entryY) {
+			normal.set(dx > 0 ? -1 : 1, 0);
+		} else {
+			normal.set(0, dy > 0 ? -1 : 1);
+		}
+		return entry;
+	}
+
+	/** @return the number of move() calls */
+	public long getMoveCount() { return moveCount; }
+
+	/** @return the grid queries, at least one per move() and one per slide */
+	public long getQueryCount() { return queryCount; }
+
+	/** @return the obstacles hit */
+	public long getImpactCount() { return impactCount; }
+
+	public void resetCounters() {
+		moveCount = 0;
+		queryCount = 0;
+		impactCount = 0;
+	}
+}
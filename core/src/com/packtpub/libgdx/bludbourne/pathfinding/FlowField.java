@@ -0,0 +1,166 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Distance of every tile to one goal (integration field) and the move
+ * towards it (direction field), shared by any number of entities: each
+ * one reads its tile in O(1) instead of searching a path.
+ *
+ * A new goal is flooded over several update() calls within a tile budget,
+ * into a second pair of arrays: the previous field is sampled meanwhile,
+ * and replaced once the new one is complete.
+ */
+public class FlowField {
+	/** Goal, unreachable or blocked tile */
+	public static final byte NO_DIRECTION = -1;
+
+	/** Distance of the unreachable tiles */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	// Entity.Direction order: UP, RIGHT, DOWN, LEFT
+	private static final int[] NEIGHBOR_X = { 0, 1, 0, -1 };
+	private static final int[] NEIGHBOR_Y = { 1, 0, -1, 0 };
+
+	private final WalkabilityGrid grid;
+
+	// Complete field, sampled
+	private int[] distances;
+	private byte[] directions;
+	private int goal = -1;
+
+	// Field being flooded
+	private int[] nextDistances;
+	private byte[] nextDirections;
+	private int nextGoal = -1;
+	private final IntArray frontier;
+	private int frontierHead = 0;
+	private boolean building = false;
+
+	// Counters
+	private int builds = 0;
+	private long floodedTiles = 0;
+
+	public FlowField(WalkabilityGrid grid) {
+		this.grid = grid;
+		int tiles = grid.getWidth() * grid.getHeight();
+		distances = new int[tiles];
+		directions = new byte[tiles];
+		nextDistances = new int[tiles];
+		nextDirections = new byte[tiles];
+		frontier = new IntArray(tiles);
+
+		Arrays.fill(distances, UNREACHABLE);
+		Arrays.fill(directions, NO_DIRECTION);
+	}
+
+	/**
+	 * Starts flooding from a new goal, nothing is done if it is the current
+	 * or the pending one
+	 * @param tile walkable tile
+	 */
+	public void setGoal(int tile) {
+		if (building ? tile == nextGoal : tile == goal) {
+			return;
+		}
+
+		Arrays.fill(nextDistances, UNREACHABLE);
+		Arrays.fill(nextDirections, NO_DIRECTION);
+		nextGoal = tile;
+		frontier.clear();
+		frontierHead = 0;
+		building = true;
+
+		nextDistances[tile] = 0;
+		frontier.add(tile);
+	}
+
+	/**
+	 * Floods the pending goal, breadth first since every move costs the same
+	 * @param budget tiles expanded at most
+	 * @return the tiles expanded, less than the budget once the field is complete
+	 */
+	public int update(int budget) {
+		if (!building) {
+			return 0;
+		}
+
+		int expanded = 0;
+		int[] items = frontier.items;
+
+		while (frontierHead < frontier.size && expanded < budget) {
+			int tile = items[frontierHead++];
+			int x = grid.getX(tile);
+			int y = grid.getY(tile);
+			int distance = nextDistances[tile] + 1;
+			expanded++;
+
+			for (int d = 0; d < NEIGHBOR_X.length; d++) {
+				int nx = x + NEIGHBOR_X[d];
+				int ny = y + NEIGHBOR_Y[d];
+				if (!grid.isWalkable(nx, ny)) {
+					continue;
+				}
+
+				int neighbor = grid.index(nx, ny);
+				if (nextDistances[neighbor] == UNREACHABLE) {
+					// First reached is the shortest, the move back leads to the goal
+					nextDistances[neighbor] = distance;
+					nextDirections[neighbor] = (byte) ((d + 2) % NEIGHBOR_X.length);
+					frontier.add(neighbor);
+				}
+			}
+		}
+		floodedTiles += expanded;
+
+		if (frontierHead == frontier.size) {
+			swap();
+		}
+		return expanded;
+	}
+
+	/** Makes the flooded field the sampled one */
+	private void swap() {
+		int[] oldDistances = distances;
+		distances = nextDistances;
+		nextDistances = oldDistances;
+
+		byte[] oldDirections = directions;
+		directions = nextDirections;
+		nextDirections = oldDirections;
+
+		goal = nextGoal;
+		building = false;
+		builds++;
+	}
+
+	/** @return the Entity.Direction ordinal towards the goal, NO_DIRECTION on the goal or if unreachable */
+	public int getDirection(int tile) {
+		return directions[tile];
+	}
+
+	/** @return the move towards the goal from the tile containing the position in pixels */
+	public int sample(float pixelX, float pixelY) {
+		return directions[grid.index(grid.toTileX(pixelX), grid.toTileY(pixelY))];
+	}
+
+	/** @return the moves from the tile to the goal, UNREACHABLE if none */
+	public int getDistance(int tile) {
+		return distances[tile];
+	}
+
+	/** @return the goal of the sampled field, -1 before the first complete flood */
+	public int getGoal() { return goal; }
+
+	/** @return true while a new goal is being flooded */
+	public boolean isBuilding() { return building; }
+
+	public WalkabilityGrid getGrid() { return grid; }
+
+	/** @return the complete floods */
+	public int getBuilds() { return builds; }
+
+	public long getFloodedTiles() { return floodedTiles; }
+}
@@ -0,0 +1,99 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import com.badlogic.gdx.utils.IntMap;
+import com.packtpub.libgdx.bludbourne.MapManager;
+
+/**
+ * Flow fields of the current map, one per goal (e.g. the player chased by
+ * a crowd). The goals move freely, each update() spends a fixed tile
+ * budget on the fields being flooded so that a goal change never costs a
+ * whole map flood in one step. The fields are dropped when the map changes.
+ */
+public class FlowFieldService {
+	/** Tiles flooded per update, a few steps cover the largest map */
+	public static final int DEFAULT_TILES_PER_UPDATE = 4096;
+
+	/** Blocked goals are moved to a walkable tile at most this far, in tiles */
+	private static final int SNAP_RADIUS = 3;
+
+	private WalkabilityGrid grid = null;
+	private final IntMap<FlowField> fields = new IntMap<FlowField>();
+	private int tilesPerUpdate = DEFAULT_TILES_PER_UPDATE;
+
+	/** @param grid walkable tiles of the new map, null when it has none */
+	public void setGrid(WalkabilityGrid grid) {
+		if (this.grid != grid) {
+			this.grid = grid;
+			fields.clear();
+		}
+	}
+
+	/**
+	 * Moves a goal, its field is flooded by the next updates
+	 * @param goalId any id, e.g. the handle of the chased entity
+	 * @param x position in map units
+	 * @param y position in map units
+	 * @return the field of the goal, null if the map has no walkable tiles around the goal
+	 */
+	public FlowField setGoal(int goalId, float x, float y) {
+		if (grid == null) {
+			return null;
+		}
+
+		int tile = grid.findWalkable(x / MapManager.UNIT_SCALE, y / MapManager.UNIT_SCALE, SNAP_RADIUS);
+		if (tile < 0) {
+			return fields.get(goalId);
+		}
+
+		FlowField field = fields.get(goalId);
+		if (field == null) {
+			field = new FlowField(grid);
+			fields.put(goalId, field);
+		}
+		field.setGoal(tile);
+		return field;
+	}
+
+	public void removeGoal(int goalId) {
+		fields.remove(goalId);
+	}
+
+	/** Floods the moved goals, within the tile budget shared by every field */
+	public void update() {
+		int budget = tilesPerUpdate;
+
+		for (FlowField field : fields.values()) {
+			if (budget <= 0) {
+				break;
+			}
+			budget -= field.update(budget);
+		}
+	}
+
+	/** @return the field of the goal, null if none */
+	public FlowField getField(int goalId) {
+		return fields.get(goalId);
+	}
+
+	/**
+	 * @param x position in map units
+	 * @param y position in map units
+	 * @return the Entity.Direction ordinal towards the goal, FlowField.NO_DIRECTION if none
+	 */
+	public int sample(int goalId, float x, float y) {
+		FlowField field = fields.get(goalId);
+		if (field == null) {
+			return FlowField.NO_DIRECTION;
+		}
+		return field.sample(x / MapManager.UNIT_SCALE, y / MapManager.UNIT_SCALE);
+	}
+
+	public void setTilesPerUpdate(int tilesPerUpdate) {
+		this.tilesPerUpdate = Math.max(1, tilesPerUpdate);
+	}
+
+	public WalkabilityGrid getGrid() { return grid; }
+
+	/** @return the number of goals */
+	public int size() { return fields.size; }
+}
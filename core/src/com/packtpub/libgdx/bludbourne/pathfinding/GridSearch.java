@@ -0,0 +1,138 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * A* over the tiles of a WalkabilityGrid, 4-connected like the entities
+ * movements, restricted to a rectangle of tiles (a cluster, or the whole
+ * map). The per tile state is reset by bumping a generation instead of
+ * clearing the arrays, so a search only costs the tiles it visits.
+ */
+public class GridSearch {
+	private static final int[] NEIGHBOR_X = { 0, 1, 0, -1 };
+	private static final int[] NEIGHBOR_Y = { 1, 0, -1, 0 };
+
+	private final WalkabilityGrid grid;
+
+	// Per tile state, valid when stamp == generation
+	private final int[] cost;
+	private final int[] parent;
+	private final int[] stamp;
+	private final boolean[] closed;
+	private int generation = 0;
+
+	private final NodeHeap open = new NodeHeap();
+
+	/** Tiles expanded by the last search */
+	private int expanded = 0;
+
+	public GridSearch(WalkabilityGrid grid) {
+		this.grid = grid;
+		int tiles = grid.getWidth() * grid.getHeight();
+		cost = new int[tiles];
+		parent = new int[tiles];
+		stamp = new int[tiles];
+		closed = new boolean[tiles];
+	}
+
+	/** Searches the whole map */
+	public int search(int start, int goal, IntArray path) {
+		return search(start, goal, 0, 0, grid.getWidth() - 1, grid.getHeight() - 1, path);
+	}
+
+	/**
+	 * Finds a shortest path between two walkable tiles inside the bounds
+	 * @param minX bounds in tiles, inclusive
+	 * @param maxX bounds in tiles, inclusive
+	 * @param path receives the tiles from start to goal, both included (cleared first), may be null
+	 * @return the number of moves, -1 if the goal can't be reached
+	 */
+	public int search(int start, int goal, int minX, int minY, int maxX, int maxY, IntArray path) {
+		if (path != null) {
+			path.clear();
+		}
+		expanded = 0;
+		nextGeneration();
+
+		int goalX = grid.getX(goal);
+		int goalY = grid.getY(goal);
+
+		open.clear();
+		visit(start, 0, -1);
+		open.push(start, NodeHeap.key(distance(start, goalX, goalY), 0));
+
+		while (!open.isEmpty()) {
+			int tile = open.pop();
+			if (closed[tile]) {
+				// Stale entry
+				continue;
+			}
+			closed[tile] = true;
+			expanded++;
+
+			if (tile == goal) {
+				if (path != null) {
+					buildPath(goal, path);
+				}
+				return cost[goal];
+			}
+
+			int x = grid.getX(tile);
+			int y = grid.getY(tile);
+			int nextCost = cost[tile] + 1;
+
+			for (int d = 0; d < NEIGHBOR_X.length; d++) {
+				int nx = x + NEIGHBOR_X[d];
+				int ny = y + NEIGHBOR_Y[d];
+				if (nx < minX || ny < minY || nx > maxX || ny > maxY || !grid.isWalkable(nx, ny)) {
+					continue;
+				}
+
+				int neighbor = grid.index(nx, ny);
+				if (stamp[neighbor] == generation && (closed[neighbor] || cost[neighbor] <= nextCost)) {
+					continue;
+				}
+
+				visit(neighbor, nextCost, tile);
+				open.push(neighbor, NodeHeap.key(nextCost + Math.abs(nx - goalX) + Math.abs(ny - goalY), nextCost));
+			}
+		}
+
+		return -1;
+	}
+
+	private void visit(int tile, int tileCost, int from) {
+		if (stamp[tile] != generation) {
+			stamp[tile] = generation;
+			closed[tile] = false;
+		}
+		cost[tile] = tileCost;
+		parent[tile] = from;
+	}
+
+	private int distance(int tile, int goalX, int goalY) {
+		return Math.abs(grid.getX(tile) - goalX) + Math.abs(grid.getY(tile) - goalY);
+	}
+
+	/** Walks the parents back from the goal, then reverses them */
+	private void buildPath(int goal, IntArray path) {
+		for (int tile = goal; tile != -1; tile = parent[tile]) {
+			path.add(tile);
+		}
+		path.reverse();
+	}
+
+	private void nextGeneration() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			// Stamps may match an old generation again
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+
+	/** @return the tiles expanded by the last search */
+	public int getExpanded() { return expanded; }
+}
@@ -0,0 +1,354 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+
+/**
+ * HPA* abstraction of a WalkabilityGrid. The map is cut in square
+ * clusters; the walkable openings between two clusters get a pair of
+ * portal nodes, one on each side, and the portals of a cluster are linked
+ * by the cost of their path inside it. A long path is then searched over
+ * the portals only and refined cluster by cluster with small bounded
+ * searches.
+ */
+public class HierarchicalGraph {
+	/** Cluster side, in tiles */
+	public static final int DEFAULT_CLUSTER_SIZE = 10;
+
+	/** Openings at least this wide get a portal at each end instead of one in the middle */
+	private static final int WIDE_ENTRANCE = 6;
+
+	private final WalkabilityGrid grid;
+	private final int clusterSize;
+	private final int clustersX;
+	private final int clustersY;
+
+	// Portal nodes
+	private final IntArray nodeTiles = new IntArray();
+	private final IntArray nodeClusters = new IntArray();
+	/** Per node, (neighbor, cost) pairs */
+	private final Array<IntArray> edges = new Array<IntArray>();
+	/** Per cluster, its nodes */
+	private final Array<IntArray> clusterNodes = new Array<IntArray>();
+	/** Tile -> node, a tile may be the portal of two openings */
+	private final IntIntMap tileNodes = new IntIntMap();
+
+	private final GridSearch search;
+
+	// Abstract search state, per node (the goal is node nodeCount)
+	private int[] costs;
+	private int[] parents;
+	private int[] stamps;
+	private boolean[] closed;
+	private int[] goalCosts;
+	private int generation = 0;
+	private final NodeHeap open = new NodeHeap();
+
+	private final IntArray abstractPath = new IntArray();
+	private final IntArray segment = new IntArray();
+
+	// Counters of the last findPath()
+	private int expandedNodes = 0;
+	private int expandedTiles = 0;
+
+	private HierarchicalGraph(WalkabilityGrid grid, int clusterSize) {
+		this.grid = grid;
+		this.clusterSize = clusterSize;
+		clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+		clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+		search = new GridSearch(grid);
+
+		for (int i = 0; i < clustersX * clustersY; i++) {
+			clusterNodes.add(new IntArray(8));
+		}
+	}
+
+	/** Places the portals and links them, once per map */
+	public static HierarchicalGraph build(WalkabilityGrid grid, int clusterSize) {
+		HierarchicalGraph graph = new HierarchicalGraph(grid, clusterSize);
+		graph.buildPortals();
+		graph.linkPortals();
+
+		int nodeCount = graph.getNodeCount();
+		graph.costs = new int[nodeCount + 1];
+		graph.parents = new int[nodeCount + 1];
+		graph.stamps = new int[nodeCount + 1];
+		graph.closed = new boolean[nodeCount + 1];
+		graph.goalCosts = new int[nodeCount];
+		return graph;
+	}
+
+	/** Scans the borders between each cluster and its right and top neighbors */
+	private void buildPortals() {
+		for (int cy = 0; cy < clustersY; cy++) {
+			for (int cx = 0; cx < clustersX; cx++) {
+				int minX = cx * clusterSize;
+				int minY = cy * clusterSize;
+				int maxX = Math.min(grid.getWidth(), minX + clusterSize) - 1;
+				int maxY = Math.min(grid.getHeight(), minY + clusterSize) - 1;
+
+				if (cx + 1 < clustersX) {
+					scanBorder(maxX, minY, maxY, true);
+				}
+				if (cy + 1 < clustersY) {
+					scanBorder(maxY, minX, maxX, false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the openings along a border, the runs of tiles walkable on both sides
+	 * @param line last column (vertical border) or row of the first cluster
+	 * @param from first tile along the border
+	 * @param to last tile along the border
+	 */
+	private void scanBorder(int line, int from, int to, boolean vertical) {
+		int runStart = -1;
+
+		for (int i = from; i <= to + 1; i++) {
+			boolean open = i <= to && (vertical ? grid.isWalkable(line, i) && grid.isWalkable(line + 1, i)
+					: grid.isWalkable(i, line) && grid.isWalkable(i, line + 1));
+
+			if (open && runStart < 0) {
+				runStart = i;
+			} else if (!open && runStart >= 0) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+					addPortal(line, runStart, vertical);
+					addPortal(line, runEnd, vertical);
+				} else {
+					addPortal(line, (runStart + runEnd) / 2, vertical);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	/** Adds the two nodes of a crossing, linked by a single move */
+	private void addPortal(int line, int position, boolean vertical) {
+		int a = vertical ? getOrAddNode(line, position) : getOrAddNode(position, line);
+		int b = vertical ? getOrAddNode(line + 1, position) : getOrAddNode(position, line + 1);
+		addEdge(a, b, 1);
+		addEdge(b, a, 1);
+	}
+
+	private int getOrAddNode(int x, int y) {
+		int tile = grid.index(x, y);
+		int node = tileNodes.get(tile, -1);
+
+		if (node < 0) {
+			node = nodeTiles.size;
+			int cluster = getCluster(tile);
+			nodeTiles.add(tile);
+			nodeClusters.add(cluster);
+			edges.add(new IntArray(8));
+			clusterNodes.get(cluster).add(node);
+			tileNodes.put(tile, node);
+		}
+		return node;
+	}
+
+	private void addEdge(int from, int to, int cost) {
+		edges.get(from).add(to);
+		edges.get(from).add(cost);
+	}
+
+	/** Links the portals of each cluster by the length of the path between them */
+	private void linkPortals() {
+		for (int cluster = 0; cluster < clusterNodes.size; cluster++) {
+			IntArray nodes = clusterNodes.get(cluster);
+
+			for (int i = 0; i < nodes.size; i++) {
+				for (int j = i + 1; j < nodes.size; j++) {
+					int a = nodes.get(i);
+					int b = nodes.get(j);
+					int cost = searchInCluster(nodeTiles.get(a), nodeTiles.get(b), cluster, null);
+					if (cost >= 0) {
+						addEdge(a, b, cost);
+						addEdge(b, a, cost);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds a path between two walkable tiles
+	 * @param path receives the tiles from start to goal, both included (cleared first)
+	 * @return false if the goal can't be reached
+	 */
+	public boolean findPath(int start, int goal, IntArray path) {
+		path.clear();
+		expandedNodes = 0;
+		expandedTiles = 0;
+
+		if (!grid.isWalkable(start) || !grid.isWalkable(goal)) {
+			return false;
+		}
+
+		int startCluster = getCluster(start);
+		int goalCluster = getCluster(goal);
+
+		// Short paths don't need the abstraction
+		if (startCluster == goalCluster && searchInCluster(start, goal, startCluster, path) >= 0) {
+			return true;
+		}
+
+		if (!searchPortals(start, goal, startCluster, goalCluster)) {
+			return false;
+		}
+
+		// Refines start -> portals -> goal, one cluster at a time
+		path.add(start);
+		int from = start;
+		for (int i = 0; i <= abstractPath.size; i++) {
+			int to = i < abstractPath.size ? nodeTiles.get(abstractPath.get(i)) : goal;
+			appendSegment(from, to, path);
+			from = to;
+		}
+		return true;
+	}
+
+	/** A* over the portals, from the start cluster portals to the goal cluster ones */
+	private boolean searchPortals(int start, int goal, int startCluster, int goalCluster) {
+		nextGeneration();
+		int goalNode = getNodeCount();
+		int goalX = grid.getX(goal);
+		int goalY = grid.getY(goal);
+
+		// The goal is reached from the portals of its cluster
+		Arrays.fill(goalCosts, -1);
+		IntArray goalPortals = clusterNodes.get(goalCluster);
+		for (int i = 0; i < goalPortals.size; i++) {
+			int node = goalPortals.get(i);
+			goalCosts[node] = searchInCluster(goal, nodeTiles.get(node), goalCluster, null);
+		}
+
+		open.clear();
+		IntArray startPortals = clusterNodes.get(startCluster);
+		for (int i = 0; i < startPortals.size; i++) {
+			int node = startPortals.get(i);
+			int cost = searchInCluster(start, nodeTiles.get(node), startCluster, null);
+			if (cost >= 0) {
+				relax(node, cost, -1, goalX, goalY);
+			}
+		}
+
+		while (!open.isEmpty()) {
+			int node = open.pop();
+			if (closed[node]) {
+				continue;
+			}
+			closed[node] = true;
+			expandedNodes++;
+
+			if (node == goalNode) {
+				abstractPath.clear();
+				for (int n = parents[goalNode]; n != -1; n = parents[n]) {
+					abstractPath.add(n);
+				}
+				abstractPath.reverse();
+				return true;
+			}
+
+			int cost = costs[node];
+			if (goalCosts[node] >= 0) {
+				relax(goalNode, cost + goalCosts[node], node, goalX, goalY);
+			}
+
+			IntArray nodeEdges = edges.get(node);
+			for (int i = 0; i < nodeEdges.size; i += 2) {
+				relax(nodeEdges.get(i), cost + nodeEdges.get(i + 1), node, goalX, goalY);
+			}
+		}
+
+		return false;
+	}
+
+	private void relax(int node, int cost, int from, int goalX, int goalY) {
+		if (stamps[node] == generation && (closed[node] || costs[node] <= cost)) {
+			return;
+		}
+		if (stamps[node] != generation) {
+			stamps[node] = generation;
+			closed[node] = false;
+		}
+		costs[node] = cost;
+		parents[node] = from;
+
+		int h = 0;
+		if (node < getNodeCount()) {
+			int tile = nodeTiles.get(node);
+			h = Math.abs(grid.getX(tile) - goalX) + Math.abs(grid.getY(tile) - goalY);
+		}
+		open.push(node, NodeHeap.key(cost + h, cost));
+	}
+
+	/** Appends the tiles after from up to to, both in the same cluster or adjacent */
+	private void appendSegment(int from, int to, IntArray path) {
+		if (from == to) {
+			return;
+		}
+
+		int dx = Math.abs(grid.getX(from) - grid.getX(to));
+		int dy = Math.abs(grid.getY(from) - grid.getY(to));
+		if (dx + dy == 1) {
+			// Crossing between two portals
+			path.add(to);
+			return;
+		}
+
+		searchInCluster(from, to, getCluster(to), segment);
+		for (int i = 1; i < segment.size; i++) {
+			path.add(segment.get(i));
+		}
+	}
+
+	private int searchInCluster(int from, int to, int cluster, IntArray path) {
+		int minX = (cluster % clustersX) * clusterSize;
+		int minY = (cluster / clustersX) * clusterSize;
+		int cost = search.search(from, to, minX, minY, minX + clusterSize - 1, minY + clusterSize - 1, path);
+		expandedTiles += search.getExpanded();
+		return cost;
+	}
+
+	private int getCluster(int tile) {
+		return (grid.getY(tile) / clusterSize) * clustersX + grid.getX(tile) / clusterSize;
+	}
+
+	private void nextGeneration() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	public WalkabilityGrid getGrid() { return grid; }
+
+	public int getClusterSize() { return clusterSize; }
+
+	public int getClusterCount() { return clustersX * clustersY; }
+
+	/** @return the number of portal nodes */
+	public int getNodeCount() { return nodeTiles.size; }
+
+	/** @return the number of links between portals, both ways counted */
+	public int getEdgeCount() {
+		int count = 0;
+		for (int i = 0; i < edges.size; i++) {
+			count += edges.get(i).size / 2;
+		}
+		return count;
+	}
+
+	/** @return the portals expanded by the last findPath() */
+	public int getExpandedNodes() { return expandedNodes; }
+
+	/** @return the tiles expanded by the last findPath(), refinement included */
+	public int getExpandedTiles() { return expandedTiles; }
+}
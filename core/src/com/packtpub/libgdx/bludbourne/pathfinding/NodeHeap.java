@@ -0,0 +1,78 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices keyed by a long, the open list of the
+ * A* searches. Nodes are pushed again when their cost improves, the stale
+ * entries are skipped by the caller when popped.
+ */
+class NodeHeap {
+	private int[] nodes = new int[256];
+	private long[] keys = new long[256];
+	private int size = 0;
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void push(int node, long key) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+
+		// Sift up
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			nodes[i] = nodes[parent];
+			keys[i] = keys[parent];
+			i = parent;
+		}
+		nodes[i] = node;
+		keys[i] = key;
+	}
+
+	/** @return the node of the smallest key, removed */
+	int pop() {
+		int top = nodes[0];
+		int node = nodes[--size];
+		long key = keys[size];
+
+		// Sift down
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (key <= keys[child]) {
+				break;
+			}
+			nodes[i] = nodes[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		nodes[i] = node;
+		keys[i] = key;
+
+		return top;
+	}
+
+	/**
+	 * Orders by f = g + h, then by the largest g: among equal estimates the
+	 * node closest to the goal is expanded first
+	 */
+	static long key(int f, int g) {
+		return ((long) f << 32) | (Integer.MAX_VALUE - g);
+	}
+}
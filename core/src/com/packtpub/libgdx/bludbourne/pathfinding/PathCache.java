@@ -0,0 +1,71 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Least recently used paths, keyed by their start and goal tiles. The
+ * paths only hold for the map they were found on, see clear().
+ */
+public class PathCache {
+	private final int capacity;
+	private final LinkedHashMap<Long, int[]> paths;
+
+	// Counters
+	private int hits = 0;
+	private int misses = 0;
+
+	/** @param capacity paths kept at most, the least recently used ones are dropped */
+	public PathCache(final int capacity) {
+		this.capacity = capacity;
+		// Access order, the eldest entry is the least recently used
+		paths = new LinkedHashMap<Long, int[]>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+				return size() > PathCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param path receives the cached tiles (cleared first)
+	 * @return false if the path isn't cached
+	 */
+	public boolean get(int start, int goal, IntArray path) {
+		int[] tiles = paths.get(key(start, goal));
+		if (tiles == null) {
+			misses++;
+			return false;
+		}
+
+		hits++;
+		path.clear();
+		path.addAll(tiles);
+		return true;
+	}
+
+	public void put(int start, int goal, IntArray path) {
+		paths.put(key(start, goal), path.toArray());
+	}
+
+	/** Forgets every path, e.g. when the map changes */
+	public void clear() {
+		paths.clear();
+	}
+
+	private static Long key(int start, int goal) {
+		return Long.valueOf(((long) start << 32) | (goal & 0xFFFFFFFFL));
+	}
+
+	public int size() { return paths.size(); }
+
+	public int getCapacity() { return capacity; }
+
+	public int getHits() { return hits; }
+
+	public int getMisses() { return misses; }
+}
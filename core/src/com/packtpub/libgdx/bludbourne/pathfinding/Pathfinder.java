@@ -0,0 +1,131 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.MapManager;
+import com.packtpub.libgdx.bludbourne.Utility;
+
+/**
+ * Path requests of the current map, in map units: snaps the ends to
+ * walkable tiles, asks the HierarchicalGraph, keeps the recent paths in a
+ * PathCache and turns the tiles into waypoints. The cache is emptied when
+ * the map changes.
+ */
+public class Pathfinder {
+	/** Debugging */
+	private static final String TAG = Pathfinder.class.getSimpleName();
+
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	/** Blocked ends are moved to a walkable tile at most this far, in tiles */
+	private static final int SNAP_RADIUS = 3;
+
+	private HierarchicalGraph graph = null;
+	private String mapName = null;
+	private final PathCache cache;
+	private boolean cacheEnabled = true;
+
+	private final IntArray tiles = new IntArray();
+
+	// Counters
+	private int requests = 0;
+	private int failures = 0;
+
+	public Pathfinder() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	public Pathfinder(int cacheSize) {
+		cache = new PathCache(cacheSize);
+	}
+
+	/**
+	 * Searches the given map from now on, the cached paths of another map are forgotten
+	 * @param graph null when the map can't be searched (e.g. a chunked world split without collisions)
+	 */
+	public void setMap(String mapName, HierarchicalGraph graph) {
+		if (this.graph == graph && (mapName == null ? this.mapName == null : mapName.equals(this.mapName))) {
+			return;
+		}
+
+		this.mapName = mapName;
+		this.graph = graph;
+		cache.clear();
+	}
+
+	/**
+	 * Finds the waypoints between two positions in map units
+	 * @param waypoints receives (x, y) pairs in map units, the bottom left
+	 *        corner of the tiles to walk to, the start one excluded (cleared first)
+	 * @return false if there is no path, or no map to search
+	 */
+	public boolean findPath(float fromX, float fromY, float toX, float toY, FloatArray waypoints) {
+		waypoints.clear();
+		if (graph == null) {
+			return false;
+		}
+		requests++;
+
+		WalkabilityGrid grid = graph.getGrid();
+		int start = grid.findWalkable(fromX / MapManager.UNIT_SCALE, fromY / MapManager.UNIT_SCALE, SNAP_RADIUS);
+		int goal = grid.findWalkable(toX / MapManager.UNIT_SCALE, toY / MapManager.UNIT_SCALE, SNAP_RADIUS);
+		if (start < 0 || goal < 0) {
+			failures++;
+			return false;
+		}
+
+		if (!cacheEnabled || !cache.get(start, goal, tiles)) {
+			if (!graph.findPath(start, goal, tiles)) {
+				failures++;
+				if (Utility.isDebugEnabled()) {
+					Gdx.app.debug(TAG, "No path from " + start + " to " + goal + " on " + mapName);
+				}
+				return false;
+			}
+			if (cacheEnabled) {
+				cache.put(start, goal, tiles);
+			}
+		}
+
+		toWaypoints(grid, waypoints);
+		return true;
+	}
+
+	/** Keeps the tiles where the path turns, and the last one */
+	private void toWaypoints(WalkabilityGrid grid, FloatArray waypoints) {
+		float tileWidth = grid.getTileWidth() * MapManager.UNIT_SCALE;
+		float tileHeight = grid.getTileHeight() * MapManager.UNIT_SCALE;
+
+		for (int i = 1; i < tiles.size; i++) {
+			int tile = tiles.get(i);
+			boolean last = i == tiles.size - 1;
+
+			if (!last) {
+				int previous = tiles.get(i - 1);
+				int next = tiles.get(i + 1);
+				// Same move before and after, not a turn
+				if (tile - previous == next - tile) {
+					continue;
+				}
+			}
+			waypoints.add(grid.getX(tile) * tileWidth);
+			waypoints.add(grid.getY(tile) * tileHeight);
+		}
+	}
+
+	/** Searches every request, e.g. to measure the search alone */
+	public void setCacheEnabled(boolean cacheEnabled) {
+		this.cacheEnabled = cacheEnabled;
+	}
+
+	/** @return the graph of the current map, null if it can't be searched */
+	public HierarchicalGraph getGraph() { return graph; }
+
+	public PathCache getCache() { return cache; }
+
+	public int getRequests() { return requests; }
+
+	/** @return the requests without path */
+	public int getFailures() { return failures; }
+}
@@ -0,0 +1,138 @@
+package com.packtpub.libgdx.bludbourne.pathfinding;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+
+/**
+ * Walkable tiles of a map: a tile is blocked when a collision rectangle
+ * overlaps it. Tiles are indexed by y * width + x, y up like the map.
+ */
+public class WalkabilityGrid {
+	/** Rectangles only touching a tile edge don't block it */
+	private static final float EDGE_TOLERANCE = 0.5f;
+
+	private final int width;
+	private final int height;
+
+	/** Tile size in pixels */
+	private final float tileWidth;
+	private final float tileHeight;
+
+	private final boolean[] blocked;
+	private int walkableCount;
+
+	public WalkabilityGrid(int width, int height, float tileWidth, float tileHeight) {
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		blocked = new boolean[width * height];
+		walkableCount = blocked.length;
+	}
+
+	/**
+	 * Marks the tiles overlapped by the collision rectangles
+	 * @param width map width in tiles
+	 * @param height map height in tiles
+	 * @param tileWidth in pixels
+	 * @param tileHeight in pixels
+	 */
+	public static WalkabilityGrid build(SpatialGrid collisionGrid, int width, int height, float tileWidth,
+			float tileHeight) {
+		WalkabilityGrid grid = new WalkabilityGrid(width, height, tileWidth, tileHeight);
+
+		for (int i = 0; i < collisionGrid.size(); i++) {
+			Rectangle rectangle = collisionGrid.getRectangle(i);
+			if (rectangle.width <= 0 || rectangle.height <= 0) {
+				continue;
+			}
+
+			int minX = Math.max(0, (int) Math.floor((rectangle.x + EDGE_TOLERANCE) / tileWidth));
+			int minY = Math.max(0, (int) Math.floor((rectangle.y + EDGE_TOLERANCE) / tileHeight));
+			int maxX = Math.min(width - 1, (int) Math.floor((rectangle.x + rectangle.width - EDGE_TOLERANCE) / tileWidth));
+			int maxY = Math.min(height - 1,
+					(int) Math.floor((rectangle.y + rectangle.height - EDGE_TOLERANCE) / tileHeight));
+
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					grid.setBlocked(x, y, true);
+				}
+			}
+		}
+
+		return grid;
+	}
+
+	public void setBlocked(int x, int y, boolean value) {
+		int index = y * width + x;
+		if (blocked[index] != value) {
+			blocked[index] = value;
+			walkableCount += value ? -1 : 1;
+		}
+	}
+
+	/** @return false for the tiles blocked or outside the map */
+	public boolean isWalkable(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height && !blocked[y * width + x];
+	}
+
+	public boolean isWalkable(int index) {
+		return !blocked[index];
+	}
+
+	/**
+	 * @param pixelX position in pixels
+	 * @param radius tiles searched around the position's tile
+	 * @return the closest walkable tile around the position, -1 if none
+	 */
+	public int findWalkable(float pixelX, float pixelY, int radius) {
+		int x = toTileX(pixelX);
+		int y = toTileY(pixelY);
+
+		for (int ring = 0; ring <= radius; ring++) {
+			// Tiles at this Chebyshev distance
+			for (int dy = -ring; dy <= ring; dy++) {
+				for (int dx = -ring; dx <= ring; dx++) {
+					if (Math.max(Math.abs(dx), Math.abs(dy)) == ring && isWalkable(x + dx, y + dy)) {
+						return index(x + dx, y + dy);
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** @return the tile column of a position in pixels, clamped to the map */
+	public int toTileX(float pixelX) {
+		return Math.max(0, Math.min(width - 1, (int) Math.floor(pixelX / tileWidth)));
+	}
+
+	/** @return the tile row of a position in pixels, clamped to the map */
+	public int toTileY(float pixelY) {
+		return Math.max(0, Math.min(height - 1, (int) Math.floor(pixelY / tileHeight)));
+	}
+
+	public int index(int x, int y) {
+		return y * width + x;
+	}
+
+	public int getX(int index) {
+		return index % width;
+	}
+
+	public int getY(int index) {
+		return index / width;
+	}
+
+	/** @return the width in tiles */
+	public int getWidth() { return width; }
+
+	/** @return the height in tiles */
+	public int getHeight() { return height; }
+
+	public float getTileWidth() { return tileWidth; }
+
+	public float getTileHeight() { return tileHeight; }
+
+	public int getWalkableCount() { return walkableCount; }
+}
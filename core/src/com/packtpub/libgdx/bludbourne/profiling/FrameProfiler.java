@@ -0,0 +1,150 @@
+package com.packtpub.libgdx.bludbourne.profiling;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer.Phase;
+
+/**
+ * Rolling histograms of the frame time and of each phase time, fed once
+ * per frame from a PhaseTimer. The percentiles are periodically appended
+ * to a local CSV or JSON lines file.
+ */
+public class FrameProfiler {
+	/** Debugging */
+	private static final String TAG = FrameProfiler.class.getSimpleName();
+
+	/** Dump file format */
+	public enum DumpFormat {
+		CSV, JSON
+	}
+
+	/** Frames kept by the histograms, 10 s at 60 fps */
+	public static final int DEFAULT_WINDOW = 600;
+
+	public static final float DEFAULT_DUMP_INTERVAL = 10f;
+
+	private static final String CSV_HEADER = "time_ms,phase,samples,mean_us,p50_us,p95_us,p99_us,max_us\n";
+
+	/** Name used for the whole frame in the dumps */
+	public static final String FRAME = "FRAME";
+
+	/** Name used for the input event to frame delay in the dumps */
+	public static final String INPUT_LATENCY = "INPUT_LATENCY";
+
+	private final RollingHistogram frameHistogram;
+	private final RollingHistogram[] phaseHistograms;
+
+	/** Delay between an input event and the end of the frame that used it */
+	private final RollingHistogram inputLatencyHistogram;
+
+	private DumpFormat dumpFormat = DumpFormat.CSV;
+	private String dumpPath = "profiling/frames.csv";
+	/** Seconds between two dumps, 0 disables them */
+	private float dumpInterval = DEFAULT_DUMP_INTERVAL;
+	private long lastDumpMillis = TimeUtils.millis();
+
+	/** Reused by the dumps */
+	private final StringBuilder text = new StringBuilder(1024);
+
+	public FrameProfiler() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/** @param window number of frames kept by the histograms */
+	public FrameProfiler(int window) {
+		frameHistogram = new RollingHistogram(window);
+		phaseHistograms = new RollingHistogram[PhaseTimer.PHASES.length];
+		for (int i = 0; i < phaseHistograms.length; i++) {
+			phaseHistograms[i] = new RollingHistogram(window);
+		}
+		inputLatencyHistogram = new RollingHistogram(window);
+	}
+
+	/**
+	 * Adds the frame to the histograms and clears the frame of the timer
+	 * @param frameNanos whole frame duration
+	 */
+	public void endFrame(PhaseTimer phaseTimer, long frameNanos) {
+		frameHistogram.add(frameNanos);
+		for (int i = 0; i < phaseHistograms.length; i++) {
+			phaseHistograms[i].add(phaseTimer.getFrameNanos(PhaseTimer.PHASES[i]));
+		}
+		phaseTimer.clearFrame();
+
+		if (dumpInterval > 0 && TimeUtils.timeSinceMillis(lastDumpMillis) >= dumpInterval * 1000) {
+			dump();
+		}
+	}
+
+	/** Appends the current percentiles to the dump file */
+	public void dump() {
+		lastDumpMillis = TimeUtils.millis();
+		FileHandle file = Gdx.files.local(dumpPath);
+
+		text.setLength(0);
+		if (dumpFormat == DumpFormat.CSV) {
+			if (!file.exists()) {
+				text.append(CSV_HEADER);
+			}
+			appendCsv(FRAME, frameHistogram);
+			for (Phase phase : PhaseTimer.PHASES) {
+				appendCsv(phase.name(), phaseHistograms[phase.ordinal()]);
+			}
+			appendCsv(INPUT_LATENCY, inputLatencyHistogram);
+		} else {
+			text.append("{\"time_ms\":").append(lastDumpMillis).append(",\"phases\":{");
+			appendJson(FRAME, frameHistogram);
+			for (Phase phase : PhaseTimer.PHASES) {
+				text.append(',');
+				appendJson(phase.name(), phaseHistograms[phase.ordinal()]);
+			}
+			text.append(',');
+			appendJson(INPUT_LATENCY, inputLatencyHistogram);
+			text.append("}}\n");
+		}
+
+		try {
+			file.writeString(text.toString(), true);
+		} catch (Exception e) {
+			Gdx.app.error(TAG, "Cannot write " + dumpPath, e);
+			dumpInterval = 0;
+		}
+	}
+
+	private void appendCsv(String name, RollingHistogram histogram) {
+		text.append(lastDumpMillis).append(',').append(name).append(',').append(histogram.size());
+		text.append(',').append(histogram.getMean() / 1000);
+		text.append(',').append(histogram.getPercentile(0.5f) / 1000);
+		text.append(',').append(histogram.getPercentile(0.95f) / 1000);
+		text.append(',').append(histogram.getPercentile(0.99f) / 1000);
+		text.append(',').append(histogram.getMax() / 1000).append('\n');
+	}
+
+	private void appendJson(String name, RollingHistogram histogram) {
+		text.append('"').append(name).append("\":{\"samples\":").append(histogram.size());
+		text.append(",\"mean_us\":").append(histogram.getMean() / 1000);
+		text.append(",\"p50_us\":").append(histogram.getPercentile(0.5f) / 1000);
+		text.append(",\"p95_us\":").append(histogram.getPercentile(0.95f) / 1000);
+		text.append(",\"p99_us\":").append(histogram.getPercentile(0.99f) / 1000);
+		text.append(",\"max_us\":").append(histogram.getMax() / 1000).append('}');
+	}
+
+	/**
+	 * @param format file format
+	 * @param path local file the dumps are appended to
+	 * @param interval seconds between two dumps, 0 disables them
+	 */
+	public void setDump(DumpFormat format, String path, float interval) {
+		dumpFormat = format;
+		dumpPath = path;
+		dumpInterval = interval;
+	}
+
+	public RollingHistogram getFrameHistogram() { return frameHistogram; }
+
+	public RollingHistogram getPhaseHistogram(Phase phase) { return phaseHistograms[phase.ordinal()]; }
+
+	public RollingHistogram getInputLatencyHistogram() { return inputLatencyHistogram; }
+}
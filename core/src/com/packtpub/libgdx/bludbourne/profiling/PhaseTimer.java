@@ -0,0 +1,66 @@
+package com.packtpub.libgdx.bludbourne.profiling;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Accumulates the time spent in each phase of a frame. Allocation free:
+ * begin/end only read the clock and update primitive arrays.
+ */
+public class PhaseTimer {
+	/** Timed phases of a frame */
+	public enum Phase {
+		INPUT, ENTITY_UPDATE, COLLISION, PORTAL_CHECK, MAP_RENDER, SPRITE_DRAW
+	}
+
+	/** Cached Phase.values() */
+	public static final Phase[] PHASES = Phase.values();
+
+	private final long[] startNanos = new long[PHASES.length];
+	private final long[] lastNanos = new long[PHASES.length];
+	private final long[] totalNanos = new long[PHASES.length];
+	private final long[] counts = new long[PHASES.length];
+
+	/** Time of each phase in the current frame, a phase may run several times per frame */
+	private final long[] frameNanos = new long[PHASES.length];
+
+	public void begin(Phase phase) {
+		startNanos[phase.ordinal()] = TimeUtils.nanoTime();
+	}
+
+	public void end(Phase phase) {
+		int i = phase.ordinal();
+		long elapsed = TimeUtils.nanoTime() - startNanos[i];
+		lastNanos[i] = elapsed;
+		totalNanos[i] += elapsed;
+		frameNanos[i] += elapsed;
+		counts[i]++;
+	}
+
+	/** Starts a new frame, see getFrameNanos() */
+	public void clearFrame() {
+		for (int i = 0; i < PHASES.length; i++) {
+			frameNanos[i] = 0;
+		}
+	}
+
+	/** @return the duration of the last begin/end of the phase, in nanoseconds */
+	public long getLastNanos(Phase phase) { return lastNanos[phase.ordinal()]; }
+
+	/** @return the time spent in the phase since the last clearFrame(), in nanoseconds */
+	public long getFrameNanos(Phase phase) { return frameNanos[phase.ordinal()]; }
+
+	/** @return the accumulated time of the phase since the last reset, in nanoseconds */
+	public long getTotalNanos(Phase phase) { return totalNanos[phase.ordinal()]; }
+
+	/** @return the number of begin/end of the phase since the last reset */
+	public long getCount(Phase phase) { return counts[phase.ordinal()]; }
+
+	public void reset() {
+		for (int i = 0; i < PHASES.length; i++) {
+			lastNanos[i] = 0;
+			totalNanos[i] = 0;
+			frameNanos[i] = 0;
+			counts[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.packtpub.libgdx.bludbourne.profiling;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer.Phase;
+
+/**
+ * On-screen text with the frame and phase percentiles and the render
+ * counters. The text is rebuilt a few times per second in a reused
+ * builder and layout.
+ */
+public class ProfilerOverlay {
+	/** Seconds between two text updates */
+	private static final float REFRESH_INTERVAL = 0.25f;
+
+	private static final float MARGIN = 8f;
+
+	private final FrameProfiler frameProfiler;
+	private final RenderStats renderStats;
+
+	private final SpriteBatch batch;
+	private final BitmapFont font;
+	private final GlyphLayout layout = new GlyphLayout();
+	private final StringBuilder text = new StringBuilder(512);
+
+	private boolean visible = false;
+	private float sinceRefresh = REFRESH_INTERVAL;
+
+	/** @param renderStats may be null */
+	public ProfilerOverlay(FrameProfiler frameProfiler, RenderStats renderStats) {
+		this.frameProfiler = frameProfiler;
+		this.renderStats = renderStats;
+
+		batch = new SpriteBatch();
+		font = new BitmapFont();
+	}
+
+	public void toggle() {
+		visible = !visible;
+		sinceRefresh = REFRESH_INTERVAL;
+	}
+
+	public boolean isVisible() { return visible; }
+
+	/** Draws the overlay in screen coordinates, if visible */
+	public void render(float delta) {
+		if (!visible) {
+			return;
+		}
+
+		sinceRefresh += delta;
+		if (sinceRefresh >= REFRESH_INTERVAL) {
+			sinceRefresh = 0;
+			updateText();
+		}
+
+		batch.getProjectionMatrix().setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+		batch.begin();
+		font.draw(batch, layout, MARGIN, Gdx.graphics.getHeight() - MARGIN);
+		batch.end();
+	}
+
+	private void updateText() {
+		text.setLength(0);
+		text.append("FPS ").append(Gdx.graphics.getFramesPerSecond()).append("    p50 / p95 / p99 ms\n");
+
+		appendLine("FRAME", frameProfiler.getFrameHistogram());
+		for (Phase phase : PhaseTimer.PHASES) {
+			appendLine(phase.name(), frameProfiler.getPhaseHistogram(phase));
+		}
+		if (frameProfiler.getInputLatencyHistogram().size() > 0) {
+			appendLine(FrameProfiler.INPUT_LATENCY, frameProfiler.getInputLatencyHistogram());
+		}
+
+		if (renderStats != null) {
+			text.append("flushes ").append(renderStats.getFlushes());
+			if (renderStats.isGLProfiling()) {
+				text.append("  draw calls ").append(renderStats.getDrawCalls());
+				text.append("  textures ").append(renderStats.getTextureBindings());
+				text.append("  vertices ").append(renderStats.getVertices());
+			}
+			text.append('\n');
+			text.append("entities drawn ").append(renderStats.getEntitiesDrawn());
+			text.append("  culled ").append(renderStats.getEntitiesCulled());
+			text.append("  flushes ").append(renderStats.getEntityFlushes()).append('\n');
+		}
+
+		layout.setText(font, text);
+	}
+
+	private void appendLine(String name, RollingHistogram histogram) {
+		text.append(name).append("  ");
+		appendMillis(histogram.getPercentile(0.5f));
+		text.append(" / ");
+		appendMillis(histogram.getPercentile(0.95f));
+		text.append(" / ");
+		appendMillis(histogram.getPercentile(0.99f));
+		text.append('\n');
+	}
+
+	/** Appends the duration in milliseconds with two decimals, without a float to string */
+	private void appendMillis(long nanos) {
+		long micros = nanos / 1000;
+		text.append(micros / 1000).append('.').append(micros % 1000 / 10, 2, '0');
+	}
+
+	public void dispose() {
+		batch.dispose();
+		font.dispose();
+	}
+}
@@ -0,0 +1,153 @@
+package com.packtpub.libgdx.bludbourne.profiling;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+
+/**
+ * Per-frame render counters: batch flushes (SpriteBatch and SpriteCache
+ * render calls), entities drawn and culled and, through the GLProfiler, GL
+ * draw calls, vertices and texture bindings.
+ *
+ * The GLProfiler checks glGetError() after every GL call, so it is only
+ * enabled on demand; the GL counters stay at 0 the rest of the time.
+ */
+public class RenderStats {
+	private final GLProfiler profiler;
+
+	// Current frame
+	private int flushes = 0;
+	private int drawCalls = 0;
+	private int textureBindings = 0;
+	private int vertices = 0;
+	private int entitiesDrawn = 0;
+	private int entitiesCulled = 0;
+	private int entityFlushes = 0;
+
+	// Totals since the creation
+	private long frames = 0;
+	/** Frames counted by the GLProfiler, the GL averages are over them */
+	private long profiledFrames = 0;
+	private long totalFlushes = 0;
+	private long totalDrawCalls = 0;
+	private long totalTextureBindings = 0;
+	private long totalVertices = 0;
+	private long totalEntitiesDrawn = 0;
+	private long totalEntitiesCulled = 0;
+
+	public RenderStats() {
+		profiler = new GLProfiler(Gdx.graphics);
+	}
+
+	/**
+	 * Counts the GL calls from the next frame on, e.g. while the overlay
+	 * shows them. Wraps Gdx.gl while enabled.
+	 */
+	public void setGLProfiling(boolean enabled) {
+		if (enabled == profiler.isEnabled()) {
+			return;
+		}
+
+		if (enabled) {
+			profiler.enable();
+		} else {
+			profiler.disable();
+		}
+	}
+
+	public boolean isGLProfiling() { return profiler.isEnabled(); }
+
+	/** Starts a new frame */
+	public void begin() {
+		flushes = 0;
+		entitiesDrawn = 0;
+		entitiesCulled = 0;
+		entityFlushes = 0;
+		profiler.reset();
+	}
+
+	/**
+	 * Adds the flushes of the batch, call it after each batch end()
+	 * since SpriteBatch resets its counter on begin()
+	 */
+	public void addBatch(Batch batch) {
+		if (batch instanceof SpriteBatch) {
+			flushes += ((SpriteBatch) batch).renderCalls;
+		}
+	}
+
+	/** Adds render calls not made by a batch, e.g. SpriteCache draws */
+	public void addFlushes(int renderCalls) {
+		flushes += renderCalls;
+	}
+
+	/** Adds the counters of an entity pass, its flushes are also added to the frame ones */
+	public void addEntities(int drawn, int culled, int renderCalls) {
+		entitiesDrawn += drawn;
+		entitiesCulled += culled;
+		entityFlushes += renderCalls;
+		flushes += renderCalls;
+	}
+
+	/** Ends the frame */
+	public void end() {
+		frames++;
+		totalFlushes += flushes;
+
+		if (profiler.isEnabled()) {
+			drawCalls = profiler.getDrawCalls();
+			textureBindings = profiler.getTextureBindings();
+			vertices = (int) profiler.getVertexCount().total;
+
+			profiledFrames++;
+			totalDrawCalls += drawCalls;
+			totalTextureBindings += textureBindings;
+			totalVertices += vertices;
+		} else {
+			drawCalls = 0;
+			textureBindings = 0;
+			vertices = 0;
+		}
+		totalEntitiesDrawn += entitiesDrawn;
+		totalEntitiesCulled += entitiesCulled;
+	}
+
+	public void dispose() {
+		profiler.disable();
+	}
+
+	/** @return the batch flushes of the last frame */
+	public int getFlushes() { return flushes; }
+
+	/** @return the GL draw calls of the last frame, 0 unless profiling the GL */
+	public int getDrawCalls() { return drawCalls; }
+
+	/** @return the texture bindings of the last frame */
+	public int getTextureBindings() { return textureBindings; }
+
+	/** @return the vertices sent by the draw calls of the last frame */
+	public int getVertices() { return vertices; }
+
+	/** @return the entities drawn in the last frame */
+	public int getEntitiesDrawn() { return entitiesDrawn; }
+
+	/** @return the entities left out of the view in the last frame */
+	public int getEntitiesCulled() { return entitiesCulled; }
+
+	/** @return the batch flushes of the entity passes of the last frame */
+	public int getEntityFlushes() { return entityFlushes; }
+
+	public float getAverageFlushes() { return frames == 0 ? 0 : (float) totalFlushes / frames; }
+
+	/** @return the draw calls per frame profiled, the same for the GL averages below */
+	public float getAverageDrawCalls() { return profiledFrames == 0 ? 0 : (float) totalDrawCalls / profiledFrames; }
+
+	public float getAverageTextureBindings() { return profiledFrames == 0 ? 0 : (float) totalTextureBindings / profiledFrames; }
+
+	public float getAverageVertices() { return profiledFrames == 0 ? 0 : (float) totalVertices / profiledFrames; }
+
+	public float getAverageEntitiesDrawn() { return frames == 0 ? 0 : (float) totalEntitiesDrawn / frames; }
+
+	public float getAverageEntitiesCulled() { return frames == 0 ? 0 : (float) totalEntitiesCulled / frames; }
+}
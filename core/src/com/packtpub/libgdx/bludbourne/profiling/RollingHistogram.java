@@ -0,0 +1,85 @@
+package com.packtpub.libgdx.bludbourne.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the last samples of a duration and gives their percentiles.
+ * Allocation free: the samples are stored in a ring buffer and the
+ * percentiles are computed on a preallocated copy.
+ */
+public class RollingHistogram {
+	private final long[] samples;
+	private final long[] sorted;
+
+	/** Index of the next sample */
+	private int next = 0;
+	private int count = 0;
+
+	/** The sorted copy is up to date */
+	private boolean sortedValid = false;
+
+	/** @param capacity number of samples kept */
+	public RollingHistogram(int capacity) {
+		samples = new long[capacity];
+		sorted = new long[capacity];
+	}
+
+	public void add(long sample) {
+		samples[next] = sample;
+		next = (next + 1) % samples.length;
+		if (count < samples.length) {
+			count++;
+		}
+		sortedValid = false;
+	}
+
+	/**
+	 * @param percentile between 0 and 1
+	 * @return the nearest rank percentile of the kept samples, 0 when empty
+	 */
+	public long getPercentile(float percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		if (!sortedValid) {
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			sortedValid = true;
+		}
+
+		int rank = (int) Math.ceil(percentile * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, rank))];
+	}
+
+	public long getMax() {
+		long max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, samples[i]);
+		}
+		return max;
+	}
+
+	public long getMean() {
+		if (count == 0) {
+			return 0;
+		}
+
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			total += samples[i];
+		}
+		return total / count;
+	}
+
+	/** @return the number of samples kept */
+	public int size() { return count; }
+
+	public int getCapacity() { return samples.length; }
+
+	public void clear() {
+		next = 0;
+		count = 0;
+		sortedValid = false;
+	}
+}
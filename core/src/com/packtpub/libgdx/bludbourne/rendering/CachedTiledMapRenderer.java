@@ -0,0 +1,311 @@
+package com.packtpub.libgdx.bludbourne.rendering;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapLayers;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
+import com.badlogic.gdx.maps.tiled.tiles.AnimatedTiledMapTile;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Orthogonal renderer replaying the static tile layers from a SpriteCache
+ * instead of rebuilding their vertices each frame. The static layers are
+ * baked once per map, in chunks of CHUNK_TILES x CHUNK_TILES tiles so only
+ * the chunks in view are drawn.
+ *
+ * Tile layers with animated tiles, or with a "dynamic" property set to
+ * true, are drawn per frame by the batch like the object layers.
+ */
+public class CachedTiledMapRenderer extends OrthogonalTiledMapRenderer {
+	/** Debugging */
+	private static final String TAG = CachedTiledMapRenderer.class.getSimpleName();
+
+	/** Layer property keeping a tile layer out of the cache */
+	public static final String DYNAMIC_PROPERTY = "dynamic";
+
+	/** Chunk side, in tiles */
+	public static final int CHUNK_TILES = 32;
+
+	/** SpriteCache without indices: 6 vertices per tile */
+	private static final int VERTICES_PER_TILE = 6;
+
+	/** Map the cache was built for */
+	private TiledMap cachedMap = null;
+	private SpriteCache cache = null;
+
+	/** Chunk cache ids of each layer, row major, -1 for empty chunks. null for dynamic layers */
+	private int[][] layerChunks;
+	/** Tiles of each chunk, same layout */
+	private int[][] layerChunkTiles;
+	private int chunkColumns;
+	private int chunkRows;
+	private float chunkWidth;
+	private float chunkHeight;
+
+	private final Sprite tileSprite = new Sprite();
+
+	// Counters
+	private int cachedLayers = 0;
+	private int cachedTiles = 0;
+	private int chunksDrawn = 0;
+	private int cachedVertices = 0;
+	private int cacheRenderCalls = 0;
+
+	public CachedTiledMapRenderer(TiledMap map, float unitScale) {
+		super(map, unitScale);
+	}
+
+	@Override
+	public void render() {
+		if (cachedMap != map) {
+			buildCache();
+		}
+
+		chunksDrawn = 0;
+		cachedVertices = 0;
+		cacheRenderCalls = 0;
+
+		AnimatedTiledMapTile.updateAnimationBaseTime();
+		boolean batchDrawing = false;
+		MapLayers layers = map.getLayers();
+
+		// Layers order is kept, the batch is ended around the cached layers
+		for (int i = 0; i < layers.getCount(); i++) {
+			MapLayer layer = layers.get(i);
+			if (!layer.isVisible()) {
+				continue;
+			}
+
+			if (layerChunks[i] != null) {
+				if (batchDrawing) {
+					endRender();
+					batchDrawing = false;
+				}
+				renderCachedLayer(i);
+			} else {
+				if (!batchDrawing) {
+					beginRender();
+					batchDrawing = true;
+				}
+				renderMapLayer(layer);
+			}
+		}
+
+		if (batchDrawing) {
+			endRender();
+		}
+	}
+
+	private void renderCachedLayer(int layerIndex) {
+		int[] chunks = layerChunks[layerIndex];
+		int[] chunkTiles = layerChunkTiles[layerIndex];
+
+		// Chunks in view
+		int firstColumn = Math.max(0, (int) (viewBounds.x / chunkWidth));
+		int lastColumn = Math.min(chunkColumns - 1, (int) ((viewBounds.x + viewBounds.width) / chunkWidth));
+		int firstRow = Math.max(0, (int) (viewBounds.y / chunkHeight));
+		int lastRow = Math.min(chunkRows - 1, (int) ((viewBounds.y + viewBounds.height) / chunkHeight));
+
+		if (firstColumn > lastColumn || firstRow > lastRow) {
+			return;
+		}
+
+		// SpriteCache doesn't set the blending
+		Gdx.gl.glEnable(GL20.GL_BLEND);
+		Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+
+		cache.setProjectionMatrix(batch.getProjectionMatrix());
+		cache.begin();
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int chunk = row * chunkColumns + column;
+				if (chunks[chunk] < 0) {
+					continue;
+				}
+				cache.draw(chunks[chunk]);
+				chunksDrawn++;
+				cachedVertices += chunkTiles[chunk] * VERTICES_PER_TILE;
+			}
+		}
+		cache.end();
+		cacheRenderCalls += cache.renderCalls;
+	}
+
+	/** Bakes the static tile layers of the current map */
+	private void buildCache() {
+		disposeCache();
+		cachedMap = map;
+
+		MapLayers layers = map.getLayers();
+		layerChunks = new int[layers.getCount()][];
+		layerChunkTiles = new int[layers.getCount()][];
+		cachedLayers = 0;
+		cachedTiles = 0;
+
+		// Static layers and their tile count, the cache size is fixed at creation
+		Array<TiledMapTileLayer> staticLayers = new Array<TiledMapTileLayer>();
+		int mapColumns = 0;
+		int mapRows = 0;
+		float tileWidth = 0;
+		float tileHeight = 0;
+		for (int i = 0; i < layers.getCount(); i++) {
+			MapLayer layer = layers.get(i);
+			if (!(layer instanceof TiledMapTileLayer) || isDynamic((TiledMapTileLayer) layer)) {
+				continue;
+			}
+
+			TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+			staticLayers.add(tileLayer);
+			cachedTiles += countTiles(tileLayer);
+			mapColumns = Math.max(mapColumns, tileLayer.getWidth());
+			mapRows = Math.max(mapRows, tileLayer.getHeight());
+			tileWidth = Math.max(tileWidth, tileLayer.getTileWidth() * unitScale);
+			tileHeight = Math.max(tileHeight, tileLayer.getTileHeight() * unitScale);
+		}
+
+		if (staticLayers.size == 0) {
+			return;
+		}
+
+		chunkColumns = (mapColumns + CHUNK_TILES - 1) / CHUNK_TILES;
+		chunkRows = (mapRows + CHUNK_TILES - 1) / CHUNK_TILES;
+		chunkWidth = CHUNK_TILES * tileWidth;
+		chunkHeight = CHUNK_TILES * tileHeight;
+		cache = new SpriteCache(Math.max(1, cachedTiles), false);
+
+		for (int i = 0; i < layers.getCount(); i++) {
+			MapLayer layer = layers.get(i);
+			if (!(layer instanceof TiledMapTileLayer) || !staticLayers.contains((TiledMapTileLayer) layer, true)) {
+				continue;
+			}
+
+			TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+			layerChunks[i] = new int[chunkColumns * chunkRows];
+			layerChunkTiles[i] = new int[chunkColumns * chunkRows];
+
+			for (int chunk = 0; chunk < layerChunks[i].length; chunk++) {
+				int tiles = cacheChunk(tileLayer, chunk % chunkColumns, chunk / chunkColumns);
+				layerChunkTiles[i][chunk] = tiles;
+				if (tiles == 0) {
+					// Nothing cached, the id is dropped
+					layerChunks[i][chunk] = -1;
+					cache.endCache();
+				} else {
+					layerChunks[i][chunk] = cache.endCache();
+				}
+			}
+			cachedLayers++;
+		}
+
+		Gdx.app.debug(TAG, cachedLayers + " static layers, " + cachedTiles + " tiles cached in "
+				+ chunkColumns + "x" + chunkRows + " chunks");
+	}
+
+	/** Adds the tiles of the chunk to a new cache, endCache() must follow */
+	private int cacheChunk(TiledMapTileLayer layer, int chunkColumn, int chunkRow) {
+		cache.beginCache();
+
+		float layerTileWidth = layer.getTileWidth() * unitScale;
+		float layerTileHeight = layer.getTileHeight() * unitScale;
+		int firstColumn = chunkColumn * CHUNK_TILES;
+		int firstRow = chunkRow * CHUNK_TILES;
+		int lastColumn = Math.min(layer.getWidth(), firstColumn + CHUNK_TILES);
+		int lastRow = Math.min(layer.getHeight(), firstRow + CHUNK_TILES);
+		int tiles = 0;
+
+		tileSprite.setColor(1, 1, 1, layer.getOpacity());
+
+		for (int row = firstRow; row < lastRow; row++) {
+			for (int column = firstColumn; column < lastColumn; column++) {
+				TiledMapTileLayer.Cell cell = layer.getCell(column, row);
+				if (cell == null || cell.getTile() == null) {
+					continue;
+				}
+
+				TiledMapTile tile = cell.getTile();
+				TextureRegion region = tile.getTextureRegion();
+				float width = region.getRegionWidth() * unitScale;
+				float height = region.getRegionHeight() * unitScale;
+
+				// Flips and rotations are applied by the sprite
+				tileSprite.setRegion(region);
+				tileSprite.setFlip(cell.getFlipHorizontally(), cell.getFlipVertically());
+				tileSprite.setBounds(column * layerTileWidth + tile.getOffsetX() * unitScale,
+						row * layerTileHeight + tile.getOffsetY() * unitScale, width, height);
+				tileSprite.setOrigin(width / 2, height / 2);
+				tileSprite.setRotation(cell.getRotation() * 90);
+				cache.add(tileSprite);
+				tiles++;
+			}
+		}
+
+		return tiles;
+	}
+
+	/** @return true if the layer must be drawn each frame */
+	private static boolean isDynamic(TiledMapTileLayer layer) {
+		Object dynamic = layer.getProperties().get(DYNAMIC_PROPERTY);
+		if (dynamic != null && Boolean.parseBoolean(dynamic.toString())) {
+			return true;
+		}
+
+		for (int row = 0; row < layer.getHeight(); row++) {
+			for (int column = 0; column < layer.getWidth(); column++) {
+				TiledMapTileLayer.Cell cell = layer.getCell(column, row);
+				if (cell != null && cell.getTile() instanceof AnimatedTiledMapTile) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int countTiles(TiledMapTileLayer layer) {
+		int tiles = 0;
+		for (int row = 0; row < layer.getHeight(); row++) {
+			for (int column = 0; column < layer.getWidth(); column++) {
+				TiledMapTileLayer.Cell cell = layer.getCell(column, row);
+				if (cell != null && cell.getTile() != null) {
+					tiles++;
+				}
+			}
+		}
+		return tiles;
+	}
+
+	private void disposeCache() {
+		if (cache != null) {
+			cache.dispose();
+			cache = null;
+		}
+		cachedMap = null;
+	}
+
+	/** @return the number of tile layers replayed from the cache */
+	public int getCachedLayers() { return cachedLayers; }
+
+	/** @return the number of tiles baked in the cache */
+	public int getCachedTiles() { return cachedTiles; }
+
+	/** @return the cached chunks drawn by the last render */
+	public int getChunksDrawn() { return chunksDrawn; }
+
+	/** @return the vertices replayed from the cache by the last render */
+	public int getCachedVertices() { return cachedVertices; }
+
+	/** @return the SpriteCache render calls of the last render */
+	public int getCacheRenderCalls() { return cacheRenderCalls; }
+
+	@Override
+	public void dispose() {
+		disposeCache();
+		super.dispose();
+	}
+}
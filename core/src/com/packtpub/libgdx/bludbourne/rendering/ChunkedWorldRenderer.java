@@ -0,0 +1,66 @@
+package com.packtpub.libgdx.bludbourne.rendering;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.packtpub.libgdx.bludbourne.ChunkedWorld;
+import com.packtpub.libgdx.bludbourne.WorldChunk;
+
+/**
+ * Draws the resident chunks of a ChunkedWorld, each chunk map being
+ * rendered with the view shifted by the chunk origin.
+ */
+public class ChunkedWorldRenderer {
+	private final OrthogonalTiledMapRenderer renderer;
+	private final float unitScale;
+	private final Matrix4 projection = new Matrix4();
+
+	// Last render counters
+	private int chunksDrawn = 0;
+	private int renderCalls = 0;
+
+	public ChunkedWorldRenderer(float unitScale) {
+		this.unitScale = unitScale;
+		renderer = new OrthogonalTiledMapRenderer(null, unitScale);
+	}
+
+	public void render(ChunkedWorld world, OrthographicCamera camera) {
+		float viewWidth = camera.viewportWidth * camera.zoom;
+		float viewHeight = camera.viewportHeight * camera.zoom;
+		float viewX = camera.position.x - viewWidth / 2;
+		float viewY = camera.position.y - viewHeight / 2;
+
+		chunksDrawn = 0;
+		renderCalls = 0;
+		Array<WorldChunk> chunks = world.getResidentChunks();
+		for (int i = 0; i < chunks.size; i++) {
+			WorldChunk chunk = chunks.get(i);
+			float originX = chunk.getOriginX() * unitScale;
+			float originY = chunk.getOriginY() * unitScale;
+
+			// Chunk local coordinates
+			projection.set(camera.combined).translate(originX, originY, 0);
+			renderer.setMap(chunk.getMap());
+			renderer.setView(projection, viewX - originX, viewY - originY, viewWidth, viewHeight);
+			renderer.render();
+			chunksDrawn++;
+
+			// Reset by each batch begin()
+			renderCalls += ((SpriteBatch) renderer.getBatch()).renderCalls;
+		}
+	}
+
+	/** @return the batch, shared with the entities drawing */
+	public OrthogonalTiledMapRenderer getRenderer() { return renderer; }
+
+	public int getChunksDrawn() { return chunksDrawn; }
+
+	/** @return the batch flushes of the last render */
+	public int getRenderCalls() { return renderCalls; }
+
+	public void dispose() {
+		renderer.dispose();
+	}
+}
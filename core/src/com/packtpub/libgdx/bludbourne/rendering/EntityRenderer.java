@@ -0,0 +1,221 @@
+package com.packtpub.libgdx.bludbourne.rendering;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.IntArray;
+import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.EntityStore;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.MapManager;
+import com.packtpub.libgdx.bludbourne.animation.AnimationSet;
+import com.packtpub.libgdx.bludbourne.collision.SweepAndPrune;
+
+/**
+ * Draws the player and the NPCs in one batch pass. The entities in view
+ * are found through the broadphase, drawn back to front (highest y first)
+ * so that the nearer ones overlap the farther ones, and reordered where it
+ * changes no overlap so that the sprites of a sheet follow each other: the
+ * batch only flushes on a texture change.
+ */
+public class EntityRenderer {
+	/** Largest sprite in map units, the boxes are smaller than their sprites */
+	private static final float MAX_SPRITE_SIZE = 2f;
+
+	/** Sprites looked ahead for one of the current texture */
+	private static final int GROUPING_WINDOW = 16;
+
+	private static final Entity.Direction[] DIRECTIONS = Entity.Direction.values();
+
+	/** Handles whose box is near the view */
+	private final IntArray candidates = new IntArray(256);
+
+	// Sprites in view, in query order
+	private float[] spriteX = new float[256];
+	private float[] spriteY = new float[256];
+	private float[] spriteWidth = new float[256];
+	private float[] spriteHeight = new float[256];
+	private TextureRegion[] regions = new TextureRegion[256];
+
+	/** Draw order, indices into the sprite arrays */
+	private int[] drawOrder = new int[256];
+
+	/** Packed (sortable -y, index) */
+	private long[] sortKeys = new long[256];
+
+	// Counters of the last render
+	private int drawn = 0;
+	private int culled = 0;
+	private int textureSwitches = 0;
+	private int flushes = 0;
+
+	/**
+	 * Draws the entities of the world seen by the camera, call it after the
+	 * map so that they are drawn over it
+	 * @param alpha interpolation factor between the last two simulation steps
+	 */
+	public void render(Batch batch, OrthographicCamera camera, GameWorld world, float alpha) {
+		EntityStore store = world.getEntityStore();
+		SweepAndPrune broadphase = world.getBroadphase();
+
+		float viewWidth = camera.viewportWidth * camera.zoom;
+		float viewHeight = camera.viewportHeight * camera.zoom;
+		float left = camera.position.x - viewWidth / 2;
+		float bottom = camera.position.y - viewHeight / 2;
+		float right = left + viewWidth;
+		float top = bottom + viewHeight;
+
+		// Boxes of the last step: widened by the sprite size and by a step of interpolation
+		broadphase.query(left - MAX_SPRITE_SIZE, bottom - MAX_SPRITE_SIZE, right + 1, top + 1, candidates);
+
+		int count = 0;
+		for (int i = 0; i < candidates.size; i++) {
+			int handle = candidates.get(i);
+			AnimationSet animationSet = store.animationSets[handle];
+			if (animationSet == null) {
+				continue;
+			}
+
+			float x = store.getInterpolatedX(handle, alpha);
+			float y = store.getInterpolatedY(handle, alpha);
+			float width = animationSet.getFrameWidth() * MapManager.UNIT_SCALE;
+			float height = animationSet.getFrameHeight() * MapManager.UNIT_SCALE;
+			if (x >= right || x + width <= left || y >= top || y + height <= bottom) {
+				continue;
+			}
+
+			ensureCapacity(count + 1);
+			spriteX[count] = x;
+			spriteY[count] = y;
+			spriteWidth[count] = width;
+			spriteHeight[count] = height;
+			regions[count] = getFrame(world, store, handle, animationSet);
+			count++;
+		}
+
+		sortBackToFront(count);
+		groupByTexture(count);
+
+		batch.begin();
+		for (int i = 0; i < count; i++) {
+			int index = drawOrder[i];
+			batch.draw(regions[index], spriteX[index], spriteY[index], spriteWidth[index], spriteHeight[index]);
+		}
+		batch.end();
+
+		// The regions are not kept past the frame
+		Arrays.fill(regions, 0, count, null);
+
+		drawn = count;
+		culled = broadphase.size() - count;
+		flushes = batch instanceof SpriteBatch ? ((SpriteBatch) batch).renderCalls : textureSwitches;
+	}
+
+	/** The player keeps the frame of its last move, the NPCs walk or face their direction */
+	private TextureRegion getFrame(GameWorld world, EntityStore store, int handle, AnimationSet animationSet) {
+		Entity player = world.getPlayer();
+		if (player != null && player.getHandle() == handle && player.getFrame() != null) {
+			return player.getFrame();
+		}
+
+		Entity.Direction direction = DIRECTIONS[store.direction[handle]];
+		float frameTime = store.state[handle] == Entity.State.WALKING.ordinal() ? store.frameTime[handle] : 0f;
+		return animationSet.getKeyFrame(direction, frameTime);
+	}
+
+	/** Orders the sprites by decreasing y, ties in broadphase order */
+	private void sortBackToFront(int count) {
+		for (int i = 0; i < count; i++) {
+			int bits = Float.floatToIntBits(-spriteY[i]);
+			// Negative floats sort in reverse order of their bits
+			bits ^= (bits >> 31) & 0x7FFFFFFF;
+			sortKeys[i] = ((long) bits << 32) | i;
+		}
+
+		Arrays.sort(sortKeys, 0, count);
+		for (int i = 0; i < count; i++) {
+			drawOrder[i] = (int) sortKeys[i];
+		}
+	}
+
+	/**
+	 * On a texture change, moves forward the next sprite of the previous
+	 * texture if it overlaps none of the sprites it would be drawn behind
+	 */
+	private void groupByTexture(int count) {
+		textureSwitches = count > 0 ? 1 : 0;
+
+		for (int i = 1; i < count; i++) {
+			Texture previous = regions[drawOrder[i - 1]].getTexture();
+			if (regions[drawOrder[i]].getTexture() == previous) {
+				continue;
+			}
+
+			int end = Math.min(count, i + GROUPING_WINDOW);
+			for (int j = i + 1; j < end; j++) {
+				int candidate = drawOrder[j];
+				if (regions[candidate].getTexture() != previous) {
+					continue;
+				}
+				if (!overlapsAny(candidate, i, j)) {
+					System.arraycopy(drawOrder, i, drawOrder, i + 1, j - i);
+					drawOrder[i] = candidate;
+				}
+				// Drawn behind the nearest sprite of the same texture otherwise
+				break;
+			}
+
+			if (regions[drawOrder[i]].getTexture() != previous) {
+				textureSwitches++;
+			}
+		}
+	}
+
+	/** @return true if the sprite overlaps one of the sprites drawn from 'from' (inclusive) to 'to' (exclusive) */
+	private boolean overlapsAny(int index, int from, int to) {
+		float x = spriteX[index];
+		float y = spriteY[index];
+		float width = spriteWidth[index];
+		float height = spriteHeight[index];
+
+		for (int k = from; k < to; k++) {
+			int other = drawOrder[k];
+			if (x < spriteX[other] + spriteWidth[other] && spriteX[other] < x + width
+					&& y < spriteY[other] + spriteHeight[other] && spriteY[other] < y + height) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= spriteX.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, spriteX.length * 2);
+		spriteX = Arrays.copyOf(spriteX, newCapacity);
+		spriteY = Arrays.copyOf(spriteY, newCapacity);
+		spriteWidth = Arrays.copyOf(spriteWidth, newCapacity);
+		spriteHeight = Arrays.copyOf(spriteHeight, newCapacity);
+		regions = Arrays.copyOf(regions, newCapacity);
+		drawOrder = Arrays.copyOf(drawOrder, newCapacity);
+		sortKeys = Arrays.copyOf(sortKeys, newCapacity);
+	}
+
+	/** @return the entities drawn by the last render */
+	public int getDrawn() { return drawn; }
+
+	/** @return the broadphase entities left out of the last render */
+	public int getCulled() { return culled; }
+
+	/** @return the texture changes of the last render, the flushes it needed at least */
+	public int getTextureSwitches() { return textureSwitches; }
+
+	/** @return the batch flushes of the last render */
+	public int getFlushes() { return flushes; }
+}
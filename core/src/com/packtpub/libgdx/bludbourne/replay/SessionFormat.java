@@ -0,0 +1,32 @@
+package com.packtpub.libgdx.bludbourne.replay;
+
+/**
+ * Layout of the session files written by SessionRecorder and read by
+ * SessionPlayer. Big endian, strings as DataOutputStream.writeUTF.
+ *
+ * <pre>
+ * int    MAGIC, short VERSION
+ * string first map name
+ * int    wanderer count, long wanderer seed
+ * float  simulation step
+ * then one record per tag byte, each frame ending with a FRAME record:
+ * INPUT  byte type, byte code (InputEventQueue), short x, short y for the button events, in map pixels
+ * MAP    string name of the map that became current this frame
+ * FRAME  float frame delta
+ * END
+ * </pre>
+ */
+public final class SessionFormat {
+	/** "BSES" */
+	public static final int MAGIC = 0x42534553;
+	public static final short VERSION = 1;
+
+	// Record tags
+	public static final byte INPUT = 0;
+	public static final byte MAP = 1;
+	public static final byte FRAME = 2;
+	public static final byte END = 3;
+
+	private SessionFormat() {
+	}
+}
@@ -0,0 +1,158 @@
+package com.packtpub.libgdx.bludbourne.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.InputEventQueue;
+
+/**
+ * Drives a GameWorld with a session written by SessionRecorder, on screen
+ * or headless. Per frame: beginFrame() gives the delta to simulate, then
+ * updateMapLoading(), verifyMapSwap() and the steps as usual.
+ */
+public class SessionPlayer {
+	/** Debugging */
+	private static final String TAG = SessionPlayer.class.getSimpleName();
+
+	private final FileHandle file;
+	private final DataInputStream in;
+
+	// Header
+	private final String mapName;
+	private final int wandererCount;
+	private final long wandererSeed;
+	private final float step;
+
+	private GameWorld world;
+
+	/** Map expected after this frame's swap, null if none */
+	private String expectedMapName = null;
+
+	private boolean finished = false;
+	private int frames = 0;
+	private int divergences = 0;
+
+	/** Reads the header, see getMapName() and the wanderer settings to create the world */
+	public SessionPlayer(FileHandle file) {
+		this.file = file;
+		in = new DataInputStream(new BufferedInputStream(file.read(), 8192));
+
+		try {
+			if (in.readInt() != SessionFormat.MAGIC) {
+				throw new GdxRuntimeException("Not a session file: " + file.path());
+			}
+			short version = in.readShort();
+			if (version != SessionFormat.VERSION) {
+				throw new GdxRuntimeException("Unsupported session version " + version + ": " + file.path());
+			}
+
+			mapName = in.readUTF();
+			wandererCount = in.readInt();
+			wandererSeed = in.readLong();
+			step = in.readFloat();
+		} catch (IOException e) {
+			StreamUtils.closeQuietly(in);
+			throw new GdxRuntimeException("Cannot read the session " + file.path(), e);
+		}
+	}
+
+	/**
+	 * Starts the replay on a world created with getMapName() and the
+	 * recorded wanderers. The real input must not reach the controller.
+	 */
+	public void start(GameWorld world) {
+		this.world = world;
+		world.setDeterministicStreaming(true, true);
+		Gdx.app.log(TAG, "Replaying " + file.path() + " from " + mapName);
+	}
+
+	/**
+	 * Queues the inputs of the next frame and schedules its map swap
+	 * @return the frame delta, 0 once the session is over (see isFinished())
+	 */
+	public float beginFrame() {
+		if (finished) {
+			return 0f;
+		}
+
+		InputEventQueue events = world.getController().getEvents();
+		expectedMapName = null;
+
+		try {
+			while (true) {
+				byte tag = in.readByte();
+
+				if (tag == SessionFormat.INPUT) {
+					int type = in.readByte();
+					int code = in.readByte();
+					int x = 0;
+					int y = 0;
+					if (type == InputEventQueue.BUTTON_DOWN || type == InputEventQueue.BUTTON_UP) {
+						x = in.readShort();
+						y = in.readShort();
+					}
+					events.push(type, code, x, y);
+				} else if (tag == SessionFormat.MAP) {
+					expectedMapName = in.readUTF();
+					world.scheduleMapSwap();
+				} else if (tag == SessionFormat.FRAME) {
+					frames++;
+					return in.readFloat();
+				} else {
+					finish();
+					return 0f;
+				}
+			}
+		} catch (IOException e) {
+			// Truncated recording (e.g. the game was killed)
+			Gdx.app.error(TAG, "Session ends unexpectedly after " + frames + " frames: " + file.path());
+			finish();
+			return 0f;
+		}
+	}
+
+	/** Checks the map after updateMapLoading(), a different one means the replay diverged */
+	public void verifyMapSwap() {
+		if (expectedMapName != null && !expectedMapName.equals(world.getCurrentMapName())) {
+			divergences++;
+			Gdx.app.error(TAG, "Replay diverged at frame " + frames + ": expected " + expectedMapName + ", got "
+					+ world.getCurrentMapName());
+		}
+		expectedMapName = null;
+	}
+
+	private void finish() {
+		finished = true;
+		StreamUtils.closeQuietly(in);
+		Gdx.app.log(TAG, frames + " frames replayed, " + divergences + " divergences");
+	}
+
+	/** Stops the replay early */
+	public void close() {
+		if (!finished) {
+			finish();
+		}
+	}
+
+	public boolean isFinished() { return finished; }
+
+	/** @return the map the session starts on */
+	public String getMapName() { return mapName; }
+
+	public int getWandererCount() { return wandererCount; }
+
+	public long getWandererSeed() { return wandererSeed; }
+
+	/** @return the simulation step the session was recorded with */
+	public float getStep() { return step; }
+
+	public int getFrames() { return frames; }
+
+	public int getDivergences() { return divergences; }
+}
@@ -0,0 +1,137 @@
+package com.packtpub.libgdx.bludbourne.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.InputEventQueue;
+
+/**
+ * Writes what drives a session (input events, frame deltas, map swaps) to
+ * a compact binary file, see SessionFormat. Per frame:
+ * recordInputs(), recordMapSwap() if updateMapLoading() swapped, endFrame().
+ */
+public class SessionRecorder {
+	/** Debugging */
+	private static final String TAG = SessionRecorder.class.getSimpleName();
+
+	private final GameWorld world;
+	private final FileHandle file;
+	private DataOutputStream out;
+
+	/** InputEventQueue.getPushed() at the previous recordInputs() */
+	private long recordedEvents;
+
+	private int frames = 0;
+
+	/**
+	 * Starts the recording, call it once the world is created. The chunks are
+	 * streamed synchronously from now on so that replays find the same ones.
+	 * @param wandererSeed seed given to GameWorld.spawnWanderers()
+	 * @param step simulation step of the FixedTimestep
+	 */
+	public SessionRecorder(FileHandle file, GameWorld world, long wandererSeed, float step) {
+		this.world = world;
+		this.file = file;
+		this.recordedEvents = world.getController().getEvents().getPushed();
+		world.setDeterministicStreaming(true, false);
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(file.write(false), 8192));
+			out.writeInt(SessionFormat.MAGIC);
+			out.writeShort(SessionFormat.VERSION);
+			out.writeUTF(world.getCurrentMapName());
+			out.writeInt(world.getWandererCount());
+			out.writeLong(wandererSeed);
+			out.writeFloat(step);
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Cannot record the session to " + file.path(), e);
+		}
+		Gdx.app.log(TAG, "Recording to " + file.path());
+	}
+
+	/** Records the events received since the previous frame, call it before updateMapLoading() */
+	public void recordInputs() {
+		if (out == null) {
+			return;
+		}
+
+		InputEventQueue events = world.getController().getEvents();
+		int count = (int) Math.min(events.size(), events.getPushed() - recordedEvents);
+		recordedEvents = events.getPushed();
+
+		try {
+			for (int i = events.size() - count; i < events.size(); i++) {
+				int type = events.getType(i);
+				out.writeByte(SessionFormat.INPUT);
+				out.writeByte(type);
+				out.writeByte(events.getCode(i));
+				if (type == InputEventQueue.BUTTON_DOWN || type == InputEventQueue.BUTTON_UP) {
+					out.writeShort(events.getX(i));
+					out.writeShort(events.getY(i));
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Records that the current map changed this frame */
+	public void recordMapSwap() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(SessionFormat.MAP);
+			out.writeUTF(world.getCurrentMapName());
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Ends the frame */
+	public void endFrame(float delta) {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(SessionFormat.FRAME);
+			out.writeFloat(delta);
+			frames++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Ends the recording */
+	public void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(SessionFormat.END);
+			out.close();
+			Gdx.app.log(TAG, frames + " frames recorded to " + file.path() + " (" + file.length() + " bytes)");
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Cannot close " + file.path(), e);
+		}
+		out = null;
+	}
+
+	public int getFrames() { return frames; }
+
+	/** Stops recording after a write error, the game goes on */
+	private void fail(IOException e) {
+		Gdx.app.error(TAG, "Recording stopped: cannot write " + file.path(), e);
+		try {
+			out.close();
+		} catch (IOException ignored) {
+			// Already failing
+		}
+		out = null;
+	}
+}
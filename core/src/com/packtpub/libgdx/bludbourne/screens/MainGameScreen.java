@@ -1,24 +1,41 @@
 package com.packtpub.libgdx.bludbourne.screens;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.g2d.Sprite;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.maps.MapLayer;
-import com.badlogic.gdx.maps.MapObject;
-import com.badlogic.gdx.maps.objects.RectangleMapObject;
-import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
-import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.packtpub.libgdx.bludbourne.Entity;
+import com.packtpub.libgdx.bludbourne.FixedTimestep;
+import com.packtpub.libgdx.bludbourne.GameWorld;
 import com.packtpub.libgdx.bludbourne.MapManager;
-import com.packtpub.libgdx.bludbourne.PlayerController;
+import com.packtpub.libgdx.bludbourne.profiling.FrameProfiler;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer.Phase;
+import com.packtpub.libgdx.bludbourne.profiling.ProfilerOverlay;
+import com.packtpub.libgdx.bludbourne.profiling.RenderStats;
+import com.packtpub.libgdx.bludbourne.rendering.CachedTiledMapRenderer;
+import com.packtpub.libgdx.bludbourne.rendering.ChunkedWorldRenderer;
+import com.packtpub.libgdx.bludbourne.rendering.EntityRenderer;
+import com.packtpub.libgdx.bludbourne.replay.SessionPlayer;
+import com.packtpub.libgdx.bludbourne.replay.SessionRecorder;
 
 public class MainGameScreen implements Screen {
 	/** Debugging */
 	private static final String TAG = MainGameScreen.class.getSimpleName();
 
+	/** -Dbludbourne.record=file records the session, -Dbludbourne.replay=file replays one */
+	private static final String RECORD_PROPERTY = "bludbourne.record";
+	private static final String REPLAY_PROPERTY = "bludbourne.replay";
+
+	/** -Dbludbourne.profiling.gl=true counts the GL calls the whole session, not only while the overlay shows */
+	private static final String GL_PROFILING_PROPERTY = "bludbourne.profiling.gl";
+
+	/** -Dbludbourne.threads=N updates the entities on N threads */
+	private static final String THREADS_PROPERTY = "bludbourne.threads";
+
 	/** Viewport properties */
 	private static class VIEWPORT {
 		static float viewportWidth;
@@ -30,29 +47,43 @@ public class MainGameScreen implements Screen {
 		static float aspectRatio;
 	}
 
-	/** Input manager */
-	private PlayerController controller;
+	/** Maps, entities and their simulation */
+	private GameWorld world;
 
-	/** Player frame */
-	private TextureRegion currentPlayerFrame;
+	/** Player position drawn this frame, interpolated between two steps */
+	private Vector2 playerRenderPosition = new Vector2();
 
-	/** Handles position */
-	private Sprite currentPlayerSprite;
+	/** Fixed simulation steps */
+	private FixedTimestep timestep = new FixedTimestep();
 
-	/** Map renderer */
-	private OrthogonalTiledMapRenderer mapRenderer;
+	/** Map renderer, static layers are replayed from a cache */
+	private CachedTiledMapRenderer mapRenderer;
 
-	/** Camera */
-	public static OrthographicCamera camera;
+	/** Renderer of the chunks streamed around the player */
+	private ChunkedWorldRenderer chunkRenderer;
+
+	/** Player and NPCs in view, drawn over the map */
+	private EntityRenderer entityRenderer;
+
+	/** Flush and draw call counters */
+	private RenderStats renderStats;
+
+	/** Frame and phase time percentiles */
+	private FrameProfiler frameProfiler;
 
-	/** Map Manager */
-	private static MapManager mapMgr;
+	/** Profiling text, toggled by F3 */
+	private ProfilerOverlay profilerOverlay;
 
-	/** The player entity */
-	private static Entity player;
+	/** Session being recorded or replayed, null otherwise */
+	private SessionRecorder recorder = null;
+	private SessionPlayer replay = null;
+
+	/** Camera */
+	public static OrthographicCamera camera;
 
 	public MainGameScreen() {
-		mapMgr = new MapManager();
+		world = new GameWorld();
+		world.setThreads(Integer.getInteger(THREADS_PROPERTY, 1));
 	}
 
 	@Override
@@ -64,50 +95,125 @@ public class MainGameScreen implements Screen {
 		camera = new OrthographicCamera();
 		camera.setToOrtho(false, VIEWPORT.viewportWidth, VIEWPORT.viewportHeight);
 
+		// map and player
+		String replayPath = System.getProperty(REPLAY_PROPERTY);
+		if (replayPath != null) {
+			replay = new SessionPlayer(Gdx.files.local(replayPath));
+			world.create(replay.getMapName());
+			world.spawnWanderers(replay.getWandererCount(), replay.getWandererSeed());
+			timestep = new FixedTimestep(replay.getStep(), FixedTimestep.DEFAULT_MAX_STEPS);
+			replay.start(world);
+		} else {
+			world.create();
+		}
+
 		// map renderer setup
-		mapRenderer = new OrthogonalTiledMapRenderer(mapMgr.getCurrentMap(), MapManager.UNIT_SCALE);
+		mapRenderer = new CachedTiledMapRenderer(world.getMapManager().getCurrentMap(), MapManager.UNIT_SCALE);
 		mapRenderer.setView(camera);
+		chunkRenderer = new ChunkedWorldRenderer(MapManager.UNIT_SCALE);
+		entityRenderer = new EntityRenderer();
+		renderStats = new RenderStats();
+		renderStats.setGLProfiling(Boolean.getBoolean(GL_PROFILING_PROPERTY));
+		frameProfiler = new FrameProfiler();
+		if ("json".equalsIgnoreCase(System.getProperty("bludbourne.profiling.format"))) {
+			frameProfiler.setDump(FrameProfiler.DumpFormat.JSON, "profiling/frames.json", FrameProfiler.DEFAULT_DUMP_INTERVAL);
+		}
+		profilerOverlay = new ProfilerOverlay(frameProfiler, renderStats);
 
-		// placing player
-		player = new Entity();
-		player.init(mapMgr.getPlayerStartUnitScaled().x, mapMgr.getPlayerStartUnitScaled().y);
+		if (replay == null) {
+			Gdx.input.setInputProcessor(world.getController());
 
-		currentPlayerSprite = player.getFrameSprite();
-		controller = new PlayerController(player);
-		Gdx.input.setInputProcessor(controller);
+			String recordPath = System.getProperty(RECORD_PROPERTY);
+			if (recordPath != null) {
+				recorder = new SessionRecorder(Gdx.files.local(recordPath), world, 0L, timestep.getStep());
+			}
+		}
 	}
 
 	@Override
 	public void render(float delta) {
+		long frameStart = TimeUtils.nanoTime();
+
+		if (replay != null) {
+			// The recorded frame replaces the real one
+			delta = replay.beginFrame();
+			if (replay.isFinished()) {
+				Gdx.app.exit();
+				return;
+			}
+		} else if (recorder != null) {
+			recorder.recordInputs();
+		}
+
+		// The previous map is rendered until the requested one is ready
+		boolean mapSwapped = world.updateMapLoading();
+		if (mapSwapped && world.getChunkedWorld() == null) {
+			mapRenderer.setMap(world.getMapManager().getCurrentMap());
+		}
+		if (replay != null) {
+			replay.verifyMapSwap();
+		} else if (recorder != null) {
+			if (mapSwapped) {
+				recorder.recordMapSwap();
+			}
+			recorder.endFrame(delta);
+		}
+
+		// Simulation runs at a fixed rate whatever the refresh rate
+		int steps = timestep.advance(delta);
+		for (int i = 0; i < steps; i++) {
+			world.step(timestep.getStep());
+		}
+
+		draw(timestep.getAlpha());
+		long frameEnd = TimeUtils.nanoTime();
+		frameProfiler.endFrame(world.getPhaseTimer(), frameEnd - frameStart);
+		world.getController().endFrame(frameEnd, frameProfiler.getInputLatencyHistogram());
+
+		if (Gdx.input.isKeyJustPressed(Input.Keys.F3)) {
+			profilerOverlay.toggle();
+			renderStats.setGLProfiling(profilerOverlay.isVisible() || Boolean.getBoolean(GL_PROFILING_PROPERTY));
+		}
+		profilerOverlay.render(delta);
+	}
+
+	/**
+	 * Draws the frame
+	 * @param alpha interpolation factor between the last two simulation steps
+	 */
+	private void draw(float alpha) {
 		// Clear the previous frame
 		Gdx.gl.glClearColor(0, 0, 0, 1);
 		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
-		
-		// Preferable to lock and center the camera to the player position
-		camera.position.set(currentPlayerSprite.getX(), currentPlayerSprite.getY(), 0f);
-		camera.update();
 
-		// Update animation
-		player.update(delta);
-		currentPlayerFrame = player.getFrame();
+		Entity player = world.getPlayer();
+		PhaseTimer phaseTimer = world.getPhaseTimer();
 
-		// Check collisions with portals
-		updatePortalLayerActivation(player.boundingBox);
-
-		// Can we move
-		if (!isCollisionWithMapLayer(player.boundingBox)) {
-			player.setNextPositionToCurrent();
-		}
-		controller.update(delta);
+		// Preferable to lock and center the camera to the player position
+		player.getInterpolatedPosition(alpha, playerRenderPosition);
+		camera.position.set(playerRenderPosition.x, playerRenderPosition.y, 0f);
+		camera.update();
 
 		// Draw map
+		renderStats.begin();
+		phaseTimer.begin(Phase.MAP_RENDER);
 		mapRenderer.setView(camera);
-		mapRenderer.render();
+		if (world.getChunkedWorld() != null) {
+			chunkRenderer.render(world.getChunkedWorld(), camera);
+			renderStats.addFlushes(chunkRenderer.getRenderCalls());
+		} else {
+			mapRenderer.render();
+			renderStats.addBatch(mapRenderer.getBatch());
+			renderStats.addFlushes(mapRenderer.getCacheRenderCalls());
+		}
+		phaseTimer.end(Phase.MAP_RENDER);
 
-		// Draw player
-		mapRenderer.getBatch().begin();
-		mapRenderer.getBatch().draw(currentPlayerFrame, currentPlayerSprite.getX(), currentPlayerSprite.getY(), 1, 1);
-		mapRenderer.getBatch().end();
+		// Draw player and NPCs
+		phaseTimer.begin(Phase.SPRITE_DRAW);
+		entityRenderer.render(mapRenderer.getBatch(), camera, world, alpha);
+		phaseTimer.end(Phase.SPRITE_DRAW);
+		renderStats.addEntities(entityRenderer.getDrawn(), entityRenderer.getCulled(), entityRenderer.getFlushes());
+		renderStats.end();
 	}
 
 	@Override
@@ -124,6 +230,7 @@ public class MainGameScreen implements Screen {
 
 	@Override
 	public void hide() {
+		world.getController().hide();
 	}
 	
 	private void setupViewport(int width, int height) {
@@ -158,63 +265,25 @@ public class MainGameScreen implements Screen {
 		Gdx.app.debug(TAG, "WorldRenderer: physical: (" + VIEWPORT.physicalWidth + ", " + VIEWPORT.physicalHeight + ")");
 	}
 	
-	private boolean isCollisionWithMapLayer(Rectangle boundingBox) {
-		MapLayer mapCollisionLayer = mapMgr.getCollisionLayer();
-		
-		if (mapCollisionLayer == null) {
-			return false;
-		}
-		
-		Rectangle rectangle = null;
-		
-		for (MapObject object : mapCollisionLayer.getObjects()) {
-			if (object instanceof RectangleMapObject) {
-				rectangle = ((RectangleMapObject) object).getRectangle();
-				if (boundingBox.overlaps(rectangle)) {
-					return true;
-				}
-			}
-		}
-		
-		return false;
-	}
-	
-	private boolean updatePortalLayerActivation(Rectangle boundingBox) {
-		MapLayer mapPortalLayer = mapMgr.getPortalLayer();
-		
-		if (mapPortalLayer == null) {
-			return false;
-		}
-		
-		Rectangle rectangle = null;
-		
-		for (MapObject object : mapPortalLayer.getObjects()) {
-			if (object instanceof RectangleMapObject) {
-				rectangle = ((RectangleMapObject) object).getRectangle();
-				if (boundingBox.overlaps(rectangle)) {
-					String mapName = object.getName();
-					if (mapName == null) {
-						return false;
-					}
-					
-					mapMgr.setClosestStartPositionFromScaledUnits(player.getCurrentPosition());
-					mapMgr.loadMap(mapName);
-					player.init(mapMgr.getPlayerStartUnitScaled().x, mapMgr.getPlayerStartUnitScaled().y);
-					mapRenderer.setMap(mapMgr.getCurrentMap());
-					Gdx.app.debug(TAG, "Portal Activated");
-					return true;
-				}
-			}
-		}
-		
-		return false;
-	}
-
 	@Override
 	public void dispose() {
-		player.dispose();
-		controller.dispose();
+		if (recorder != null) {
+			recorder.close();
+		}
+		if (replay != null) {
+			replay.close();
+		}
+		Gdx.app.debug(TAG, "Average per frame: " + renderStats.getAverageFlushes() + " flushes, "
+				+ renderStats.getAverageDrawCalls() + " draw calls (profiled frames), "
+				+ renderStats.getAverageTextureBindings() + " texture bindings, "
+				+ renderStats.getAverageVertices() + " vertices, "
+				+ renderStats.getAverageEntitiesDrawn() + " entities drawn, "
+				+ renderStats.getAverageEntitiesCulled() + " culled");
+		renderStats.dispose();
+		profilerOverlay.dispose();
+		world.dispose();
 		Gdx.input.setInputProcessor(null);
 		mapRenderer.dispose();
+		chunkRenderer.dispose();
 	}
 }
\ No newline at end of file
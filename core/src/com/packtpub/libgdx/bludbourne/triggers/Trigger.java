@@ -0,0 +1,49 @@
+package com.packtpub.libgdx.bludbourne.triggers;
+
+import com.badlogic.gdx.math.Rectangle;
+
+/** Trigger volume read from a map layer (rectangle in pixels) */
+public class Trigger {
+	/** Position in its TriggerIndex */
+	private final int index;
+
+	/** Same for the same volume across the indexes of a map, unlike the position */
+	private final int id;
+
+	/** Object name, e.g. the destination map for portals */
+	private final String name;
+
+	/** Layer the trigger comes from */
+	private final String layerName;
+
+	/** Volume in map coordinates (pixels) */
+	private final Rectangle rectangle;
+
+	/** The id is the position, for the indexes built once per map */
+	public Trigger(int index, String name, String layerName, Rectangle rectangle) {
+		this(index, index, name, layerName, rectangle);
+	}
+
+	public Trigger(int index, int id, String name, String layerName, Rectangle rectangle) {
+		this.index = index;
+		this.id = id;
+		this.name = name;
+		this.layerName = layerName;
+		this.rectangle = rectangle;
+	}
+
+	public int getIndex() { return index; }
+
+	public int getId() { return id; }
+
+	public String getName() { return name; }
+
+	public String getLayerName() { return layerName; }
+
+	public Rectangle getRectangle() { return rectangle; }
+
+	/** @return true if the trigger comes from the given layer */
+	public boolean isFromLayer(String layer) {
+		return layerName.equals(layer);
+	}
+}
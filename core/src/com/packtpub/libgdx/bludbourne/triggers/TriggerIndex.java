@@ -0,0 +1,107 @@
+package com.packtpub.libgdx.bludbourne.triggers;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapObject;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.packtpub.libgdx.bludbourne.collision.SpatialGrid;
+
+/** Trigger volumes of one map, indexed in a SpatialGrid */
+public class TriggerIndex {
+	/** Debugging */
+	private static final String TAG = TriggerIndex.class.getSimpleName();
+
+	/** Index without any trigger */
+	public static final TriggerIndex EMPTY = new TriggerIndex(new Array<Trigger>(0));
+
+	private final Array<Trigger> triggers;
+	private final SpatialGrid grid;
+
+	/** Position of each trigger id */
+	private final IntIntMap indices;
+
+	private TriggerIndex(Array<Trigger> triggers) {
+		this.triggers = triggers;
+		this.grid = new SpatialGrid();
+		this.indices = new IntIntMap(triggers.size);
+
+		Array<Rectangle> rectangles = new Array<Rectangle>(triggers.size);
+		for (Trigger trigger : triggers) {
+			rectangles.add(trigger.getRectangle());
+			indices.put(trigger.getId(), trigger.getIndex());
+		}
+		grid.build(rectangles);
+	}
+
+	/** Builds the index from the rectangle objects of the given layers */
+	public static TriggerIndex build(TiledMap map, String... layerNames) {
+		Array<Trigger> triggers = new Array<Trigger>();
+
+		for (String layerName : layerNames) {
+			MapLayer layer = map.getLayers().get(layerName);
+			if (layer == null) {
+				continue;
+			}
+
+			for (MapObject object : layer.getObjects()) {
+				if (object instanceof RectangleMapObject) {
+					Rectangle rectangle = ((RectangleMapObject) object).getRectangle();
+					triggers.add(new Trigger(triggers.size, object.getName(), layerName, rectangle));
+				}
+			}
+		}
+
+		Gdx.app.debug(TAG, "Trigger index built: " + triggers.size + " triggers");
+		return new TriggerIndex(triggers);
+	}
+
+	/**
+	 * Builds the index from the records of a compiled layer
+	 * @param names name of each trigger
+	 * @param bounds rectangle of each trigger, flattened (x, y, width, height)
+	 */
+	public static TriggerIndex build(String layerName, String[] names, float[] bounds) {
+		Array<Trigger> triggers = new Array<Trigger>(names.length);
+
+		for (int i = 0; i < names.length; i++) {
+			Rectangle rectangle = new Rectangle(bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3]);
+			triggers.add(new Trigger(i, names[i], layerName, rectangle));
+		}
+
+		Gdx.app.debug(TAG, "Trigger index built: " + triggers.size + " triggers");
+		return new TriggerIndex(triggers);
+	}
+
+	/**
+	 * Builds the index from triggers gathered elsewhere, e.g. the chunks of a world
+	 * @param triggers indexed by their getIndex(), with distinct ids
+	 */
+	public static TriggerIndex build(Array<Trigger> triggers) {
+		return new TriggerIndex(triggers);
+	}
+
+	/**
+	 * Collects the triggers overlapping the area
+	 * @param results receives the trigger indices (cleared first)
+	 */
+	public void query(Rectangle area, IntArray results) {
+		grid.query(area, results);
+	}
+
+	public Trigger get(int index) { return triggers.get(index); }
+
+	/** @return the position of the trigger with this id, -1 if it isn't in the index */
+	public int indexOf(int id) { return indices.get(id, -1); }
+
+	public Array<Trigger> getTriggers() { return triggers; }
+
+	public int size() { return triggers.size; }
+
+	/** @return the underlying grid, exposes the query counters */
+	public SpatialGrid getGrid() { return grid; }
+}
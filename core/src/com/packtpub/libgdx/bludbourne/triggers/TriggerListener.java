@@ -0,0 +1,15 @@
+package com.packtpub.libgdx.bludbourne.triggers;
+
+import com.packtpub.libgdx.bludbourne.Entity;
+
+/** Receives the trigger events dispatched by a TriggerSystem */
+public interface TriggerListener {
+	/** The entity started overlapping the trigger this frame */
+	void onTriggerEnter(Entity entity, Trigger trigger);
+
+	/** The entity still overlaps the trigger */
+	void onTriggerStay(Entity entity, Trigger trigger);
+
+	/** The entity stopped overlapping the trigger this frame */
+	void onTriggerExit(Entity entity, Trigger trigger);
+}
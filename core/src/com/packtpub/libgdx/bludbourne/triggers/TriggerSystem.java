@@ -0,0 +1,159 @@
+package com.packtpub.libgdx.bludbourne.triggers;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.packtpub.libgdx.bludbourne.Entity;
+
+/**
+ * Keeps, for each entity, the set of triggers it overlaps and dispatches
+ * enter/stay/exit events to the listeners. Only the triggers near the
+ * entity are tested thanks to the TriggerIndex.
+ */
+public class TriggerSystem {
+	/** Triggers of the current map */
+	private TriggerIndex index = TriggerIndex.EMPTY;
+
+	/** Changes each time the index is replaced */
+	private int indexVersion = 0;
+
+	/** Sorted trigger indices overlapped by each entity */
+	private final ObjectMap<Entity, IntArray> overlaps = new ObjectMap<Entity, IntArray>();
+
+	/** Overlaps found this frame */
+	private final IntArray current = new IntArray();
+
+	private final Array<TriggerListener> listeners = new Array<TriggerListener>();
+
+	// Exits found by swapIndex(), dispatched once every overlap is updated
+	private final Array<Entity> exitEntities = new Array<Entity>();
+	private final Array<Trigger> exitTriggers = new Array<Trigger>();
+
+	public void addListener(TriggerListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(TriggerListener listener) {
+		listeners.removeValue(listener, true);
+	}
+
+	/** Replaces the triggers (map change), overlaps are forgotten without exit events */
+	public void setIndex(TriggerIndex index) {
+		this.index = index == null ? TriggerIndex.EMPTY : index;
+		indexVersion++;
+
+		for (IntArray triggers : overlaps.values()) {
+			triggers.clear();
+		}
+	}
+
+	/**
+	 * Replaces the triggers of the same map, e.g. when chunks stream in or
+	 * out: the overlaps of the triggers still there (same id) are kept, an
+	 * exit event is sent for the others
+	 */
+	public void swapIndex(TriggerIndex index) {
+		TriggerIndex previousIndex = this.index;
+		this.index = index == null ? TriggerIndex.EMPTY : index;
+		indexVersion++;
+
+		for (ObjectMap.Entry<Entity, IntArray> entry : overlaps.entries()) {
+			IntArray triggers = entry.value;
+			int kept = 0;
+			for (int i = 0; i < triggers.size; i++) {
+				Trigger trigger = previousIndex.get(triggers.get(i));
+				int newIndex = this.index.indexOf(trigger.getId());
+				if (newIndex >= 0) {
+					triggers.set(kept++, newIndex);
+				} else {
+					exitEntities.add(entry.key);
+					exitTriggers.add(trigger);
+				}
+			}
+			triggers.size = kept;
+			triggers.sort();
+		}
+
+		// Listeners may replace the index again, the remaining exits are then dropped
+		int version = indexVersion;
+		for (int i = 0; i < exitEntities.size && version == indexVersion; i++) {
+			dispatchExit(exitEntities.get(i), exitTriggers.get(i));
+		}
+		exitEntities.clear();
+		exitTriggers.clear();
+	}
+
+	public TriggerIndex getIndex() { return index; }
+
+	/** Stops tracking the entity, no exit event is sent */
+	public void forget(Entity entity) {
+		overlaps.remove(entity);
+	}
+
+	/**
+	 * Tests the entity against the nearby triggers and dispatches the events.
+	 * Listeners may replace the index from a callback, the remaining events
+	 * of this update are then dropped.
+	 * @param boundingBox entity bounding box in pixels
+	 */
+	public void update(Entity entity, Rectangle boundingBox) {
+		IntArray previous = overlaps.get(entity);
+		if (previous == null) {
+			previous = new IntArray();
+			overlaps.put(entity, previous);
+		}
+
+		index.query(boundingBox, current);
+		current.sort();
+
+		int version = indexVersion;
+		TriggerIndex dispatchedIndex = index;
+
+		// Both lists are sorted: merge them to find the transitions
+		int i = 0;
+		int j = 0;
+		while (i < previous.size || j < current.size) {
+			int before = i < previous.size ? previous.get(i) : Integer.MAX_VALUE;
+			int now = j < current.size ? current.get(j) : Integer.MAX_VALUE;
+
+			if (before == now) {
+				dispatchStay(entity, dispatchedIndex.get(now));
+				i++;
+				j++;
+			} else if (now < before) {
+				dispatchEnter(entity, dispatchedIndex.get(now));
+				j++;
+			} else {
+				dispatchExit(entity, dispatchedIndex.get(before));
+				i++;
+			}
+
+			// The map changed, overlaps have been reset
+			if (version != indexVersion) {
+				return;
+			}
+		}
+
+		previous.clear();
+		previous.addAll(current);
+	}
+
+	private void dispatchEnter(Entity entity, Trigger trigger) {
+		for (int i = 0; i < listeners.size; i++) {
+			listeners.get(i).onTriggerEnter(entity, trigger);
+		}
+	}
+
+	private void dispatchStay(Entity entity, Trigger trigger) {
+		for (int i = 0; i < listeners.size; i++) {
+			listeners.get(i).onTriggerStay(entity, trigger);
+		}
+	}
+
+	private void dispatchExit(Entity entity, Trigger trigger) {
+		for (int i = 0; i < listeners.size; i++) {
+			listeners.get(i).onTriggerExit(entity, trigger);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.packtpub.libgdx.bludbourne.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+
+/**
+ * Runs the game simulation without a window and reports its speed.
+ *
+ * Options: --map NAME, --entities N, --ticks N, --warmup N, --seed N,
+ * --threads N (entity update threads, results don't depend on it),
+ * --pursue (the NPCs chase the player along its flow field),
+ * --assert-zero-alloc (exits with status 1 if the measured simulation ticks
+ * allocate, the rendering isn't measured),
+ * --input (scripted key presses and right clicks through the PlayerController),
+ * --replay FILE (runs a session recorded with -Dbludbourne.record=FILE instead)
+ */
+public class HeadlessLauncher {
+	public static void main(String[] args) {
+		SimulationBenchmark.Settings settings = new SimulationBenchmark.Settings();
+
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i];
+
+			// Flags
+			if ("--assert-zero-alloc".equals(name)) {
+				settings.assertZeroAllocation = true;
+				continue;
+			}
+			if ("--input".equals(name)) {
+				settings.input = true;
+				continue;
+			}
+			if ("--pursue".equals(name)) {
+				settings.pursue = true;
+				continue;
+			}
+
+			if (i + 1 >= args.length) {
+				System.err.println("Missing value for " + name);
+				break;
+			}
+			String value = args[++i];
+
+			if ("--map".equals(name)) {
+				settings.mapName = value;
+			} else if ("--entities".equals(name)) {
+				settings.entities = Integer.parseInt(value);
+			} else if ("--ticks".equals(name)) {
+				settings.ticks = Integer.parseInt(value);
+			} else if ("--warmup".equals(name)) {
+				settings.warmupTicks = Integer.parseInt(value);
+			} else if ("--seed".equals(name)) {
+				settings.seed = Long.parseLong(value);
+			} else if ("--threads".equals(name)) {
+				settings.threads = Integer.parseInt(value);
+			} else if ("--replay".equals(name)) {
+				settings.replayPath = value;
+			} else {
+				System.err.println("Unknown option " + name);
+			}
+		}
+
+		NullGL.install();
+
+		// The benchmark runs in create() then exits
+		HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+		new HeadlessApplication(new SimulationBenchmark(settings), config);
+	}
+}
@@ -0,0 +1,41 @@
+package com.packtpub.libgdx.bludbourne.headless;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+
+/**
+ * GL20 doing nothing, lets the maps and textures load without a GL
+ * context. Every call returns 0, false or an empty string.
+ */
+public class NullGL implements InvocationHandler {
+	/** Sets Gdx.gl, call it before creating the application */
+	public static void install() {
+		GL20 gl = (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class },
+				new NullGL());
+		Gdx.gl = gl;
+		Gdx.gl20 = gl;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		Class<?> type = method.getReturnType();
+
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == String.class) {
+			return "";
+		}
+		if (type == float.class) {
+			return 0f;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,309 @@
+package com.packtpub.libgdx.bludbourne.headless;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.packtpub.libgdx.bludbourne.FixedTimestep;
+import com.packtpub.libgdx.bludbourne.GameWorld;
+import com.packtpub.libgdx.bludbourne.PlayerController;
+import com.packtpub.libgdx.bludbourne.profiling.FrameProfiler;
+import com.packtpub.libgdx.bludbourne.profiling.PhaseTimer;
+import com.packtpub.libgdx.bludbourne.profiling.RollingHistogram;
+import com.packtpub.libgdx.bludbourne.replay.SessionPlayer;
+
+/**
+ * Steps the GameWorld as fast as possible and reports the ticks per
+ * second, the time spent in each phase and the allocation rate.
+ *
+ * The allocation check covers the simulation ticks of the main thread,
+ * scripted input included, not the rendering: the GL is a proxy here,
+ * which allocates the arguments of each call.
+ */
+public class SimulationBenchmark extends ApplicationAdapter {
+	/** Debugging */
+	private static final String TAG = SimulationBenchmark.class.getSimpleName();
+
+	/** Ticks per scripted input period, one direction per period */
+	private static final int INPUT_PERIOD = 64;
+
+	/** Walked in turn, each one undoes the previous so that the player stays around its start */
+	private static final int[] INPUT_KEYS = { Input.Keys.RIGHT, Input.Keys.LEFT, Input.Keys.UP, Input.Keys.DOWN };
+
+	/** Run options */
+	public static class Settings {
+		/** Map simulated, TOWN when null */
+		public String mapName = null;
+		/** Wandering NPCs */
+		public int entities = 1000;
+		/** Measured ticks */
+		public int ticks = 6000;
+		/** Ticks before the measure, lets the JIT compile the loop */
+		public int warmupTicks = 2000;
+		/** Wanderers placement seed */
+		public long seed = 1L;
+		/** Threads of the entity stages, the main thread included */
+		public int threads = 1;
+		/** The NPCs chase the player instead of walking at random */
+		public boolean pursue = false;
+		/** Fails the run if the measured ticks allocate anything */
+		public boolean assertZeroAllocation = false;
+		/**
+		 * Feeds scripted key presses and right clicks to the PlayerController
+		 * each tick. No left click: a click-to-move search allocates its path.
+		 */
+		public boolean input = false;
+		/** Recorded session replayed instead of the wanderers run, relative to the assets */
+		public String replayPath = null;
+	}
+
+	private final Settings settings;
+	private GameWorld world;
+
+	/** Tick and phase percentiles of the measured ticks */
+	private FrameProfiler tickProfiler;
+
+	/** Set when the allocation assertion failed, the process then exits with status 1 */
+	private boolean failed = false;
+
+	public SimulationBenchmark(Settings settings) {
+		this.settings = settings;
+	}
+
+	@Override
+	public void create() {
+		Gdx.app.setLogLevel(Application.LOG_INFO);
+
+		if (settings.replayPath != null) {
+			replay();
+			Gdx.app.exit();
+			return;
+		}
+
+		world = new GameWorld();
+		world.setThreads(settings.threads);
+		world.create(settings.mapName);
+		int spawned = world.spawnWanderers(settings.entities, settings.seed, settings.pursue);
+		Gdx.app.log(TAG, "Map " + world.getMapManager().getCurrentResidentMap().getName() + ", "
+				+ spawned + " wanderers, " + world.getThreads() + " threads"
+				+ (settings.input ? ", scripted input" : ""));
+		if (settings.assertZeroAllocation && world.getThreads() > 1) {
+			Gdx.app.error(TAG, "Allocation check only measures the main thread, run it with --threads 1");
+		}
+
+		tickProfiler = new FrameProfiler(Math.max(1, settings.ticks));
+		tickProfiler.setDump(FrameProfiler.DumpFormat.CSV, null, 0);
+
+		run(settings.warmupTicks);
+		world.getPhaseTimer().reset();
+		tickProfiler.getFrameHistogram().clear();
+		tickProfiler.getInputLatencyHistogram().clear();
+		for (PhaseTimer.Phase phase : PhaseTimer.PHASES) {
+			tickProfiler.getPhaseHistogram(phase).clear();
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		// The query itself allocates on some JVMs, measured by two back to back calls
+		long overhead = getAllocatedBytes(threads);
+		overhead = getAllocatedBytes(threads) - overhead;
+		long allocatedBefore = getAllocatedBytes(threads);
+		long gcCountBefore = getGcCount();
+		long gcMillisBefore = getGcMillis();
+		long start = TimeUtils.nanoTime();
+
+		run(settings.ticks);
+
+		long elapsed = TimeUtils.nanoTime() - start;
+		long allocated = allocatedBefore < 0 ? -1 : getAllocatedBytes(threads) - allocatedBefore - overhead;
+
+		report(settings.ticks, elapsed, allocated, getGcCount() - gcCountBefore, getGcMillis() - gcMillisBefore);
+		if (settings.assertZeroAllocation) {
+			checkZeroAllocation(allocated);
+		}
+		Gdx.app.exit();
+	}
+
+	/**
+	 * Replays the recorded frames as fast as possible, with the same steps
+	 * per frame as the recording
+	 */
+	private void replay() {
+		SessionPlayer session = new SessionPlayer(Gdx.files.local(settings.replayPath));
+		world = new GameWorld();
+		world.setThreads(settings.threads);
+		world.create(session.getMapName());
+		world.spawnWanderers(session.getWandererCount(), session.getWandererSeed());
+		session.start(world);
+
+		FixedTimestep timestep = new FixedTimestep(session.getStep(), FixedTimestep.DEFAULT_MAX_STEPS);
+		tickProfiler = new FrameProfiler();
+		tickProfiler.setDump(FrameProfiler.DumpFormat.CSV, null, 0);
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = getAllocatedBytes(threads);
+		long gcCountBefore = getGcCount();
+		long gcMillisBefore = getGcMillis();
+		long start = TimeUtils.nanoTime();
+
+		while (true) {
+			long tickStart = TimeUtils.nanoTime();
+			float delta = session.beginFrame();
+			if (session.isFinished()) {
+				break;
+			}
+
+			world.updateMapLoading();
+			session.verifyMapSwap();
+			int steps = timestep.advance(delta);
+			for (int i = 0; i < steps; i++) {
+				world.step(timestep.getStep());
+			}
+			tickProfiler.endFrame(world.getPhaseTimer(), TimeUtils.nanoTime() - tickStart);
+		}
+
+		long elapsed = TimeUtils.nanoTime() - start;
+		long allocated = allocatedBefore < 0 ? -1 : getAllocatedBytes(threads) - allocatedBefore;
+
+		Gdx.app.log(TAG, session.getFrames() + " frames, " + timestep.getTotalSteps() + " steps, "
+				+ session.getDivergences() + " divergences");
+		report((int) timestep.getTotalSteps(), elapsed, allocated, getGcCount() - gcCountBefore,
+				getGcMillis() - gcMillisBefore);
+		if (session.getDivergences() > 0) {
+			failed = true;
+		}
+	}
+
+	private void run(int ticks) {
+		for (int i = 0; i < ticks; i++) {
+			long tickStart = TimeUtils.nanoTime();
+			if (settings.input) {
+				feedInput(i);
+			}
+			world.updateMapLoading();
+			world.step(FixedTimestep.DEFAULT_STEP);
+
+			long tickEnd = TimeUtils.nanoTime();
+			world.getController().endFrame(tickEnd, tickProfiler.getInputLatencyHistogram());
+			tickProfiler.endFrame(world.getPhaseTimer(), tickEnd - tickStart);
+		}
+	}
+
+	/**
+	 * Goes through the InputProcessor callbacks like the desktop backend:
+	 * holds a direction for a quarter of the period, taps it once more, and
+	 * right clicks in between
+	 */
+	private void feedInput(int tick) {
+		PlayerController controller = world.getController();
+		int key = INPUT_KEYS[(tick / INPUT_PERIOD) % INPUT_KEYS.length];
+
+		switch (tick % INPUT_PERIOD) {
+		case 0:
+			controller.keyDown(key);
+			break;
+		case INPUT_PERIOD / 4:
+			controller.keyUp(key);
+			break;
+		case INPUT_PERIOD / 2:
+			controller.touchDown(0, 0, 0, Input.Buttons.RIGHT);
+			break;
+		case INPUT_PERIOD / 2 + 1:
+			controller.touchUp(0, 0, 0, Input.Buttons.RIGHT);
+			break;
+		case INPUT_PERIOD * 3 / 4:
+			// Pressed and released between two steps
+			controller.keyDown(key);
+			controller.keyUp(key);
+			break;
+		}
+	}
+
+	private void report(int measuredTicks, long elapsedNanos, long allocatedBytes, long gcCount, long gcMillis) {
+		int ticks = Math.max(1, measuredTicks);
+		double seconds = elapsedNanos / 1e9;
+
+		Gdx.app.log(TAG, String.format("%d ticks in %.3f s: %.0f ticks/s, %.2f us/tick",
+				measuredTicks, seconds, measuredTicks / seconds, elapsedNanos / 1e3 / ticks));
+
+		logPercentiles("TICK", tickProfiler.getFrameHistogram(), elapsedNanos / ticks);
+		RollingHistogram latencies = tickProfiler.getInputLatencyHistogram();
+		if (latencies.size() > 0) {
+			logPercentiles("INPUT_LATENCY", latencies, latencies.getMean());
+		}
+
+		PhaseTimer phaseTimer = world.getPhaseTimer();
+		for (PhaseTimer.Phase phase : PhaseTimer.PHASES) {
+			if (phaseTimer.getCount(phase) == 0) {
+				continue;
+			}
+			logPercentiles(phase.name(), tickProfiler.getPhaseHistogram(phase), phaseTimer.getTotalNanos(phase) / ticks);
+		}
+
+		if (allocatedBytes >= 0) {
+			Gdx.app.log(TAG, String.format("Allocated %d bytes: %.1f bytes/tick, %.2f MB/s",
+					allocatedBytes, (double) allocatedBytes / ticks, allocatedBytes / seconds / (1024 * 1024)));
+		} else {
+			Gdx.app.log(TAG, "Allocated bytes not supported by this JVM");
+		}
+		Gdx.app.log(TAG, "GC: " + gcCount + " collections, " + gcMillis + " ms");
+	}
+
+	/** Fails the run if the steady state allocated, the simulation ticks must only reuse objects */
+	private void checkZeroAllocation(long allocatedBytes) {
+		if (allocatedBytes < 0) {
+			Gdx.app.error(TAG, "Allocation check impossible: allocated bytes not supported by this JVM");
+			failed = true;
+		} else if (allocatedBytes > 0) {
+			Gdx.app.error(TAG, "Allocation check failed: " + allocatedBytes + " bytes allocated in "
+					+ settings.ticks + " ticks, expected 0");
+			failed = true;
+		} else {
+			Gdx.app.log(TAG, "Allocation check passed: 0 bytes allocated in " + settings.ticks + " ticks");
+		}
+	}
+
+	private void logPercentiles(String name, RollingHistogram histogram, long meanNanos) {
+		Gdx.app.log(TAG, String.format("  %-14s mean %8.2f  p50 %8.2f  p95 %8.2f  p99 %8.2f us", name,
+				meanNanos / 1e3, histogram.getPercentile(0.5f) / 1e3, histogram.getPercentile(0.95f) / 1e3,
+				histogram.getPercentile(0.99f) / 1e3));
+	}
+
+	/** @return the bytes allocated by this thread, -1 when the JVM can't tell */
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	@Override
+	public void dispose() {
+		if (world != null) {
+			world.dispose();
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+}